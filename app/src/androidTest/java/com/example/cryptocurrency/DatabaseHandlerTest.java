@@ -0,0 +1,163 @@
+package com.example.cryptocurrency;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Statements of DatabaseHandler on a real SQLite database: arguments are bound, repeated writes
+ * and deletes reuse compiled statements, and the catalog writer stages Coins on disk.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseHandlerTest {
+
+    private static final String TEST_DB = "handler-test.db";
+
+    private Context context;
+    private DatabaseHandler handler;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        handler = new DatabaseHandler(context, TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        handler.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void symbolWithQuote_isBound() {
+        handler.writeGraphLineIntoDB("O'COIN", "USD", "0\n", "1.5\n", "100\n", "day", 5, 4);
+
+        Cursor res = handler.readGraphLineFromDB("O'COIN", "day");
+        assertEquals(1, res.getCount());
+        res.close();
+
+        handler.deleteGraphTimeFrame("O'COIN", "day");
+        res = handler.readGraphLineFromDB("O'COIN", "day");
+        assertEquals(0, res.getCount());
+        res.close();
+    }
+
+    @Test
+    public void repeatedWritesAndDeletes_reuseCompiledStatements() {
+        for (int i = 0; i < 50; i++) {
+            handler.writeGraphLineIntoDB("BTC", "USD", "0\n", String.valueOf(i) + "\n", "100\n", "hour", 5, 4);
+            Cursor res = handler.readGraphLineFromDB("BTC", "hour");
+            assertEquals(1, res.getCount());
+            res.close();
+            handler.deleteGraphLine("BTC", "ETH");
+        }
+
+        StatementCache.Stats stats = handler.getStatementStats();
+        // Delete and insert of the write and the delete are compiled once each. Reads are not counted.
+        assertEquals(3, stats.misses);
+        assertEquals(3 * 49, stats.hits);
+        assertTrue(stats.hitRate() > 0.95);
+    }
+
+    @Test
+    public void deferredFetches_areCoalescedByKindAndKey() {
+        handler.writeDeferredFetch("graph", "BTC|0", "0|ETH", 100);
+        handler.writeDeferredFetch("graph", "BTC|0", "3|ETH", 200);
+        handler.writeDeferredFetch("general_info", "BTC", null, 150);
+
+        Cursor res = handler.readDeferredFetches();
+        assertEquals(2, res.getCount());
+        res.moveToNext();
+        assertEquals("general_info", res.getString(0));
+        assertTrue(res.isNull(2));
+        res.moveToNext();
+        assertEquals("3|ETH", res.getString(2));
+        res.close();
+
+        // Replayed intent which was replaced in the meantime is kept.
+        handler.deleteDeferredFetch("graph", "BTC|0", 100);
+        handler.deleteDeferredFetch("general_info", "BTC", 150);
+        res = handler.readDeferredFetches();
+        assertEquals(1, res.getCount());
+        res.close();
+    }
+
+    @Test
+    public void catalogWriter_replacesTheCatalogOnlyOnCommit() {
+        CatalogIngest.CatalogSink writer = handler.openCatalogWriter();
+        writer.begin();
+        writer.add("BTC", "Bitcoin", "/media/btc.png", 1);
+        writer.add("ETH", "Ethereum", null, 2);
+        writer.commit();
+
+        writer.begin();
+        writer.add("DOGE", "Dogecoin", null, 3);
+        writer.rollback();
+        assertEquals(2, catalogSize());
+
+        // More Coins than one batch of the staging table.
+        writer.begin();
+        for (int i = 0; i < 1200; i++)
+            writer.add("C" + i, "Coin " + i, null, 1200 - i);
+        writer.commit();
+        Cursor res = handler.readCatalogFromDB();
+        assertEquals(1200, res.getCount());
+        res.moveToFirst();
+        assertEquals("C1199", res.getString(1));
+        res.close();
+    }
+
+    @Test
+    public void catalogWriter_doesNotHoldTheCatalog() {
+        int coinCount = 20000;
+        long payloadChars = 0;
+        long peakHeap = 0;
+        CatalogIngest.CatalogSink writer = handler.openCatalogWriter();
+        writer.begin();
+        long baselineHeap = usedHeap();
+        for (int i = 0; i < coinCount; i++) {
+            String symbol = "SYM" + i;
+            String name = "Coin with a rather long descriptive name number " + i;
+            String image = "/media/" + (100000 + i) + "/" + symbol.toLowerCase() + ".png";
+            payloadChars += symbol.length() + name.length() + image.length();
+            writer.add(symbol, name, image, i);
+            // Retained heap after collection at a few points of the ingest.
+            if (i % (coinCount / 4) == coinCount / 4 - 1)
+                peakHeap = Math.max(peakHeap, usedHeap() - baselineHeap);
+        }
+        writer.commit();
+
+        assertEquals(coinCount, catalogSize());
+        // All received strings would take at least one byte per character, only one batch is retained.
+        assertTrue("Peak heap " + peakHeap + " for " + payloadChars + " characters", peakHeap < payloadChars / 4);
+    }
+
+    private int catalogSize() {
+        Cursor res = handler.readCatalogFromDB();
+        try {
+            return res.getCount();
+        } finally {
+            res.close();
+        }
+    }
+
+    // Used heap after garbage collection.
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        System.runFinalization();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
@@ -0,0 +1,239 @@
+package com.example.cryptocurrency;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Schema migrations on a real SQLite database. A database of version 1 is written by hand, exactly
+ * as the first release created it, and then opened with the current DatabaseHandler.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseMigrationTest {
+
+    private static final String MIGRATED_DB = "migration-test.db";
+    private static final String FRESH_DB = "migration-test-fresh.db";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(MIGRATED_DB);
+        context.deleteDatabase(FRESH_DB);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(MIGRATED_DB);
+        context.deleteDatabase(FRESH_DB);
+    }
+
+    @Test
+    public void steps_coverEveryVersionInOrder() {
+        List<DatabaseMigrations.Migration> steps = DatabaseMigrations.path(1, DatabaseHandler.DATABASE_VERSION);
+        assertNotNull(steps);
+        assertEquals(DatabaseHandler.DATABASE_VERSION - 1, steps.size());
+        for (int i = 0; i < steps.size(); i++)
+            assertEquals(i + 1, steps.get(i).startVersion);
+        assertNull(DatabaseMigrations.path(0, DatabaseHandler.DATABASE_VERSION));
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsCachedData() {
+        createVersion1Database();
+
+        DatabaseHandler handler = new DatabaseHandler(context, MIGRATED_DB);
+        SQLiteDatabase db = handler.getWritableDatabase();
+        assertEquals(DatabaseHandler.DATABASE_VERSION, db.getVersion());
+        assertEquals(2, count(db, "Cryptocurrency_table"));
+        // Old general info and graph rows are copied in background, nothing is lost before that.
+        assertEquals(2, count(db, "Selected_coins_v5"));
+        assertEquals(1, count(db, "Graph_lines_v2"));
+
+        DatabaseMigrations.runDeferred(db);
+
+        assertFalse(tableExists(db, "Graph_lines_v2"));
+        assertFalse(tableExists(db, "Selected_coins_v5"));
+        // Coin opened twice, only the newest general info is kept.
+        assertEquals(1, count(db, "Selected_coins"));
+        Cursor res = db.rawQuery("SELECT sym_to, point_x, point_y, time FROM Graph_lines WHERE sym_from = 'BTC' ORDER BY sym_to", null);
+        assertEquals(2, res.getCount());
+        res.moveToNext();
+        assertEquals("ETH", res.getString(0));
+        assertEquals("0\n1\n2\n", res.getString(1));
+        assertEquals("0.03\n0.031\n0.032\n", res.getString(2));
+        assertEquals("100\n200\n300\n", res.getString(3));
+        res.moveToNext();
+        assertEquals("USD", res.getString(0));
+        assertEquals("0\n1\n2\n", res.getString(1));
+        assertEquals("7000\n7100\n7200\n", res.getString(2));
+        res.close();
+
+        res = handler.readGeneralInfoFromDB("BTC");
+        assertTrue(res.moveToFirst());
+        assertEquals("BTC compared to USD = 7000", res.getString(1));
+        assertEquals(0, res.getLong(2));
+        res.close();
+        res = handler.readGeneralInfoFields("BTC");
+        assertEquals(2, res.getCount());
+        res.moveToNext();
+        assertEquals("FROMSYMBOL", res.getString(0));
+        res.moveToNext();
+        assertEquals("PRICE", res.getString(0));
+        assertEquals("$ 7,000", res.getString(1));
+        res.close();
+        handler.close();
+    }
+
+    @Test
+    public void deferredSplit_keepsLinesWrittenAfterUpgrade() {
+        createVersion1Database();
+
+        DatabaseHandler handler = new DatabaseHandler(context, MIGRATED_DB);
+        handler.writeGraphLineIntoDB("BTC", "USD", "0\n", "9000\n", "400\n", "day", 5, 4);
+        SQLiteDatabase db = handler.getWritableDatabase();
+        DatabaseMigrations.runDeferred(db);
+
+        Cursor res = db.rawQuery("SELECT point_y FROM Graph_lines WHERE sym_from = 'BTC' AND sym_to = 'USD'", null);
+        assertEquals(1, res.getCount());
+        res.moveToFirst();
+        assertEquals("9000\n", res.getString(0));
+        res.close();
+        assertEquals(2, count(db, "Graph_lines"));
+        handler.close();
+    }
+
+    @Test
+    public void deferredSplit_runsInChunks() {
+        createVersion1Database();
+        SQLiteDatabase legacy = SQLiteDatabase.openDatabase(context.getDatabasePath(MIGRATED_DB).getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE);
+        for (int i = 0; i < 45; i++)
+            legacy.execSQL("INSERT INTO Graph_lines VALUES ('C" + i + "', 'USD\n', '0\n', '1\n', '100\n', 'hour', 5, 4)");
+        legacy.close();
+
+        DatabaseHandler handler = new DatabaseHandler(context, MIGRATED_DB);
+        SQLiteDatabase db = handler.getWritableDatabase();
+        DatabaseMigrations.Migration split = DatabaseMigrations.path(2, 3).get(0);
+        int chunks = 1;
+        while (split.migrateChunk(db))
+            chunks++;
+
+        assertEquals(3, chunks);
+        assertFalse(tableExists(db, "Graph_lines_v2"));
+        assertEquals(47, count(db, "Graph_lines"));
+        handler.close();
+    }
+
+    @Test
+    public void deferredCopy_keepsNewestGeneralInfoInChunks() {
+        createVersion1Database();
+        SQLiteDatabase legacy = SQLiteDatabase.openDatabase(context.getDatabasePath(MIGRATED_DB).getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE);
+        for (int i = 0; i < 45; i++)
+            legacy.execSQL("INSERT INTO Selected_coins VALUES ('C" + (i % 15) + "', 'PRICE: " + i + "', 'value " + i + "')");
+        legacy.close();
+
+        DatabaseHandler handler = new DatabaseHandler(context, MIGRATED_DB);
+        handler.writeGeneralInfoIntoDB("ETH", new LinkedHashMap<String, String>(), "PRICE: $ 200", "ETH compared to USD = 200", 500);
+        handler.writeGeneralInfoIntoDB("C0", new LinkedHashMap<String, String>(), "PRICE: new", "new value", 600);
+        SQLiteDatabase db = handler.getWritableDatabase();
+        DatabaseMigrations.Migration copy = DatabaseMigrations.path(5, 6).get(0);
+        int chunks = 1;
+        while (copy.migrateChunk(db))
+            chunks++;
+
+        // 47 old rows in 3 copy chunks, then 15 copied Coins are parsed in 1 chunk.
+        assertEquals(4, chunks);
+        assertFalse(tableExists(db, "Selected_coins_v5"));
+        assertEquals(17, count(db, "Selected_coins"));
+        Cursor res = handler.readGeneralInfoFromDB("C1");
+        assertTrue(res.moveToFirst());
+        assertEquals("value 31", res.getString(1));
+        res.close();
+        // Rows written after the upgrade are not replaced by old rows.
+        res = handler.readGeneralInfoFromDB("C0");
+        assertTrue(res.moveToFirst());
+        assertEquals("new value", res.getString(1));
+        assertEquals(600, res.getLong(2));
+        res.close();
+        handler.close();
+    }
+
+    @Test
+    public void migratedSchema_equalsFreshSchema() {
+        createVersion1Database();
+        DatabaseHandler migrated = new DatabaseHandler(context, MIGRATED_DB);
+        DatabaseMigrations.runDeferred(migrated.getWritableDatabase());
+        DatabaseHandler fresh = new DatabaseHandler(context, FRESH_DB);
+
+        assertEquals(schema(fresh.getReadableDatabase()), schema(migrated.getReadableDatabase()));
+        migrated.close();
+        fresh.close();
+    }
+
+    // Schema and rows of the first release: one row of Graph_lines holds all compared symbols.
+    private void createVersion1Database() {
+        SQLiteDatabase db = context.openOrCreateDatabase(MIGRATED_DB, Context.MODE_PRIVATE, null);
+        db.execSQL("CREATE TABLE Cryptocurrency_table (name TEXT, symbol TEXT, image TEXT)");
+        db.execSQL("CREATE TABLE Selected_coins (sym TEXT, general_info TEXT, compared_value TEXT)");
+        db.execSQL("CREATE TABLE Graph_lines (sym_from TEXT, sym_to TEXT, point_x FLOAT, point_y FLOAT, time INTEGER, " +
+                "time_frame TEXT, num_rows INTEGER, num_columns INTEGER)");
+        db.execSQL("INSERT INTO Cryptocurrency_table VALUES ('Bitcoin', 'BTC', 'https://www.cryptocompare.com/media/19633/btc.png')");
+        db.execSQL("INSERT INTO Cryptocurrency_table VALUES ('Ethereum', 'ETH', 'https://www.cryptocompare.com/media/20646/eth_logo.png')");
+        db.execSQL("INSERT INTO Selected_coins VALUES ('BTC', 'PRICE: $ 6,900', 'BTC compared to USD = 6900')");
+        db.execSQL("INSERT INTO Selected_coins VALUES ('BTC', 'FROMSYMBOL: Ƀ\nPRICE: $ 7,000', 'BTC compared to USD = 7000')");
+        db.execSQL("INSERT INTO Graph_lines VALUES ('BTC', 'USD\nETH\n', '0\n1\n2\n0\n1\n2\n', " +
+                "'7000\n7100\n7200\n0.03\n0.031\n0.032\n', '100\n200\n300\n', 'day', 5, 4)");
+        db.setVersion(1);
+        db.close();
+    }
+
+    private static int count(SQLiteDatabase db, String table) {
+        Cursor res = db.rawQuery("SELECT COUNT(*) FROM " + table, null);
+        res.moveToFirst();
+        int count = res.getInt(0);
+        res.close();
+        return count;
+    }
+
+    private static boolean tableExists(SQLiteDatabase db, String table) {
+        Cursor res = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?", new String[] {table});
+        boolean exists = res.moveToFirst();
+        res.close();
+        return exists;
+    }
+
+    // Tables with their columns, types and primary keys.
+    private static List<String> schema(SQLiteDatabase db) {
+        List<String> schema = new ArrayList<>();
+        Cursor tables = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name NOT LIKE 'sqlite_%' " +
+                "AND name != 'android_metadata' ORDER BY name", null);
+        while (tables.moveToNext()) {
+            String table = tables.getString(0);
+            Cursor columns = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+            while (columns.moveToNext())
+                schema.add(table + "." + columns.getString(1) + " " + columns.getString(2) + " notnull=" +
+                        columns.getInt(3) + " pk=" + columns.getInt(5));
+            columns.close();
+        }
+        tables.close();
+        return schema;
+    }
+
+}
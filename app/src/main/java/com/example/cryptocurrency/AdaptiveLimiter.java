@@ -0,0 +1,198 @@
+/**
+ * Adaptive limit of concurrent calls of one API endpoint (additive increase, multiplicative decrease).
+ *
+ * Every call holds a permit while it runs. The limit grows by about one permit per round trip while
+ * latencies stay near the baseline and the permits are really used. It is halved when a call is
+ * throttled (HTTP 429), fails with a server error or a timeout, or when its latency jumps above the
+ * baseline. Calls which started before a decrease do not decrease the limit again, so one overload
+ * halves it only once. The baseline is the lowest latency seen, it slowly follows higher latencies,
+ * so a permanently slower network becomes the new baseline.
+ */
+
+package com.example.cryptocurrency;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class AdaptiveLimiter {
+
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final double LATENCY_TOLERANCE = 2.0;      // latency above baseline * tolerance + slack is a spike
+    private static final long LATENCY_SLACK_MS = 50;
+    private static final double BASELINE_DRIFT = 0.02;        // part of a higher latency added to the baseline
+
+    // State of the limiter, for logs and verification.
+    public static class Metrics {
+        public final double limit;
+        public final int inFlight;
+        public final int maxInFlight;
+        public final int waiting;
+        public final long successes;
+        public final long drops;
+        public final long decreases;
+        public final long baselineLatencyMs;
+        public final long lastLatencyMs;
+
+        Metrics(double limit, int inFlight, int maxInFlight, int waiting, long successes, long drops, long decreases,
+                long baselineLatencyMs, long lastLatencyMs) {
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.maxInFlight = maxInFlight;
+            this.waiting = waiting;
+            this.successes = successes;
+            this.drops = drops;
+            this.decreases = decreases;
+            this.baselineLatencyMs = baselineLatencyMs;
+            this.lastLatencyMs = lastLatencyMs;
+        }
+
+        @Override
+        public String toString() {
+            return "limit " + Math.round(limit * 10) / 10.0 + ", in flight " + inFlight + " (max " + maxInFlight + "), waiting " +
+                    waiting + ", successes " + successes + ", drops " + drops + ", decreases " + decreases +
+                    ", baseline " + baselineLatencyMs + " ms, last " + lastLatencyMs + " ms";
+        }
+    }
+
+    // Permit of one call. It must be returned with onSuccess, onDropped or onIgnored.
+    public static final class Permit {
+        final long generation;          // number of decreases before the call started
+        final boolean limitUsed;        // at least half of the limit was in flight when the call started
+
+        Permit(long generation, boolean limitUsed) {
+            this.generation = generation;
+            this.limitUsed = limitUsed;
+        }
+    }
+
+    // Receives a permit when one is free, on the thread which returned the previous permit.
+    public interface PermitCallback {
+        void onPermit(Permit permit);
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final Deque<PermitCallback> waitingCallbacks = new ArrayDeque<>();
+    private double limit;
+    private int inFlight, maxInFlight, blockedThreads;
+    private long generation;
+    private long successes, drops;
+    private long baselineLatencyMs = -1, lastLatencyMs;
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    // Permit if one is free, otherwise null.
+    public synchronized Permit tryAcquire() {
+        return inFlight < (int) limit ? grant() : null;
+    }
+
+    /**
+     * Wait for a permit. Must be called from a background thread.
+     *
+     * @param timeoutMs - Longest wait
+     * @return Permit   - Permit, or null if no permit was free before the timeout
+     */
+    public synchronized Permit acquire(long timeoutMs) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        blockedThreads++;
+        try {
+            while (inFlight >= (int) limit) {
+                long waitMs = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+                if (waitMs <= 0)
+                    return null;
+                wait(waitMs);
+            }
+            return grant();
+        } finally {
+            blockedThreads--;
+        }
+    }
+
+    // Pass a permit to the callback now, or later when a permit is returned. Waiting callbacks are served in order.
+    public void acquireAsync(PermitCallback callback) {
+        Permit permit;
+        synchronized (this) {
+            permit = waitingCallbacks.isEmpty() ? tryAcquire() : null;
+            if (permit == null) {
+                waitingCallbacks.add(callback);
+                return;
+            }
+        }
+        callback.onPermit(permit);
+    }
+
+    // Call returned a response. Flat latency raises the limit, a latency spike decreases it.
+    public void onSuccess(Permit permit, long latencyMs) {
+        synchronized (this) {
+            successes++;
+            lastLatencyMs = latencyMs;
+            if (baselineLatencyMs >= 0 && latencyMs > baselineLatencyMs * LATENCY_TOLERANCE + LATENCY_SLACK_MS)
+                decrease(permit);
+            else if (permit.limitUsed)
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            if (baselineLatencyMs < 0 || latencyMs < baselineLatencyMs)
+                baselineLatencyMs = latencyMs;
+            else
+                baselineLatencyMs += Math.round((latencyMs - baselineLatencyMs) * BASELINE_DRIFT);
+        }
+        release();
+    }
+
+    // Call was throttled, failed with a server error or timed out.
+    public void onDropped(Permit permit) {
+        synchronized (this) {
+            drops++;
+            decrease(permit);
+        }
+        release();
+    }
+
+    // Call ended without a result which says anything about the load, e.g. it was not sent.
+    public void onIgnored(Permit permit) {
+        release();
+    }
+
+    public synchronized Metrics getMetrics() {
+        return new Metrics(limit, inFlight, maxInFlight, waitingCallbacks.size() + blockedThreads, successes, drops,
+                generation, Math.max(baselineLatencyMs, 0), lastLatencyMs);
+    }
+
+    // Must be called with the lock held.
+    private Permit grant() {
+        inFlight++;
+        maxInFlight = Math.max(maxInFlight, inFlight);
+        return new Permit(generation, inFlight * 2 >= (int) limit);
+    }
+
+    // Only the first overload signal of calls started under the same limit decreases it. Must be called with the lock held.
+    private void decrease(Permit permit) {
+        if (permit.generation != generation)
+            return;
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        generation++;
+    }
+
+    // Return a permit and hand free permits to waiting callbacks, then to waiting threads.
+    private void release() {
+        List<PermitCallback> callbacks = new ArrayList<>();
+        List<Permit> permits = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            while (!waitingCallbacks.isEmpty() && inFlight < (int) limit) {
+                callbacks.add(waitingCallbacks.poll());
+                permits.add(grant());
+            }
+            notifyAll();
+        }
+        for (int i = 0; i < callbacks.size(); i++)
+            callbacks.get(i).onPermit(permits.get(i));
+    }
+
+}
@@ -0,0 +1,226 @@
+/**
+ * Shared fetch layer for blocking API calls of background threads.
+ *
+ * Every call carries a deadline: the wait for a permit, the connect timeout, the read timeout and
+ * every read of the body are limited by the time which is left, so a stalled API could not hold a
+ * thread longer than the deadline. Calls of one endpoint share a circuit breaker. While it is open
+ * a call fails at once with CircuitOpenException, and the caller shows cached data instead of waiting.
+ *
+ * Calls of one endpoint also share an adaptive concurrency limit. A call waits for a permit of the
+ * AdaptiveLimiter; the limit grows while latencies stay flat and backs off on throttling, server
+ * errors and latency spikes. The latency of a call is the time to the response headers, so bodies
+ * of different sizes are comparable.
+ *
+ * Volley requests of the UI use the same breakers and limiters, see ApiJsonRequest.
+ */
+
+package com.example.cryptocurrency;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class ApiClient {
+
+    // Endpoints, every endpoint has its own circuit breaker.
+    public static final String ENDPOINT_HISTO = "histo";
+    public static final String ENDPOINT_PRICE = "price";
+    public static final String ENDPOINT_TOP_LIST = "top_list";
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long SLOW_CALL_MS = 4000;
+    private static final long OPEN_MS = 30000;
+    private static final int INITIAL_CONCURRENCY = 4;
+    private static final int MIN_CONCURRENCY = 1;
+    private static final int MAX_CONCURRENCY = 16;
+
+    // Reads the body of a successful response.
+    public interface ResponseReader<T> {
+        T read(Reader reader) throws IOException;
+    }
+
+    // Call is rejected without a request, the API of the endpoint is degraded.
+    public static class CircuitOpenException extends IOException {
+        public CircuitOpenException(String endpoint) {
+            super("Circuit of " + endpoint + " is open");
+        }
+    }
+
+    // Response with an unexpected status code.
+    public static class HttpStatusException extends IOException {
+        public final int code;
+
+        public HttpStatusException(int code, String url) {
+            super("Unexpected response code " + code + " for " + url);
+            this.code = code;
+        }
+    }
+
+    private static ApiClient instance;
+
+    private final Map<String, CircuitBreaker> breakers = new HashMap<>();
+    private final Map<String, AdaptiveLimiter> limiters = new HashMap<>();
+    private final int failureThreshold;
+
+    public static synchronized ApiClient getInstance() {
+        if (instance == null)
+            instance = new ApiClient(FAILURE_THRESHOLD);
+        return instance;
+    }
+
+    // Client with its own breakers and limiters, used by tests.
+    ApiClient(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    // Circuit breaker of the endpoint, it is created on the first call.
+    public synchronized CircuitBreaker breaker(String endpoint) {
+        CircuitBreaker breaker = breakers.get(endpoint);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(failureThreshold, SLOW_CALL_MS, OPEN_MS);
+            breakers.put(endpoint, breaker);
+        }
+        return breaker;
+    }
+
+    // Concurrency limiter of the endpoint, it is created on the first call.
+    public synchronized AdaptiveLimiter limiter(String endpoint) {
+        AdaptiveLimiter limiter = limiters.get(endpoint);
+        if (limiter == null) {
+            limiter = new AdaptiveLimiter(INITIAL_CONCURRENCY, MIN_CONCURRENCY, MAX_CONCURRENCY);
+            limiters.put(endpoint, limiter);
+        }
+        return limiter;
+    }
+
+    // State of the limiters of all used endpoints, by endpoint.
+    public synchronized Map<String, AdaptiveLimiter.Metrics> getLimiterMetrics() {
+        Map<String, AdaptiveLimiter.Metrics> metrics = new HashMap<>();
+        for (Map.Entry<String, AdaptiveLimiter> entry : limiters.entrySet())
+            metrics.put(entry.getKey(), entry.getValue().getMetrics());
+        return metrics;
+    }
+
+    // Throttling and server errors count as failures of the endpoint, other client errors do not.
+    static boolean isFailureStatus(int code) {
+        return code == 429 || code >= 500;
+    }
+
+    /**
+     * GET the url and read the body before the deadline. Must be called from a background thread.
+     *
+     * @param endpoint   - Endpoint of the url, one of ENDPOINT_*
+     * @param url        - Url of the request
+     * @param deadlineMs - Time left for the whole call, connect and body included
+     * @param reader     - Reads the body
+     * @return T         - Result of the reader
+     */
+    public <T> T get(String endpoint, String url, long deadlineMs, ResponseReader<T> reader) throws IOException {
+        if (deadlineMs <= 0)
+            throw new SocketTimeoutException("Deadline exceeded before " + url);
+        long start = System.nanoTime();
+        long deadlineNanos = start + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        AdaptiveLimiter limiter = limiter(endpoint);
+        AdaptiveLimiter.Permit permit;
+        try {
+            permit = limiter.acquire(deadlineMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + url);
+        }
+        if (permit == null)
+            throw new SocketTimeoutException("Deadline exceeded while waiting for " + url);
+        CircuitBreaker breaker = breaker(endpoint);
+        if (!breaker.allowRequest()) {
+            limiter.onIgnored(permit);
+            throw new CircuitOpenException(endpoint);
+        }
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        long sentNanos = System.nanoTime();
+        long latencyMs = -1;                // time to the response headers, -1 if there is no response
+        boolean failed = true;
+        HttpURLConnection connection = null;
+        try {
+            if (remainingMs <= 0)
+                throw new SocketTimeoutException("Deadline exceeded while waiting for " + url);
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout((int) Math.min(CONNECT_TIMEOUT_MS, remainingMs));
+            connection.setReadTimeout((int) remainingMs);
+            int code = connection.getResponseCode();
+            latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sentNanos);
+            if (code != HttpURLConnection.HTTP_OK) {
+                failed = isFailureStatus(code);
+                throw new HttpStatusException(code, url);
+            }
+            InputStream body = new DeadlineInputStream(connection.getInputStream(), deadlineNanos);
+            T result = reader.read(new BufferedReader(new InputStreamReader(body, "UTF-8")));
+            failed = false;
+            return result;
+        } finally {
+            if (connection != null)
+                connection.disconnect();
+            if (failed) {
+                breaker.onFailure();
+                limiter.onDropped(permit);
+            }
+            else {
+                breaker.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sentNanos));
+                limiter.onSuccess(permit, latencyMs);
+            }
+        }
+    }
+
+    // GET the whole body as text.
+    public String getString(String endpoint, String url, long deadlineMs) throws IOException {
+        return get(endpoint, url, deadlineMs, new ResponseReader<String>() {
+            @Override
+            public String read(Reader reader) throws IOException {
+                StringBuilder body = new StringBuilder();
+                char[] buffer = new char[4096];
+                int count;
+                while ((count = reader.read(buffer)) != -1)
+                    body.append(buffer, 0, count);
+                return body.toString();
+            }
+        });
+    }
+
+    // Body which fails when the deadline is reached, also if the server keeps sending slowly.
+    private static class DeadlineInputStream extends FilterInputStream {
+        private final long deadlineNanos;
+
+        DeadlineInputStream(InputStream in, long deadlineNanos) {
+            super(in);
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        private void checkDeadline() throws SocketTimeoutException {
+            if (System.nanoTime() > deadlineNanos)
+                throw new SocketTimeoutException("Deadline exceeded while reading the response");
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeadline();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            checkDeadline();
+            return super.read(buffer, offset, count);
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+/**
+ * Volley GET request of a JSON object through the shared fetch layer. The request has a deadline:
+ * a short socket timeout with one retry, instead of the default retries of Volley. Its result is
+ * recorded in the circuit breaker of the endpoint, and while the circuit is open the request is not
+ * sent at all - the error listener is called with CircuitOpenError and the caller shows cached data.
+ * The request also holds a permit of the concurrency limiter of the endpoint while it runs, so it
+ * waits when the API is throttling or slow, see AdaptiveLimiter.
+ */
+
+package com.example.cryptocurrency;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.JsonObjectRequest;
+
+import org.json.JSONObject;
+
+public class ApiJsonRequest extends JsonObjectRequest {
+
+    // Timeout of every attempt, the retry does not back off; with one retry a request ends after about twice this time.
+    private static final int TIMEOUT_MS = 4000;
+    private static final int MAX_RETRIES = 1;
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Request was not sent, the API of the endpoint is degraded.
+    public static class CircuitOpenError extends VolleyError {
+        CircuitOpenError(String endpoint) {
+            super("Circuit of " + endpoint + " is open");
+        }
+    }
+
+    private final String endpoint;
+    private Priority priority = Priority.NORMAL;
+    private long sentAtMs;
+    private AdaptiveLimiter.Permit permit;      // null before the request is sent and after it is returned
+
+    public ApiJsonRequest(String endpoint, String url, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener) {
+        super(Request.Method.GET, url, null, listener, errorListener);
+        this.endpoint = endpoint;
+        setRetryPolicy(new DefaultRetryPolicy(TIMEOUT_MS, MAX_RETRIES, 0f));
+    }
+
+    // Prefetch requests are queued after requests of the visible screen.
+    public ApiJsonRequest setPriority(Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return priority;
+    }
+
+    // Add the request to the shared queue. Must be called from the main thread.
+    public void send() {
+        if (!ApiClient.getInstance().breaker(endpoint).allowRequest()) {
+            // Listener is called later, as for a sent request.
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    ApiJsonRequest.super.deliverError(new CircuitOpenError(endpoint));
+                }
+            });
+            return;
+        }
+        // Permit may come later, on the thread of the call which returns one.
+        ApiClient.getInstance().limiter(endpoint).acquireAsync(new AdaptiveLimiter.PermitCallback() {
+            @Override
+            public void onPermit(AdaptiveLimiter.Permit permit) {
+                if (isCanceled()) {
+                    ApiClient.getInstance().limiter(endpoint).onIgnored(permit);
+                    return;
+                }
+                synchronized (ApiJsonRequest.this) {
+                    ApiJsonRequest.this.permit = permit;
+                    sentAtMs = SystemClock.elapsedRealtime();
+                }
+                CryptocurrencyApp.getRequestQueue().add(ApiJsonRequest.this);
+            }
+        });
+    }
+
+    // Permit of the sent request, only the first caller gets it.
+    private synchronized AdaptiveLimiter.Permit takePermit() {
+        AdaptiveLimiter.Permit taken = permit;
+        permit = null;
+        return taken;
+    }
+
+    @Override
+    protected void deliverResponse(JSONObject response) {
+        long latencyMs = SystemClock.elapsedRealtime() - sentAtMs;
+        ApiClient.getInstance().breaker(endpoint).onSuccess(latencyMs);
+        AdaptiveLimiter.Permit taken = takePermit();
+        if (taken != null)
+            ApiClient.getInstance().limiter(endpoint).onSuccess(taken, latencyMs);
+        super.deliverResponse(response);
+    }
+
+    @Override
+    public void deliverError(VolleyError error) {
+        long latencyMs = SystemClock.elapsedRealtime() - sentAtMs;
+        CircuitBreaker breaker = ApiClient.getInstance().breaker(endpoint);
+        AdaptiveLimiter limiter = ApiClient.getInstance().limiter(endpoint);
+        AdaptiveLimiter.Permit taken = takePermit();
+        if (error.networkResponse != null && !ApiClient.isFailureStatus(error.networkResponse.statusCode)) {
+            breaker.onSuccess(latencyMs);
+            if (taken != null)
+                limiter.onSuccess(taken, latencyMs);
+        }
+        else {
+            breaker.onFailure();
+            if (taken != null)
+                limiter.onDropped(taken);
+        }
+        super.deliverError(error);
+    }
+
+    // Cancelled requests are not delivered, so the permit is returned here.
+    @Override
+    public void cancel() {
+        super.cancel();
+        AdaptiveLimiter.Permit taken = takePermit();
+        if (taken != null)
+            ApiClient.getInstance().limiter(endpoint).onIgnored(taken);
+    }
+
+}
@@ -0,0 +1,260 @@
+/**
+ * Backfill of long histories into the candle store.
+ *
+ * One histo request returns at most CHUNK_LIMIT candles. A backfill walks backwards from now with
+ * toTs in fixed-size chunks, a few chunks run concurrently, and all requests share one rate limit.
+ * Every chunk is written into the store as soon as it arrives. The cursor (newest chunk which is
+ * still missing) is stored in the database after every chunk, so a backfill is resumed after
+ * process death. Chunks could finish out of order, the cursor moves only over stored chunks.
+ */
+
+package com.example.cryptocurrency;
+
+import android.database.Cursor;
+import android.os.Process;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+public class BackfillEngine {
+
+    public static final String HISTO_URL = "https://min-api.cryptocompare.com/data/v2/histo";
+    private static final int CHUNK_LIMIT = 2000;                // maximal limit of one histo request
+    private static final int MAX_CONCURRENT_CHUNKS = 3;
+    private static final double REQUESTS_PER_SECOND = 4;
+    private static final long CHUNK_DEADLINE_MS = 30000;
+
+    private static BackfillEngine instance;
+
+    private final ExecutorService executor;
+    private final RateLimiter rateLimiter = new RateLimiter(REQUESTS_PER_SECOND);
+    private final Map<String, Job> jobs = new HashMap<>();      // running backfills by key
+
+    // Backfill of one symbol, quote and time frame.
+    private static class Job {
+        final String symbol, quote, timeFrame;
+        final int step;                                 // candle length in seconds
+        final int targetFromTs;
+        final Set<Integer> storedChunks = new HashSet<>();  // toTs of stored chunks older than the cursor
+        int cursorToTs;                                 // newest chunk which is still missing
+        int nextDispatchToTs;
+        int inFlight;
+        boolean failed;
+        int startReachedToTs = Integer.MIN_VALUE;       // chunk which reached the time before the Coin existed
+
+        Job(String symbol, String quote, String timeFrame, int cursorToTs, int targetFromTs) {
+            this.symbol = symbol;
+            this.quote = quote;
+            this.timeFrame = timeFrame;
+            this.step = DatabaseHandler.candleSeconds(timeFrame);
+            this.targetFromTs = targetFromTs;
+            this.cursorToTs = cursorToTs;
+            this.nextDispatchToTs = cursorToTs;
+        }
+
+        // One chunk covers CHUNK_LIMIT + 1 candles, up to and including toTs.
+        int chunkSeconds() {
+            return (CHUNK_LIMIT + 1) * step;
+        }
+
+        boolean isDone() {
+            return cursorToTs < targetFromTs || cursorToTs < startReachedToTs;
+        }
+
+        boolean canDispatch() {
+            return !failed && nextDispatchToTs >= targetFromTs && nextDispatchToTs > startReachedToTs
+                    && inFlight < MAX_CONCURRENT_CHUNKS;
+        }
+    }
+
+    private BackfillEngine() {
+        executor = Executors.newFixedThreadPool(MAX_CONCURRENT_CHUNKS, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "backfill");
+            }
+        });
+    }
+
+    public static synchronized BackfillEngine getInstance() {
+        if (instance == null)
+            instance = new BackfillEngine();
+        return instance;
+    }
+
+    // Oldest history which is backfilled by default: years of days, months of hours, a week of minutes.
+    public static int defaultTargetFromTs(String timeFrame) {
+        long now = System.currentTimeMillis() / 1000;
+        switch (timeFrame) {
+            case "minute":
+                return (int) (now - 7L * 86400);
+            case "hour":
+                return (int) (now - 90L * 86400);
+            default:
+                return (int) (now - 5L * 365 * 86400);
+        }
+    }
+
+    /**
+     * Start or resume the backfill of one line. Nothing is done if the backfill is running, or if it
+     * is finished for the same or an older target.
+     *
+     * @param symbol       - Symbol of selected Cryptocurrency
+     * @param quote        - Symbol in which the value is expressed
+     * @param timeFrame    - Time frame, e.g. "day", "hour", "minute"
+     * @param targetFromTs - Oldest time which should be stored
+     */
+    public void start(final String symbol, final String quote, final String timeFrame, final int targetFromTs) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                startJob(symbol, quote, timeFrame, targetFromTs, false);
+            }
+        });
+    }
+
+    // Resume all unfinished backfills from their stored cursors, e.g. after process death.
+    public void resumeAll() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Cursor res = CryptocurrencyApp.getDatabase().readBackfillCursors(true);
+                try {
+                    while (res.moveToNext())
+                        startJob(res.getString(0), res.getString(1), res.getString(2), res.getInt(4), true);
+                } finally {
+                    res.close();
+                }
+            }
+        });
+    }
+
+    // Runs on a backfill thread.
+    private void startJob(String symbol, String quote, String timeFrame, int targetFromTs, boolean resume) {
+        String key = symbol + "/" + quote + "/" + timeFrame;
+        synchronized (this) {
+            if (jobs.containsKey(key))
+                return;
+        }
+        int step = DatabaseHandler.candleSeconds(timeFrame);
+        int nowTs = (int) (System.currentTimeMillis() / 1000);
+        int cursorToTs = nowTs - nowTs % step;
+
+        // Stored cursor of this line.
+        Cursor res = CryptocurrencyApp.getDatabase().readBackfillCursors(false);
+        try {
+            while (res.moveToNext()) {
+                if (res.getString(0).equals(symbol) && res.getString(1).equals(quote) && res.getString(2).equals(timeFrame)) {
+                    boolean done = res.getInt(5) != 0;
+                    if (done && res.getInt(4) <= targetFromTs)
+                        return;
+                    cursorToTs = res.getInt(3);
+                    if (resume)
+                        targetFromTs = res.getInt(4);
+                    break;
+                }
+            }
+        } finally {
+            res.close();
+        }
+
+        Job job = new Job(symbol, quote, timeFrame, cursorToTs, targetFromTs);
+        CryptocurrencyApp.getDatabase().writeBackfillCursor(symbol, quote, timeFrame, job.cursorToTs, targetFromTs, job.isDone());
+        synchronized (this) {
+            if (jobs.containsKey(key) || job.isDone())
+                return;
+            jobs.put(key, job);
+            dispatch(job);
+        }
+    }
+
+    // Submit chunks while the job has free slots. Must be called with the lock held.
+    private void dispatch(final Job job) {
+        while (job.canDispatch()) {
+            final int toTs = job.nextDispatchToTs;
+            job.nextDispatchToTs -= job.chunkSeconds();
+            job.inFlight++;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runChunk(job, toTs);
+                }
+            });
+        }
+    }
+
+    // Runs on a backfill thread: fetch one chunk and write it into the store. The chunk is always finished, also
+    // if parsing or writing throws, so the job does not keep a slot forever and could be started again.
+    private void runChunk(Job job, int toTs) {
+        boolean stored = false;
+        boolean reachedStart = false;
+        try {
+            rateLimiter.acquire();
+            CandleBuffer candles = new CandleBuffer(CHUNK_LIMIT + 1);
+            reachedStart = fetchChunk(job, toTs, candles);
+            if (candles.size() > 0)
+                CryptocurrencyApp.getDatabase().writeCandles(job.symbol, job.quote, job.timeFrame, candles);
+            stored = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // Malformed payload or a failed write.
+            e.printStackTrace();
+        } finally {
+            chunkFinished(job, toTs, stored, reachedStart);
+        }
+    }
+
+    // Chunks share the circuit breaker of histo requests. While it is open chunks fail at once and the backfill is resumed later.
+    private boolean fetchChunk(Job job, int toTs, final CandleBuffer candles) throws IOException {
+        String url = HISTO_URL + job.timeFrame + "?fsym=" + job.symbol + "&tsym=" + job.quote +
+                "&limit=" + CHUNK_LIMIT + "&toTs=" + toTs;
+        return ApiClient.getInstance().get(ApiClient.ENDPOINT_HISTO, url, CHUNK_DEADLINE_MS, new ApiClient.ResponseReader<Boolean>() {
+            @Override
+            public Boolean read(Reader reader) throws IOException {
+                return HistoParser.parse(reader, candles);
+            }
+        });
+    }
+
+    // Move the cursor over stored chunks, store it, and dispatch next chunks.
+    private void chunkFinished(Job job, int toTs, boolean stored, boolean reachedStart) {
+        int cursorToTs;
+        boolean done;
+        synchronized (this) {
+            job.inFlight--;
+            if (!stored)
+                job.failed = true;      // cursor stays before this chunk, it is requested again on resume
+            else {
+                job.storedChunks.add(toTs);
+                if (reachedStart)
+                    job.startReachedToTs = Math.max(job.startReachedToTs, toTs);
+            }
+            while (job.storedChunks.remove(job.cursorToTs))
+                job.cursorToTs -= job.chunkSeconds();
+            cursorToTs = job.cursorToTs;
+            done = job.isDone();
+            if (done || (job.failed && job.inFlight == 0))
+                jobs.remove(job.symbol + "/" + job.quote + "/" + job.timeFrame);
+            else
+                dispatch(job);
+        }
+        CryptocurrencyApp.getDatabase().writeBackfillCursor(job.symbol, job.quote, job.timeFrame, cursorToTs, job.targetFromTs, done);
+    }
+
+}
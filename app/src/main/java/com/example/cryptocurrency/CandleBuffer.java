@@ -0,0 +1,69 @@
+/**
+ * Growable buffer of candles in primitive arrays. Candles are read from the candle store into the
+ * buffer without creating an object per candle, and the buffer could be reused for every query.
+ */
+
+package com.example.cryptocurrency;
+
+import java.util.Arrays;
+
+public class CandleBuffer {
+    private int size;
+    private int[] times;            // open time of the candle in seconds
+    private float[] opens;
+    private float[] highs;
+    private float[] lows;
+    private float[] closes;
+
+    public CandleBuffer() {
+        this(64);
+    }
+
+    public CandleBuffer(int capacity) {
+        capacity = Math.max(1, capacity);
+        times = new int[capacity];
+        opens = new float[capacity];
+        highs = new float[capacity];
+        lows = new float[capacity];
+        closes = new float[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Remove all candles, arrays are kept for the next query.
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(int time, float open, float high, float low, float close) {
+        if (size == times.length)
+            grow(size * 2);
+        times[size] = time;
+        opens[size] = open;
+        highs[size] = high;
+        lows[size] = low;
+        closes[size] = close;
+        size++;
+    }
+
+    public int time(int index) { return times[index]; }
+
+    public float open(int index) { return opens[index]; }
+
+    public float high(int index) { return highs[index]; }
+
+    public float low(int index) { return lows[index]; }
+
+    public float close(int index) { return closes[index]; }
+
+    private void grow(int capacity) {
+        times = Arrays.copyOf(times, capacity);
+        opens = Arrays.copyOf(opens, capacity);
+        highs = Arrays.copyOf(highs, capacity);
+        lows = Arrays.copyOf(lows, capacity);
+        closes = Arrays.copyOf(closes, capacity);
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Window loader for graphs which reads windows from the candle store. Every line of the graph is
+ * read with a range query into a primitive buffer and aligned to the same time axis; a missing
+ * candle repeats the previous value. Only the requested window is held in memory, however much
+ * history is stored.
+ */
+
+package com.example.cryptocurrency;
+
+import android.os.AsyncTask;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CandleWindowLoader implements GraphView.WindowLoader {
+
+    @Override
+    public void loadWindow(GraphView graphView, int fromTs, int toTs) {
+        new WindowTask(graphView, graphView.getWindowGeneration(), graphView.getSymbolName(), new ArrayList<>(graphView.getSymbols()),
+                graphView.getTimeFrame(), fromTs, toTs).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    // Reads the window in background and passes it to the graph view, if the view still exists.
+    private static class WindowTask extends AsyncTask<Void, Void, Void> {
+        private final WeakReference<GraphView> graphView;
+        private final int generation;
+        private final String selSymbol;
+        private final List<String> symbols;
+        private final String timeFrame;
+        private int fromTs, toTs;
+        private float[] values = new float[0];
+        private int[] timeAxis = new int[0];
+
+        WindowTask(GraphView graphView, int generation, String selSymbol, List<String> symbols, String timeFrame, int fromTs, int toTs) {
+            this.graphView = new WeakReference<>(graphView);
+            this.generation = generation;
+            this.selSymbol = selSymbol;
+            this.symbols = symbols;
+            this.timeFrame = timeFrame;
+            this.fromTs = fromTs;
+            this.toTs = toTs;
+        }
+
+        @Override
+        protected Void doInBackground(Void... voids) {
+            int step = DatabaseHandler.candleSeconds(timeFrame);
+
+            // Window is limited to stored candles of all lines.
+            int storedFrom = Integer.MAX_VALUE, storedTo = Integer.MIN_VALUE;
+            for (String symbol : symbols) {
+                int[] bounds = CryptocurrencyApp.getDatabase().readCandleBounds(selSymbol, symbol, timeFrame);
+                if (bounds != null) {
+                    storedFrom = Math.min(storedFrom, bounds[0]);
+                    storedTo = Math.max(storedTo, bounds[1]);
+                }
+            }
+            fromTs = Math.max(fromTs, storedFrom);
+            toTs = Math.min(toTs, storedTo);
+            if (fromTs > toTs)
+                return null;
+            fromTs -= ((fromTs % step) + step) % step;
+
+            int pointsPerLine = (toTs - fromTs) / step + 1;
+            timeAxis = new int[pointsPerLine];
+            for (int i = 0; i < pointsPerLine; i++)
+                timeAxis[i] = fromTs + i * step;
+            values = new float[pointsPerLine * symbols.size()];
+            Arrays.fill(values, Float.NaN);
+
+            CandleBuffer candles = new CandleBuffer(pointsPerLine);
+            for (int line = 0; line < symbols.size(); line++) {
+                CryptocurrencyApp.getDatabase().readCandles(selSymbol, symbols.get(line), timeFrame, fromTs, toTs, candles);
+                int offset = line * pointsPerLine;
+                for (int i = 0; i < candles.size(); i++) {
+                    int index = (candles.time(i) - fromTs) / step;
+                    if (index >= 0 && index < pointsPerLine)
+                        values[offset + index] = candles.close(i);
+                }
+                // Missing candles repeat the previous value, values before the first candle stay missing.
+                for (int i = 1; i < pointsPerLine; i++) {
+                    if (Float.isNaN(values[offset + i]))
+                        values[offset + i] = values[offset + i - 1];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void aVoid) {
+            super.onPostExecute(aVoid);
+            GraphView view = graphView.get();
+            if (view != null)
+                view.showWindow(generation, values, timeAxis, symbols);
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Ingest of the full list of Cryptocurrencies from https://min-api.cryptocompare.com/data/all/coinlist
+ *
+ * The payload is several megabytes of JSON. It is parsed with a streaming reader, every Coin is
+ * passed to the sink as soon as it is read, so the whole document or a JSONObject tree is never
+ * held in memory. The sink stages Coins while they are read and replaces the stored list in one
+ * transaction at the end.
+ */
+
+package com.example.cryptocurrency;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+public class CatalogIngest {
+
+    public static final String COIN_LIST_URL = "https://min-api.cryptocompare.com/data/all/coinlist";
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    // Receives Coins while the payload is parsed. Nothing is stored if rollback is called.
+    public interface CatalogSink {
+        void begin();
+        void add(String symbol, String name, String imagePath, int sortOrder);
+        void commit();
+        void rollback();
+    }
+
+    // Number of stored Coins and duration of the ingest.
+    public static class Result {
+        public final int count;
+        public final long durationMs;
+
+        Result(int count, long durationMs) {
+            this.count = count;
+            this.durationMs = durationMs;
+        }
+    }
+
+    private final String url;
+    private final CatalogSink sink;
+
+    public CatalogIngest(String url, CatalogSink sink) {
+        this.url = url;
+        this.sink = sink;
+    }
+
+    /**
+     * Download and store the full list. Must be called from a background thread.
+     *
+     * @return Result - Number of stored Coins and duration
+     */
+    public Result ingest() throws IOException {
+        long start = System.nanoTime();
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+                throw new IOException("Unexpected response code " + connection.getResponseCode() + " for " + url);
+            InputStream inputStream = connection.getInputStream();
+            Reader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"), 16 * 1024);
+            int count = ingest(reader, sink);
+            return new Result(count, (System.nanoTime() - start) / 1000000);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Parse the payload from the reader and pass every Coin to the sink. The sink commits only a whole list.
+     *
+     * @param reader - Reader of the JSON payload
+     * @param sink   - Storage for Coins
+     * @return int   - Number of stored Coins
+     */
+    static int ingest(Reader reader, CatalogSink sink) throws IOException {
+        JsonReader jsonReader = new JsonReader(reader);
+        int count = 0;
+        boolean success = false;
+        sink.begin();
+        try {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                String name = jsonReader.nextName();
+                if (name.equals("Data") && jsonReader.peek() == JsonToken.BEGIN_OBJECT)
+                    count = readData(jsonReader, sink);
+                else if (name.equals("Response") && jsonReader.peek() == JsonToken.STRING) {
+                    String response = jsonReader.nextString();
+                    if (response.equals("Error"))
+                        throw new IOException("API returned an error response");
+                }
+                else
+                    jsonReader.skipValue();
+            }
+            jsonReader.endObject();
+            success = true;
+        } finally {
+            if (success)
+                sink.commit();
+            else
+                sink.rollback();
+            jsonReader.close();
+        }
+        return count;
+    }
+
+    // Object "Data" - one object per Coin, keyed by symbol.
+    private static int readData(JsonReader jsonReader, CatalogSink sink) throws IOException {
+        int count = 0;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String key = jsonReader.nextName();
+            String symbol = key;
+            String coinName = null;
+            String imagePath = null;
+            int sortOrder = Integer.MAX_VALUE;
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                String field = jsonReader.nextName();
+                if (jsonReader.peek() == JsonToken.NULL) {
+                    jsonReader.nextNull();
+                    continue;
+                }
+                switch (field) {
+                    case "Symbol":
+                        symbol = jsonReader.nextString();
+                        break;
+                    case "CoinName":
+                        coinName = jsonReader.nextString();
+                        break;
+                    case "ImageUrl":
+                        imagePath = jsonReader.nextString();
+                        break;
+                    case "SortOrder":
+                        sortOrder = parseSortOrder(jsonReader.nextString());
+                        break;
+                    default:
+                        jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+            sink.add(symbol, coinName != null ? coinName : symbol, imagePath, sortOrder);
+            count++;
+        }
+        jsonReader.endObject();
+        return count;
+    }
+
+    private static int parseSortOrder(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+}
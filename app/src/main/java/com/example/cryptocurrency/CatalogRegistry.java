@@ -0,0 +1,59 @@
+/**
+ * Process-wide registry of the coin catalog.
+ *
+ * The registry holds one immutable CoinCatalog. Readers get the current catalog without locking,
+ * and a new catalog replaces the old one when Coins are added. Activities pass only the selected
+ * symbol and read everything else from here. After process death the catalog is restored lazily
+ * from the catalog snapshot file.
+ */
+
+package com.example.cryptocurrency;
+
+import android.content.Context;
+
+import java.util.Collection;
+
+public final class CatalogRegistry {
+
+    private static volatile CoinCatalog catalog;
+
+    private CatalogRegistry() {
+    }
+
+    /**
+     * Current catalog. If nothing is published in this process yet, the catalog is restored from
+     * the snapshot file.
+     *
+     * @param context - Any context, used only for restoring
+     * @return CoinCatalog - Immutable catalog
+     */
+    public static CoinCatalog getCatalog(Context context) {
+        CoinCatalog current = catalog;
+        if (current != null)
+            return current;
+        synchronized (CatalogRegistry.class) {
+            if (catalog == null) {
+                CoinCatalog.Builder builder = new CoinCatalog.Builder();
+                for (Coin coin : new CatalogSnapshot(context.getApplicationContext()).read())
+                    builder.add(coin);
+                catalog = builder.build();
+            }
+            return catalog;
+        }
+    }
+
+    /**
+     * Add Coins into the catalog. Existing Coins keep their IDs, new ones are appended.
+     *
+     * @param coins - Coins ordered by rank
+     */
+    public static synchronized void publish(Collection<Coin> coins) {
+        CoinCatalog.Builder builder = catalog == null ? new CoinCatalog.Builder() : catalog.toBuilder();
+        for (Coin coin : coins) {
+            if (coin.getSymbolCoin() != null)
+                builder.add(coin);
+        }
+        catalog = builder.build();
+    }
+
+}
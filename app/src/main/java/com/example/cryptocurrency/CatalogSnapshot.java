@@ -0,0 +1,148 @@
+/**
+ * Binary snapshot of the last known list of Cryptocurrencies (rank, symbol, name, image).
+ *
+ * The snapshot is written after each sync and it is read by memory mapping the file, so the list
+ * could be shown in the first frame without waiting for network or database.
+ *
+ * File format: magic, version, count, then for every Coin: rank (int), symbol, name and image
+ * path as length prefixed UTF-8 strings. Image path is stored without "https://www.cryptocompare.com".
+ */
+
+package com.example.cryptocurrency;
+
+import android.content.Context;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CatalogSnapshot {
+
+    private static final String FILE_NAME = "catalog.snapshot";
+    private static final int MAGIC = 0x43435331;    // "CCS1"
+    private static final int VERSION = 1;
+    private static final String CRYPTOCOMPARE_URL = "https://www.cryptocompare.com";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final AtomicReference<List<Coin>> pendingWrite = new AtomicReference<>();
+
+    public CatalogSnapshot(Context context) {
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Read the snapshot. Returns an empty list if the snapshot does not exist or it is damaged.
+     *
+     * @return List<Coin> - Coins ordered by rank
+     */
+    public List<Coin> read() {
+        List<Coin> coins = new ArrayList<>();
+        if (!file.exists())
+            return coins;
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            FileChannel channel = inputStream.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return coins;
+            int count = buffer.getInt();
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < count; i++) {
+                buffer.getInt();    // rank, Coins are stored in rank order
+                String symbol = readString(buffer, bytes);
+                String name = readString(buffer, bytes);
+                String image = readString(buffer, bytes);
+                coins.add(new Coin(image.startsWith("/") ? CRYPTOCOMPARE_URL + image : image, name, symbol));
+            }
+        } catch (IOException | BufferUnderflowException e) {
+            e.printStackTrace();
+            coins.clear();
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return coins;
+    }
+
+    /**
+     * Write the snapshot on the disk executor of the app, so snapshots of all activity instances share
+     * one thread. If several writes are requested while the previous one is still running, only the
+     * newest list is written.
+     *
+     * @param coins - Coins ordered by rank, the list must not be modified after this call
+     */
+    public void writeAsync(List<Coin> coins) {
+        if (pendingWrite.getAndSet(coins) != null)
+            return;     // write is already scheduled, it would take the newest list
+        CryptocurrencyApp.getDiskExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                List<Coin> newest = pendingWrite.getAndSet(null);
+                if (newest == null)
+                    return;
+                try {
+                    write(newest);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    // Write into temporary file and rename it, so a reader never sees a half written snapshot.
+    private void write(List<Coin> coins) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(coins.size());
+            for (int i = 0; i < coins.size(); i++) {
+                Coin coin = coins.get(i);
+                String image = coin.getImageCoin();
+                if (image != null && image.startsWith(CRYPTOCOMPARE_URL))
+                    image = image.substring(CRYPTOCOMPARE_URL.length());
+                out.writeInt(i);
+                writeString(out, coin.getSymbolCoin());
+                writeString(out, coin.getNameCoin());
+                writeString(out, image);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(file))
+            throw new IOException("Renaming of " + tmpFile + " failed");
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer, byte[] bytes) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > bytes.length)
+            bytes = new byte[length];
+        buffer.get(bytes, 0, length);
+        return new String(bytes, 0, length, UTF_8);
+    }
+
+}
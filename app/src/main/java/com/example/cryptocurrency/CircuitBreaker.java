@@ -0,0 +1,74 @@
+/**
+ * Circuit breaker of one API endpoint. After several failed or slow calls in a row the circuit is
+ * open: calls are rejected at once, without a request, and callers show cached data. After a pause
+ * one probe call is let through (half-open); its result closes the circuit or opens it again.
+ */
+
+package com.example.cryptocurrency;
+
+import java.util.concurrent.TimeUnit;
+
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;     // failed or slow calls in a row which open the circuit
+    private final long slowCallMs;          // a successful call which took longer counts as failed
+    private final long openMs;              // calls are rejected this long before the probe
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+
+    public CircuitBreaker(int failureThreshold, long slowCallMs, long openMs) {
+        this.failureThreshold = failureThreshold;
+        this.slowCallMs = slowCallMs;
+        this.openMs = openMs;
+    }
+
+    /**
+     * Ask for a call. Every allowed call must be finished with onSuccess or onFailure.
+     *
+     * @return boolean - True if the call could be made, false while the circuit is open
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAtNanos < TimeUnit.MILLISECONDS.toNanos(openMs))
+                return false;
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight)
+                return false;
+            probeInFlight = true;
+        }
+        return true;
+    }
+
+    // Call returned a response. A slow response is counted as a failure, but its data is used.
+    public synchronized void onSuccess(long latencyMs) {
+        if (latencyMs > slowCallMs) {
+            onFailure();
+            return;
+        }
+        failures = 0;
+        probeInFlight = false;
+        state = State.CLOSED;
+    }
+
+    // Call failed: no response, timeout, throttling or server error.
+    public synchronized void onFailure() {
+        failures++;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+}
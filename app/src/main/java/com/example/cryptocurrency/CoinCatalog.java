@@ -0,0 +1,215 @@
+/**
+ * Catalog of Cryptocurrencies stored as arrays. Every symbol has a dense int ID (0, 1, 2, ...),
+ * names, symbols and image paths are kept in packed arrays, and image paths are stored without
+ * the "https://www.cryptocompare.com" prefix. Lookup by symbol and by ID is O(1), and sets of
+ * Coins (e.g. comparisons on a graph) are BitSets of IDs.
+ *
+ * A catalog is immutable, new Coins are added with a Builder which creates a new catalog.
+ */
+
+package com.example.cryptocurrency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+public class CoinCatalog {
+
+    public static final String CRYPTOCOMPARE_URL = "https://www.cryptocompare.com";
+    public static final CoinCatalog EMPTY = new Builder().build();
+
+    private final String[] symbols;
+    private final String[] names;
+    private final String[] imagePaths;
+    private final int size;
+    private final int[] slots;      // open addressing hash table, ID + 1 for every used slot
+
+    private CoinCatalog(String[] symbols, String[] names, String[] imagePaths, int size, int[] slots) {
+        this.symbols = symbols;
+        this.names = names;
+        this.imagePaths = imagePaths;
+        this.size = size;
+        this.slots = slots;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * ID of the symbol.
+     *
+     * @param symbol - Symbol of the Cryptocurrency
+     * @return int   - ID, or -1 if the symbol is not in the catalog
+     */
+    public int idOf(String symbol) {
+        return find(symbols, slots, symbol);
+    }
+
+    public boolean contains(String symbol) {
+        return idOf(symbol) >= 0;
+    }
+
+    public String symbol(int id) {
+        return symbols[id];
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    // Full image url, prefix is added back.
+    public String imageUrl(int id) {
+        String path = imagePaths[id];
+        if (path == null)
+            return null;
+        return path.startsWith("/") ? CRYPTOCOMPARE_URL + path : path;
+    }
+
+    public Coin coin(int id) {
+        return new Coin(imageUrl(id), names[id], symbols[id]);
+    }
+
+    // Set with all IDs of the catalog.
+    public BitSet allIds() {
+        BitSet ids = new BitSet(size);
+        ids.set(0, size);
+        return ids;
+    }
+
+    // Set of IDs for symbols. Symbols which are not in the catalog are skipped.
+    public BitSet idsOf(Collection<String> symbolList) {
+        BitSet ids = new BitSet(size);
+        for (String symbol : symbolList) {
+            int id = idOf(symbol);
+            if (id >= 0)
+                ids.set(id);
+        }
+        return ids;
+    }
+
+    // Symbols for the set of IDs, ordered by ID.
+    public List<String> symbolsOf(BitSet ids) {
+        List<String> symbolList = new ArrayList<>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0 && id < size; id = ids.nextSetBit(id + 1))
+            symbolList.add(symbols[id]);
+        return symbolList;
+    }
+
+    // Builder which starts with all Coins of this catalog. IDs of existing Coins are not changed.
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    private static int find(String[] symbols, int[] slots, String symbol) {
+        if (symbol == null)
+            return -1;
+        int mask = slots.length - 1;
+        int slot = hash(symbol) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (symbols[id].equals(symbol))
+                return id;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int hash(String symbol) {
+        int h = symbol.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    // Builder for a new catalog. A symbol which is added twice keeps its first ID, name and image are updated.
+    public static class Builder {
+        private String[] symbols;
+        private String[] names;
+        private String[] imagePaths;
+        private int size;
+        private int[] slots;
+
+        public Builder() {
+            symbols = new String[16];
+            names = new String[16];
+            imagePaths = new String[16];
+            slots = new int[32];
+        }
+
+        private Builder(CoinCatalog catalog) {
+            int capacity = Math.max(16, catalog.size);
+            symbols = Arrays.copyOf(catalog.symbols, capacity);
+            names = Arrays.copyOf(catalog.names, capacity);
+            imagePaths = Arrays.copyOf(catalog.imagePaths, capacity);
+            size = catalog.size;
+            slots = Arrays.copyOf(catalog.slots, catalog.slots.length);
+        }
+
+        /**
+         * Add a Coin into the catalog.
+         *
+         * @param symbol   - Symbol of the Cryptocurrency
+         * @param name     - Full name
+         * @param imageUrl - Full image url or image path
+         * @return int     - ID of the Coin, or -1 if the symbol is null and nothing is added
+         */
+        public int add(String symbol, String name, String imageUrl) {
+            if (symbol == null)
+                return -1;
+            String imagePath = imageUrl;
+            if (imagePath != null && imagePath.startsWith(CRYPTOCOMPARE_URL))
+                imagePath = imagePath.substring(CRYPTOCOMPARE_URL.length());
+            int id = find(symbols, slots, symbol);
+            if (id >= 0) {
+                if (name != null)
+                    names[id] = name;
+                if (imagePath != null)
+                    imagePaths[id] = imagePath;
+                return id;
+            }
+            if (size == symbols.length) {
+                symbols = Arrays.copyOf(symbols, size * 2);
+                names = Arrays.copyOf(names, size * 2);
+                imagePaths = Arrays.copyOf(imagePaths, size * 2);
+            }
+            id = size++;
+            symbols[id] = symbol.intern();
+            names[id] = name;
+            imagePaths[id] = imagePath;
+            if (size * 2 > slots.length)
+                rehash(slots.length * 2);
+            else
+                insertSlot(id);
+            return id;
+        }
+
+        public int add(Coin coin) {
+            return add(coin.getSymbolCoin(), coin.getNameCoin(), coin.getImageCoin());
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public CoinCatalog build() {
+            return new CoinCatalog(Arrays.copyOf(symbols, size), Arrays.copyOf(names, size),
+                    Arrays.copyOf(imagePaths, size), size, Arrays.copyOf(slots, slots.length));
+        }
+
+        private void rehash(int capacity) {
+            slots = new int[capacity];
+            for (int id = 0; id < size; id++)
+                insertSlot(id);
+        }
+
+        private void insertSlot(int id) {
+            int mask = slots.length - 1;
+            int slot = hash(symbols[id]) & mask;
+            while (slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = id + 1;
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Loader for Cryptocurrency icons.
+ *
+ * All icons are decoded straight to the target size and kept in a bounded memory LRU cache, the
+ * downloaded files are kept in a disk cache. Requests from the list could be paused while the list
+ * is flinging, requests for recycled rows are cancelled and icons of upcoming rows are prefetched.
+ */
+
+package com.example.cryptocurrency;
+
+import android.content.Context;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.LruCache;
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.OkHttp3Downloader;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+public class CoinIconLoader {
+
+    // All requests from the list of Coins have this tag, so they can be paused together.
+    private static final Object LIST_TAG = new Object();
+    private static final int MAX_MEMORY_CACHE_SIZE = 8 * 1024 * 1024;     // 8 MB
+    private static final long DISK_CACHE_SIZE = 20 * 1024 * 1024;         // 20 MB
+
+    private static CoinIconLoader instance;
+    private final Picasso picasso;
+    private boolean offline;
+
+    private CoinIconLoader(Context context) {
+        // Memory cache is 1/16 of the heap, but not bigger than 8 MB.
+        int memoryCacheSize = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, MAX_MEMORY_CACHE_SIZE);
+        picasso = new Picasso.Builder(context)
+                .memoryCache(new LruCache(memoryCacheSize))
+                .downloader(new OkHttp3Downloader(context, DISK_CACHE_SIZE))
+                .build();
+    }
+
+    public static synchronized CoinIconLoader getInstance(Context context) {
+        if (instance == null)
+            instance = new CoinIconLoader(context.getApplicationContext());
+        return instance;
+    }
+
+    // Without an internet access icons are served only from caches.
+    public void setOffline(boolean offline) {
+        this.offline = offline;
+    }
+
+    /**
+     * Load an icon into the list row.
+     *
+     * @param imageUrl - Url of the icon
+     * @param target   - Image view of the row
+     * @param sizePx   - Target size in pixels, the icon is decoded to this size
+     * @param callback - Called after the icon is loaded, it could be null
+     */
+    public void loadListIcon(String imageUrl, ImageView target, int sizePx, Callback callback) {
+        request(imageUrl, sizePx).tag(LIST_TAG).into(target, callback);
+    }
+
+    /**
+     * Load a single icon, e.g. header of the selected Coin. It is not paused by list scrolling.
+     *
+     * @param imageUrl - Url of the icon
+     * @param target   - Image view
+     * @param sizePx   - Target size in pixels
+     * @param callback - Called after the icon is loaded, it could be null
+     */
+    public void loadIcon(String imageUrl, ImageView target, int sizePx, Callback callback) {
+        request(imageUrl, sizePx).into(target, callback);
+    }
+
+    /**
+     * Download and decode an icon in advance, so it is in the cache when its row is shown.
+     *
+     * @param imageUrl - Url of the icon
+     * @param sizePx   - Target size in pixels
+     */
+    public void prefetch(String imageUrl, int sizePx) {
+        if (offline)
+            return;
+        request(imageUrl, sizePx).tag(LIST_TAG).priority(Picasso.Priority.LOW).fetch();
+    }
+
+    // Cancel the request for a recycled row.
+    public void cancel(ImageView target) {
+        picasso.cancelRequest(target);
+    }
+
+    // Pause all list requests, e.g. while the list is flinging.
+    public void pauseList() {
+        picasso.pauseTag(LIST_TAG);
+    }
+
+    public void resumeList() {
+        picasso.resumeTag(LIST_TAG);
+    }
+
+    private RequestCreator request(String imageUrl, int sizePx) {
+        RequestCreator request = picasso.load(imageUrl).resize(sizePx, sizePx).centerInside().onlyScaleDown();
+        if (offline)
+            request.networkPolicy(NetworkPolicy.OFFLINE);
+        return request;
+    }
+
+}
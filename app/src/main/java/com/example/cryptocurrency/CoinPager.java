@@ -0,0 +1,129 @@
+/**
+ * Pager for the list of Cryptocurrencies.
+ *
+ * The next page is requested while the user is still a few rows away from the end of list, so the
+ * list does not stop at the bottom. The pager remembers requested, in-flight and loaded page
+ * numbers, the same page is never requested twice. Pages which arrive out of order are held back
+ * until all previous pages are inserted. All methods must be called from the main thread.
+ */
+
+package com.example.cryptocurrency;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeMap;
+
+public class CoinPager {
+
+    // Performs the real request for a page. Result is returned with onPageLoaded or onPageFailed.
+    public interface PageLoader {
+        void loadPage(int page, int pageSize);
+    }
+
+    // Receives Coins in page order.
+    public interface Listener {
+        void onCoinsAppended(List<Coin> coins);
+    }
+
+    private final int pageSize;
+    private final int prefetchDistance;     // number of rows before the end when the next page is requested
+    private final int maxInFlight;          // maximum number of pages which are loaded at the same time
+    private final PageLoader pageLoader;
+    private final Listener listener;
+
+    private final BitSet requestedPages = new BitSet();
+    private final BitSet inFlightPages = new BitSet();
+    private final BitSet loadedPages = new BitSet();
+    private final TreeMap<Integer, List<Coin>> waitingPages = new TreeMap<>();   // arrived out of order
+    private int nextPageToInsert = 0;
+    private int insertedCount = 0;          // number of Coins passed to the listener
+    private int lastPage = Integer.MAX_VALUE;
+
+    public CoinPager(int pageSize, int prefetchDistance, int maxInFlight, PageLoader pageLoader, Listener listener) {
+        this.pageSize = pageSize;
+        this.prefetchDistance = prefetchDistance;
+        this.maxInFlight = maxInFlight;
+        this.pageLoader = pageLoader;
+        this.listener = listener;
+    }
+
+    // Request the first page if nothing is requested yet.
+    public void start() {
+        onScrolled(-1);
+    }
+
+    /**
+     * Must be called on every scroll. Requests all pages which are needed to show the rows up to
+     * the last visible position plus the prefetch distance.
+     *
+     * @param lastVisiblePosition - Position of the last visible row
+     */
+    public void onScrolled(int lastVisiblePosition) {
+        if (lastVisiblePosition + prefetchDistance < insertedCount)
+            return;
+        int targetPage = Math.min((lastVisiblePosition + prefetchDistance) / pageSize, lastPage);
+        int page = requestedPages.nextClearBit(0);
+        while (page <= targetPage && inFlightPages.cardinality() < maxInFlight) {
+            requestedPages.set(page);
+            inFlightPages.set(page);
+            pageLoader.loadPage(page, pageSize);
+            page = requestedPages.nextClearBit(page + 1);
+        }
+    }
+
+    /**
+     * Response for a requested page. A page which is shorter than page size is the last page.
+     *
+     * @param page  - Page number
+     * @param coins - Loaded Coins
+     */
+    public void onPageLoaded(int page, List<Coin> coins) {
+        if (!inFlightPages.get(page))
+            return;     // already loaded or reset in the meantime
+        inFlightPages.clear(page);
+        loadedPages.set(page);
+        if (coins.size() < pageSize)
+            lastPage = Math.min(lastPage, page);
+        waitingPages.put(page, coins);
+
+        // Insert all pages which are now in order.
+        List<Coin> inOrder = new ArrayList<>();
+        while (waitingPages.containsKey(nextPageToInsert)) {
+            inOrder.addAll(waitingPages.remove(nextPageToInsert));
+            nextPageToInsert++;
+        }
+        if (inOrder.size() > 0) {
+            insertedCount += inOrder.size();
+            listener.onCoinsAppended(inOrder);
+        }
+    }
+
+    // Failed page is forgotten, it would be requested again on the next scroll.
+    public void onPageFailed(int page) {
+        if (!inFlightPages.get(page))
+            return;
+        inFlightPages.clear(page);
+        requestedPages.clear(page);
+    }
+
+    // Forget all pages. Responses for pages requested before reset are ignored.
+    public void reset() {
+        requestedPages.clear();
+        inFlightPages.clear();
+        loadedPages.clear();
+        waitingPages.clear();
+        nextPageToInsert = 0;
+        insertedCount = 0;
+        lastPage = Integer.MAX_VALUE;
+    }
+
+    public boolean isPageLoaded(int page) {
+        return loadedPages.get(page);
+    }
+
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+}
@@ -0,0 +1,210 @@
+/**
+ * Coin Recycler Adapter class
+ *
+ * Generate a list of loaded Coins. Rows have stable IDs keyed by symbol and list updates are
+ * diffed on a background thread, so appending a page or refreshing data only rebinds the rows
+ * which are really changed.
+ */
+
+package com.example.cryptocurrency;
+
+import android.graphics.Bitmap;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.squareup.picasso.Callback;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CoinRecyclerAdapter extends RecyclerView.Adapter<CoinRecyclerAdapter.CoinViewHolder> {
+
+    // Click listener for a single row of the list.
+    public interface OnCoinClickListener {
+        void onCoinClick(Coin coin, int position);
+    }
+
+    // Two coins are the same item if they have the same symbol.
+    private static final DiffUtil.ItemCallback<Coin> DIFF_CALLBACK = new DiffUtil.ItemCallback<Coin>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Coin oldItem, @NonNull Coin newItem) {
+            return oldItem.getSymbolCoin().equals(newItem.getSymbolCoin());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Coin oldItem, @NonNull Coin newItem) {
+            return equalsOrNull(oldItem.getNameCoin(), newItem.getNameCoin()) &&
+                    equalsOrNull(oldItem.getImageCoin(), newItem.getImageCoin());
+        }
+    };
+
+    private static final int ICON_SIZE = 120;       // icon size in pixels
+
+    private final AsyncListDiffer<Coin> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    private final Map<String, Long> stableIds = new HashMap<>();   // symbol -> stable row id
+    private final CoinIconLoader iconLoader;
+    private final IconAtlas iconAtlas;
+    private OnCoinClickListener onCoinClickListener;
+    private int prefetchedUpTo = -1;        // icons are prefetched up to this position
+
+    static class CoinViewHolder extends RecyclerView.ViewHolder {
+        ImageView imageCoin;
+        TextView nameCoin;
+        TextView symbolCoin;
+        String boundSymbol;         // icons which arrive for another symbol are not shown
+
+        CoinViewHolder(View row) {
+            super(row);
+            imageCoin = (ImageView) row.findViewById(R.id.coinImage);
+            nameCoin = (TextView) row.findViewById(R.id.coinName);
+            symbolCoin = (TextView) row.findViewById(R.id.coinSymbol);
+        }
+    }
+
+    public CoinRecyclerAdapter(CoinIconLoader iconLoader, IconAtlas iconAtlas) {
+        this.iconLoader = iconLoader;
+        this.iconAtlas = iconAtlas;
+        setHasStableIds(true);
+    }
+
+    public void setOnCoinClickListener(OnCoinClickListener listener) {
+        this.onCoinClickListener = listener;
+    }
+
+    /**
+     * Replace the shown list. The difference between old and new list is calculated on a
+     * background thread and only changed rows are dispatched to the RecyclerView.
+     *
+     * @param coins - New list of Coins, it must not be modified after this call
+     */
+    public void submitList(List<Coin> coins) {
+        differ.submitList(coins);
+    }
+
+    // Currently shown list. It is read-only.
+    public List<Coin> getCurrentList() {
+        return differ.getCurrentList();
+    }
+
+    public Coin getItem(int position) {
+        return differ.getCurrentList().get(position);
+    }
+
+    @Override
+    public int getItemCount() {
+        return differ.getCurrentList().size();
+    }
+
+    // Stable ID for the symbol. IDs are assigned once and never reused, so there are no collisions.
+    @Override
+    public long getItemId(int position) {
+        String symbol = getItem(position).getSymbolCoin();
+        Long id = stableIds.get(symbol);
+        if (id == null) {
+            id = (long) stableIds.size();
+            stableIds.put(symbol, id);
+        }
+        return id;
+    }
+
+    @NonNull
+    @Override
+    public CoinViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View row = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_of_coins, parent, false);
+        final CoinViewHolder viewHolder = new CoinViewHolder(row);
+        row.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                int position = viewHolder.getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION && onCoinClickListener != null)
+                    onCoinClickListener.onCoinClick(getItem(position), position);
+            }
+        });
+        return viewHolder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull final CoinViewHolder viewHolder, int position) {
+        final Coin coin = getItem(position);
+        viewHolder.boundSymbol = coin.getSymbolCoin();
+        // Icon from the atlas if it exists, otherwise load it and add it into the atlas. Atlas icons which are
+        // not cached are read on the atlas thread, the row is empty until then.
+        Bitmap cachedIcon = iconAtlas.getCachedIcon(coin.getSymbolCoin());
+        if (cachedIcon != null) {
+            iconLoader.cancel(viewHolder.imageCoin);
+            viewHolder.imageCoin.setImageBitmap(cachedIcon);
+        }
+        else if (iconAtlas.contains(coin.getSymbolCoin())) {
+            iconLoader.cancel(viewHolder.imageCoin);
+            viewHolder.imageCoin.setImageDrawable(null);
+            iconAtlas.loadIcon(coin.getSymbolCoin(), new IconAtlas.IconCallback() {
+                @Override
+                public void onIcon(String symbol, Bitmap icon) {
+                    if (!symbol.equals(viewHolder.boundSymbol))
+                        return;
+                    if (icon != null)
+                        viewHolder.imageCoin.setImageBitmap(icon);
+                    else
+                        loadIcon(viewHolder, coin);
+                }
+            });
+        }
+        else {
+            loadIcon(viewHolder, coin);
+        }
+        viewHolder.nameCoin.setText(coin.getNameCoin());
+        viewHolder.symbolCoin.setText(coin.getSymbolCoin());
+    }
+
+    // Icon from the network or the icon cache, it is added into the atlas.
+    private void loadIcon(final CoinViewHolder viewHolder, final Coin coin) {
+        iconLoader.loadListIcon(coin.getImageCoin(), viewHolder.imageCoin, ICON_SIZE, new Callback() {
+            @Override
+            public void onSuccess() {
+                iconAtlas.add(coin.getSymbolCoin(), viewHolder.imageCoin.getDrawable());
+            }
+
+            @Override
+            public void onError(Exception e) {
+            }
+        });
+    }
+
+    // Row is going to be reused, its icon request is not needed any more.
+    @Override
+    public void onViewRecycled(@NonNull CoinViewHolder viewHolder) {
+        iconLoader.cancel(viewHolder.imageCoin);
+        viewHolder.boundSymbol = null;
+        super.onViewRecycled(viewHolder);
+    }
+
+    /**
+     * Prefetch icons of the rows after the last visible one. Every position is prefetched once.
+     *
+     * @param lastVisiblePosition - Position of the last visible row
+     * @param count               - Number of rows which would be prefetched
+     */
+    public void prefetchIcons(int lastVisiblePosition, int count) {
+        List<Coin> coins = differ.getCurrentList();
+        int end = Math.min(lastVisiblePosition + count, coins.size() - 1);
+        for (int i = Math.max(prefetchedUpTo + 1, lastVisiblePosition + 1); i <= end; i++) {
+            if (!iconAtlas.contains(coins.get(i).getSymbolCoin()))
+                iconLoader.prefetch(coins.get(i).getImageCoin(), ICON_SIZE);
+        }
+        prefetchedUpTo = Math.max(prefetchedUpTo, end);
+    }
+
+    private static boolean equalsOrNull(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * Current network state of the process. The state is cached and updated by the system: network
+ * callbacks since Lollipop, the connectivity broadcast before that. Reading the state never asks
+ * the ConnectivityManager, so it could be checked on every click. Since Lollipop the state is the
+ * set of available networks reported by the callbacks, the active network is not read again,
+ * because the default network is often not switched yet when a new network becomes available.
+ *
+ * The cached state and the listeners are updated on the main thread, a listener is notified only
+ * when the state changes.
+ */
+
+package com.example.cryptocurrency;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class ConnectivityMonitor {
+
+    // Notified on the main thread when the network is lost or back.
+    public interface Listener {
+        void onConnectivityChanged(boolean connected);
+    }
+
+    private static ConnectivityMonitor instance;
+
+    private final ConnectivityManager connectivityManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new ArrayList<>();
+    private final Set<Network> availableNetworks = new HashSet<>();     // networks with internet, updated by callbacks
+    private volatile boolean connected;
+
+    private ConnectivityMonitor(Context context) {
+        connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        // Initial state, later it is changed only by the system.
+        connected = readState();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
+            registerNetworkCallback();
+        else
+            registerReceiver(context);
+    }
+
+    public static synchronized ConnectivityMonitor getInstance(Context context) {
+        if (instance == null)
+            instance = new ConnectivityMonitor(context.getApplicationContext());
+        return instance;
+    }
+
+    // Cached state, it is not read from the system.
+    public boolean isConnected() {
+        return connected;
+    }
+
+    // Must be called from the main thread. Listeners of views are removed when the view is destroyed.
+    public void addListener(Listener listener) {
+        if (!listeners.contains(listener))
+            listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void registerNetworkCallback() {
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+        // Another network could still be available when one is lost, so all available networks are tracked.
+        connectivityManager.registerNetworkCallback(request, new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                synchronized (availableNetworks) {
+                    availableNetworks.add(network);
+                }
+                apply(true);
+            }
+
+            @Override
+            public void onLost(Network network) {
+                boolean state;
+                synchronized (availableNetworks) {
+                    availableNetworks.remove(network);
+                    state = !availableNetworks.isEmpty();
+                }
+                apply(state);
+            }
+        });
+    }
+
+    private void registerReceiver(Context context) {
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                apply(readState());
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    // Called by the system on its own thread, the new state is applied on the main thread.
+    private void apply(final boolean state) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (state == connected)
+                    return;
+                connected = state;
+                for (Listener listener : new ArrayList<>(listeners))
+                    listener.onConnectivityChanged(state);
+            }
+        });
+    }
+
+    private boolean readState() {
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Application class of the app. It owns the process-wide services - the database, the request
+ * queue, the icon loader, the icon atlas, the network state and the queue of deferred fetches.
+ * Every service is created lazily on its first use, so nothing is opened before it is needed and
+ * the services live as long as the process, not as long as an activity.
+ *
+ * Startup sequence:
+ *  1. Application.onCreate only stores the instance and starts a warm-up on a background thread.
+ *  2. Warm-up creates the icon loader and the icon atlas, opens the database (running schema
+ *     upgrades), creates the request queue, and starts deferred migrations and retention of the
+ *     candle store. Fetches queued without network by an earlier process are replayed on the
+ *     main thread.
+ *  3. MainActivity draws its first frame from the catalog snapshot, and only after that loads the
+ *     list from the network or the database. Database writes run on the disk executor.
+ * Every phase is recorded in StartupTrace.
+ */
+
+package com.example.cryptocurrency;
+
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.Volley;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class CryptocurrencyApp extends Application {
+
+    private static CryptocurrencyApp instance;
+
+    private static volatile DatabaseHandler database;
+    private static volatile RequestQueue requestQueue;
+    private static DeferredFetchQueue fetchQueue;
+    private static final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        StartupTrace.begin();
+        instance = this;
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Only the warm-up runs in background priority, later writes of the UI keep the default.
+                int priority = Process.getThreadPriority(Process.myTid());
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    warmUp();
+                } finally {
+                    Process.setThreadPriority(priority);
+                }
+            }
+        });
+        StartupTrace.mark("application_created");
+    }
+
+    // Runs on the disk executor, before any database write of an activity.
+    private void warmUp() {
+        getIconLoader();
+        StartupTrace.mark("icon_loader_created");
+        // The atlas reads its index on its own thread, the first list frame finds it created.
+        getIconAtlas();
+        StartupTrace.mark("icon_atlas_created");
+        try {
+            getDatabase().getWritableDatabase();
+            StartupTrace.mark("database_opened");
+            // Data of old schema versions is migrated in background, old candles are rolled up and deleted.
+            DatabaseMigrations.runDeferredAsync(getDatabase());
+            RetentionEngine.runAsync();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        getRequestQueue();
+        StartupTrace.mark("request_queue_created");
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                getFetchQueue().replay();
+            }
+        });
+    }
+
+    // The database, it is opened on the first query.
+    public static DatabaseHandler getDatabase() {
+        if (database == null) {
+            synchronized (CryptocurrencyApp.class) {
+                if (database == null)
+                    database = new DatabaseHandler(instance);
+            }
+        }
+        return database;
+    }
+
+    // Volley queue for all API requests.
+    public static RequestQueue getRequestQueue() {
+        if (requestQueue == null) {
+            synchronized (CryptocurrencyApp.class) {
+                if (requestQueue == null)
+                    requestQueue = Volley.newRequestQueue(instance);
+            }
+        }
+        return requestQueue;
+    }
+
+    public static CoinIconLoader getIconLoader() {
+        return CoinIconLoader.getInstance(instance);
+    }
+
+    // Icons stored in atlas pages, used before the icon loader.
+    public static IconAtlas getIconAtlas() {
+        return IconAtlas.getInstance(instance);
+    }
+
+    // Cached network state, updated by the system.
+    public static ConnectivityMonitor getConnectivityMonitor() {
+        return ConnectivityMonitor.getInstance(instance);
+    }
+
+    // Fetches queued without network. Must be called from the main thread.
+    public static DeferredFetchQueue getFetchQueue() {
+        if (fetchQueue == null) {
+            fetchQueue = new DeferredFetchQueue(getConnectivityMonitor());
+            // Used when no shown tab replays the fetch, data is only stored for later.
+            fetchQueue.addHandler(DeferredFetchQueue.KIND_GENERAL_INFO, FragmentGeneralInfo.REPLAY_IN_BACKGROUND);
+            fetchQueue.addHandler(DeferredFetchQueue.KIND_GRAPH, FragmentGraph.GRAPH_REPLAY_IN_BACKGROUND);
+            fetchQueue.addHandler(DeferredFetchQueue.KIND_BACKFILL, FragmentGraph.BACKFILL_REPLAY);
+        }
+        return fetchQueue;
+    }
+
+    // Single background thread for database writes of the UI. Writes keep their order.
+    public static ExecutorService getDiskExecutor() {
+        return diskExecutor;
+    }
+
+}
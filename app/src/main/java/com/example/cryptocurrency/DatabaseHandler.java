@@ -1,28 +1,41 @@
 /**
  * Database class DatabaseHandler which is extended from SQLiteOpenHelper.
- * This class is used to create Database, and 3 Tables. Users can read from tables and write into tables.
+ * This class is used to create Database and its Tables. Users can read from tables and write into tables.
+ *
+ * The database is opened once and stays open for the whole process, it is never closed after a query.
+ * Write-ahead logging is enabled, so read methods run on the read-only connections of the pool and
+ * are not blocked by a background write.
  */
 
 package com.example.cryptocurrency;
 
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.PointF;
+import android.os.Build;
 
 import java.util.List;
+import java.util.Map;
 
 public class DatabaseHandler extends SQLiteOpenHelper {
 
-    // Database name
+    // Database name and schema version, every version has its step in DatabaseMigrations
     private static final String DATABASE_NAME = "Cryptocurrency.db";
+    static final int DATABASE_VERSION = 8;
     // Tables name
     private static final String TABLE_COINS = "Cryptocurrency_table";
     private static final String TABLE_SELECTED_COIN = "Selected_coins";
     private static final String TABLE_GRAPH_LINE = "Graph_lines";
+    private static final String TABLE_CATALOG = "Coin_catalog";
+    private static final String TABLE_CATALOG_STAGING = "Coin_catalog_new";
+    private static final String TABLE_CANDLES = "Candles";
+    private static final String TABLE_BACKFILL = "Backfill_cursors";
+    private static final String TABLE_INFO_FIELDS = "General_info_fields";
+    private static final String TABLE_DEFERRED_FETCHES = "Deferred_fetches";
 
     // Fields for table TABLE_COINS
     private static final String NAME = "name";
@@ -33,6 +46,13 @@ public class DatabaseHandler extends SQLiteOpenHelper {
     private static final String SYM = "sym";
     private static final String GEN_INFO = "general_info";
     private static final String COMP_VALUE = "compared_value";
+    private static final String FETCHED_AT = "fetched_at";
+
+    // Fields for table TABLE_INFO_FIELDS
+    private static final String FIELD_SYM = "sym";
+    private static final String FIELD_NAME = "field";
+    private static final String FIELD_VALUE = "value";
+    private static final String FIELD_POSITION = "position";
 
     // Fields for table TABLE_GRAPH_LINE
     private static final String SYM_FROM = "sym_from";
@@ -44,27 +64,192 @@ public class DatabaseHandler extends SQLiteOpenHelper {
     private static final String NUM_ROWS = "num_rows";
     private static final String NUM_COLUMNS = "num_columns";
 
+    // Fields for table TABLE_CATALOG
+    private static final String CATALOG_SYMBOL = "symbol";
+    private static final String CATALOG_NAME = "name";
+    private static final String CATALOG_IMAGE = "image";
+    private static final String CATALOG_SORT_ORDER = "sort_order";
+
+    // Fields for table TABLE_CANDLES
+    private static final String CANDLE_SYMBOL = "symbol";
+    private static final String CANDLE_QUOTE = "quote";
+    private static final String CANDLE_TIME_FRAME = "time_frame";
+    private static final String CANDLE_TIME = "time";
+    private static final String CANDLE_OPEN = "open";
+    private static final String CANDLE_HIGH = "high";
+    private static final String CANDLE_LOW = "low";
+    private static final String CANDLE_CLOSE = "close";
+
+    // Fields for table TABLE_BACKFILL
+    private static final String BACKFILL_SYMBOL = "symbol";
+    private static final String BACKFILL_QUOTE = "quote";
+    private static final String BACKFILL_TIME_FRAME = "time_frame";
+    private static final String BACKFILL_NEXT_TO_TS = "next_to_ts";
+    private static final String BACKFILL_TARGET_FROM_TS = "target_from_ts";
+    private static final String BACKFILL_DONE = "done";
+
+    // Fields for table TABLE_DEFERRED_FETCHES
+    private static final String DEFERRED_KIND = "kind";
+    private static final String DEFERRED_KEY = "fetch_key";
+    private static final String DEFERRED_PAYLOAD = "payload";
+    private static final String DEFERRED_CREATED_AT = "created_at";
+
+    // Statements, every argument is bound. Each text is compiled once and served from the statement cache.
+    private static final String SQL_INSERT_COIN = "INSERT INTO " + TABLE_COINS + " (" + NAME + ", " + SYMBOL + ", " + IMAGE +
+            ") VALUES (?, ?, ?)";
+    private static final String SQL_READ_COINS = "SELECT * FROM " + TABLE_COINS;
+    private static final String SQL_READ_COINS_PAGE = "SELECT * FROM " + TABLE_COINS + " ORDER BY rowid LIMIT ? OFFSET ?";
+    private static final String SQL_DELETE_COINS = "DELETE FROM " + TABLE_COINS;
+    private static final String SQL_UPSERT_GENERAL_INFO = "INSERT OR REPLACE INTO " + TABLE_SELECTED_COIN + " (" + SYM + ", " +
+            GEN_INFO + ", " + COMP_VALUE + ", " + FETCHED_AT + ") VALUES (?, ?, ?, ?)";
+    private static final String SQL_READ_GENERAL_INFO = "SELECT " + GEN_INFO + ", " + COMP_VALUE + ", " + FETCHED_AT + " FROM " +
+            TABLE_SELECTED_COIN + " WHERE " + SYM + " = ?";
+    private static final String SQL_INSERT_INFO_FIELD = "INSERT OR REPLACE INTO " + TABLE_INFO_FIELDS + " (" + FIELD_SYM + ", " +
+            FIELD_NAME + ", " + FIELD_VALUE + ", " + FIELD_POSITION + ") VALUES (?, ?, ?, ?)";
+    private static final String SQL_READ_INFO_FIELDS = "SELECT " + FIELD_NAME + ", " + FIELD_VALUE + " FROM " + TABLE_INFO_FIELDS +
+            " WHERE " + FIELD_SYM + " = ? ORDER BY " + FIELD_POSITION;
+    private static final String SQL_DELETE_INFO_FIELDS = "DELETE FROM " + TABLE_INFO_FIELDS + " WHERE " + FIELD_SYM + " = ?";
+    private static final String SQL_INSERT_GRAPH_LINE = "INSERT INTO " + TABLE_GRAPH_LINE + " (" + SYM_FROM + ", " + SYM_TO + ", " +
+            POINT_X + ", " + POINT_Y + ", " + TIME + ", " + TIME_FRAME + ", " + NUM_ROWS + ", " + NUM_COLUMNS +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_READ_GRAPH_LINES = "SELECT * FROM " + TABLE_GRAPH_LINE + " WHERE " + SYM_FROM + " = ? AND " +
+            TIME_FRAME + " = ?";
+    private static final String SQL_DELETE_GRAPH_LINE_TIME_FRAME = "DELETE FROM " + TABLE_GRAPH_LINE + " WHERE " + SYM_FROM +
+            " = ? AND " + SYM_TO + " = ? AND " + TIME_FRAME + " = ?";
+    private static final String SQL_DELETE_GRAPH_LINE = "DELETE FROM " + TABLE_GRAPH_LINE + " WHERE " + SYM_FROM + " = ? AND " +
+            SYM_TO + " = ?";
+    private static final String SQL_DELETE_GRAPH_TIME_FRAME = "DELETE FROM " + TABLE_GRAPH_LINE + " WHERE " + SYM_FROM + " = ? AND " +
+            TIME_FRAME + " = ?";
+    private static final String SQL_DELETE_GRAPH_BY_SYMBOL = "DELETE FROM " + TABLE_GRAPH_LINE + " WHERE " + SYM_FROM + " = ?";
+    private static final String SQL_READ_CATALOG = "SELECT " + CATALOG_NAME + ", " + CATALOG_SYMBOL + ", " + CATALOG_IMAGE + " FROM " +
+            TABLE_CATALOG + " ORDER BY " + CATALOG_SORT_ORDER;
+    private static final String SQL_INSERT_CATALOG_STAGING = "INSERT OR REPLACE INTO " + TABLE_CATALOG_STAGING + " (" +
+            CATALOG_SYMBOL + ", " + CATALOG_NAME + ", " + CATALOG_IMAGE + ", " + CATALOG_SORT_ORDER + ") VALUES (?, ?, ?, ?)";
+    private static final String SQL_COPY_CATALOG_STAGING = "INSERT INTO " + TABLE_CATALOG + " (" + CATALOG_SYMBOL + ", " +
+            CATALOG_NAME + ", " + CATALOG_IMAGE + ", " + CATALOG_SORT_ORDER + ") SELECT " + CATALOG_SYMBOL + ", " + CATALOG_NAME +
+            ", " + CATALOG_IMAGE + ", " + CATALOG_SORT_ORDER + " FROM " + TABLE_CATALOG_STAGING;
+    private static final String SQL_DELETE_CATALOG = "DELETE FROM " + TABLE_CATALOG;
+    private static final String SQL_DELETE_CATALOG_STAGING = "DELETE FROM " + TABLE_CATALOG_STAGING;
+    private static final String CANDLE_COLUMNS = CANDLE_SYMBOL + ", " + CANDLE_QUOTE + ", " + CANDLE_TIME_FRAME + ", " + CANDLE_TIME +
+            ", " + CANDLE_OPEN + ", " + CANDLE_HIGH + ", " + CANDLE_LOW + ", " + CANDLE_CLOSE;
+    private static final String CANDLE_KEY = CANDLE_SYMBOL + " = ? AND " + CANDLE_QUOTE + " = ? AND " + CANDLE_TIME_FRAME + " = ?";
+    private static final String SQL_UPSERT_CANDLE = "INSERT OR REPLACE INTO " + TABLE_CANDLES + " (" + CANDLE_COLUMNS +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_INSERT_ROLLED_CANDLE = "INSERT OR IGNORE INTO " + TABLE_CANDLES + " (" + CANDLE_COLUMNS +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_READ_CANDLES = "SELECT " + CANDLE_TIME + ", " + CANDLE_OPEN + ", " + CANDLE_HIGH + ", " +
+            CANDLE_LOW + ", " + CANDLE_CLOSE + " FROM " + TABLE_CANDLES + " WHERE " + CANDLE_KEY + " AND " + CANDLE_TIME +
+            " BETWEEN ? AND ? ORDER BY " + CANDLE_TIME;
+    private static final String SQL_READ_CANDLE_BOUNDS = "SELECT MIN(" + CANDLE_TIME + "), MAX(" + CANDLE_TIME + "), COUNT(*) FROM " +
+            TABLE_CANDLES + " WHERE " + CANDLE_KEY;
+    private static final String SQL_READ_CANDLE_PAIRS_BEFORE = "SELECT DISTINCT " + CANDLE_SYMBOL + ", " + CANDLE_QUOTE + " FROM " +
+            TABLE_CANDLES + " WHERE " + CANDLE_TIME_FRAME + " = ? AND " + CANDLE_TIME + " < ?";
+    private static final String SQL_READ_CANDLES_BEFORE = "SELECT " + CANDLE_TIME + ", " + CANDLE_OPEN + ", " + CANDLE_HIGH + ", " +
+            CANDLE_LOW + ", " + CANDLE_CLOSE + " FROM " + TABLE_CANDLES + " WHERE " + CANDLE_KEY + " AND " + CANDLE_TIME +
+            " < ? ORDER BY " + CANDLE_TIME + " LIMIT ?";
+    private static final String SQL_DELETE_ROLLED_CANDLES = "DELETE FROM " + TABLE_CANDLES + " WHERE " + CANDLE_KEY + " AND " +
+            CANDLE_TIME + " < ?";
+    private static final String BACKFILL_COLUMNS = BACKFILL_SYMBOL + ", " + BACKFILL_QUOTE + ", " + BACKFILL_TIME_FRAME + ", " +
+            BACKFILL_NEXT_TO_TS + ", " + BACKFILL_TARGET_FROM_TS + ", " + BACKFILL_DONE;
+    private static final String SQL_UPSERT_BACKFILL = "INSERT OR REPLACE INTO " + TABLE_BACKFILL + " (" + BACKFILL_COLUMNS +
+            ") VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String SQL_READ_BACKFILLS = "SELECT " + BACKFILL_COLUMNS + " FROM " + TABLE_BACKFILL;
+    private static final String SQL_READ_UNFINISHED_BACKFILLS = SQL_READ_BACKFILLS + " WHERE " + BACKFILL_DONE + " = 0";
+    private static final String SQL_UPSERT_DEFERRED_FETCH = "INSERT OR REPLACE INTO " + TABLE_DEFERRED_FETCHES + " (" +
+            DEFERRED_KIND + ", " + DEFERRED_KEY + ", " + DEFERRED_PAYLOAD + ", " + DEFERRED_CREATED_AT + ") VALUES (?, ?, ?, ?)";
+    private static final String SQL_READ_DEFERRED_FETCHES = "SELECT " + DEFERRED_KIND + ", " + DEFERRED_KEY + ", " +
+            DEFERRED_PAYLOAD + ", " + DEFERRED_CREATED_AT + " FROM " + TABLE_DEFERRED_FETCHES + " ORDER BY " + DEFERRED_CREATED_AT;
+    private static final String SQL_DELETE_DEFERRED_FETCH = "DELETE FROM " + TABLE_DEFERRED_FETCHES + " WHERE " + DEFERRED_KIND +
+            " = ? AND " + DEFERRED_KEY + " = ? AND " + DEFERRED_CREATED_AT + " = ?";
+
+    // Rows of the catalog written into the staging table in one transaction.
+    private static final int CATALOG_BATCH_ROWS = 500;
+
+    // Every connection keeps this many prepared statements, more than the handler uses.
+    private static final int SQL_CACHE_SIZE = 64;
+
+    private final StatementCache statementCache = new StatementCache();
+
     public DatabaseHandler(Context context) {
-        super(context, DATABASE_NAME, null, 1);
+        this(context, DATABASE_NAME);
+    }
+
+    // Database with another file name, used by tests.
+    DatabaseHandler(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // Before Jelly Bean write-ahead logging could be enabled only on the open database.
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly())
+            db.enableWriteAheadLogging();
+        db.setMaxSqlCacheSize(SQL_CACHE_SIZE);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL("CREATE TABLE " + TABLE_COINS + " (" + NAME + " TEXT, " +SYMBOL + " TEXT, " + IMAGE + " TEXT)");
-        db.execSQL("CREATE TABLE " + TABLE_SELECTED_COIN + " (" +SYM + " TEXT, " + GEN_INFO + " TEXT, " + COMP_VALUE + " TEXT)");
+        // One row per Coin, the primary key is the index for lookups by symbol.
+        db.execSQL("CREATE TABLE " + TABLE_SELECTED_COIN + " (" + SYM + " TEXT PRIMARY KEY, " + GEN_INFO + " TEXT, " +
+                COMP_VALUE + " TEXT, " + FETCHED_AT + " INTEGER)");
         db.execSQL("CREATE TABLE " + TABLE_GRAPH_LINE + " (" +SYM_FROM + " TEXT, " + SYM_TO + " TEXT, " +
                 POINT_X + " FLOAT, " + POINT_Y + " FLOAT, " + TIME + " INTEGER, " + TIME_FRAME + " TEXT, " + NUM_ROWS +
                 " INTEGER, " + NUM_COLUMNS + " INTEGER)");
+        db.execSQL("CREATE TABLE " + TABLE_CATALOG + " (" + CATALOG_SYMBOL + " TEXT PRIMARY KEY, " + CATALOG_NAME + " TEXT, " +
+                CATALOG_IMAGE + " TEXT, " + CATALOG_SORT_ORDER + " INTEGER)");
+        // Catalog of a running ingest, it replaces TABLE_CATALOG when the whole list is received.
+        db.execSQL("CREATE TABLE " + TABLE_CATALOG_STAGING + " (" + CATALOG_SYMBOL + " TEXT PRIMARY KEY, " + CATALOG_NAME +
+                " TEXT, " + CATALOG_IMAGE + " TEXT, " + CATALOG_SORT_ORDER + " INTEGER)");
+        // Primary key is also the index for range queries by time.
+        db.execSQL("CREATE TABLE " + TABLE_CANDLES + " (" + CANDLE_SYMBOL + " TEXT NOT NULL, " + CANDLE_QUOTE + " TEXT NOT NULL, " +
+                CANDLE_TIME_FRAME + " TEXT NOT NULL, " + CANDLE_TIME + " INTEGER NOT NULL, " + CANDLE_OPEN + " REAL, " +
+                CANDLE_HIGH + " REAL, " + CANDLE_LOW + " REAL, " + CANDLE_CLOSE + " REAL, PRIMARY KEY (" + CANDLE_SYMBOL + ", " +
+                CANDLE_QUOTE + ", " + CANDLE_TIME_FRAME + ", " + CANDLE_TIME + "))");
+        db.execSQL("CREATE TABLE " + TABLE_BACKFILL + " (" + BACKFILL_SYMBOL + " TEXT NOT NULL, " + BACKFILL_QUOTE + " TEXT NOT NULL, " +
+                BACKFILL_TIME_FRAME + " TEXT NOT NULL, " + BACKFILL_NEXT_TO_TS + " INTEGER, " + BACKFILL_TARGET_FROM_TS + " INTEGER, " +
+                BACKFILL_DONE + " INTEGER, PRIMARY KEY (" + BACKFILL_SYMBOL + ", " + BACKFILL_QUOTE + ", " + BACKFILL_TIME_FRAME + "))");
+        db.execSQL("CREATE TABLE " + TABLE_INFO_FIELDS + " (" + FIELD_SYM + " TEXT NOT NULL, " + FIELD_NAME + " TEXT NOT NULL, " +
+                FIELD_VALUE + " TEXT, " + FIELD_POSITION + " INTEGER, PRIMARY KEY (" + FIELD_SYM + ", " + FIELD_NAME + "))");
+        // One row per target of a fetch, a newer intent for the same target replaces the older one.
+        db.execSQL("CREATE TABLE " + TABLE_DEFERRED_FETCHES + " (" + DEFERRED_KIND + " TEXT NOT NULL, " + DEFERRED_KEY +
+                " TEXT NOT NULL, " + DEFERRED_PAYLOAD + " TEXT, " + DEFERRED_CREATED_AT + " INTEGER, PRIMARY KEY (" +
+                DEFERRED_KIND + ", " + DEFERRED_KEY + "))");
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Cached data is kept, tables are recreated only if some step is missing.
+        if (DatabaseMigrations.upgrade(db, oldVersion, newVersion))
+            return;
+        for (String table : DatabaseMigrations.LEGACY_TABLES)
+            db.execSQL("DROP TABLE IF EXISTS " + table);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_COINS);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_SELECTED_COIN);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_GRAPH_LINE);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_CATALOG);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_CATALOG_STAGING);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_CANDLES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BACKFILL);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_INFO_FIELDS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_DEFERRED_FETCHES);
         onCreate(db);
     }
 
+    @Override
+    public synchronized void close() {
+        statementCache.clear();
+        super.close();
+    }
+
+    // Number of reused and compiled statements, for verification of the statement cache.
+    public StatementCache.Stats getStatementStats() {
+        return statementCache.getStats();
+    }
+
     /**
      * Insert single Coin into table Cryptocurrency_table. Result - boolean. For successful
      * database entry, the function returns true, in the opposite returns false.
@@ -73,12 +258,7 @@ public class DatabaseHandler extends SQLiteOpenHelper {
      * @return boolean  - True for successful database entry, in the opposite false
      */
     public boolean writeCoinIntoDB(Coin coin) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(NAME, coin.getNameCoin());
-        contentValues.put(SYMBOL, coin.getSymbolCoin());
-        contentValues.put(IMAGE, coin.getImageCoin());
-        long result = db.insert(TABLE_COINS, null, contentValues);
+        long result = executeInsert(SQL_INSERT_COIN, coin.getNameCoin(), coin.getSymbolCoin(), coin.getImageCoin());
         if(result == -1)
             return false;
         else
@@ -86,33 +266,42 @@ public class DatabaseHandler extends SQLiteOpenHelper {
     }
 
     /**
-     * Insert General Information into table Selected_coin. Result - boolean. For successful
-     * database entry, the function returns true, in the opposite returns false.
+     * Insert or replace General Information of one Coin in table Selected_coin, together with the
+     * fields of the information in table General_info_fields. The table keeps one row per Coin.
+     * Result - boolean. For successful database entry, the function returns true, in the opposite returns false.
      *
      * @param symbol        - Symbol of selected Cryptocurrency
+     * @param fields        - Fields of the general info (name, value), in display order
      * @param textGenInfo   - General info of selected Cryptocurrency
      * @param textCompValue - Comparison values for selected Cryptocurrency
+     * @param fetchedAt     - Time of the download in seconds
      * @return boolean      - True for successful database entry, in the opposite false
      */
-    public boolean writeGeneralInfoIntoDB(String symbol, String textGenInfo, String textCompValue) {
+    public boolean writeGeneralInfoIntoDB(String symbol, Map<String, String> fields, String textGenInfo, String textCompValue, long fetchedAt) {
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(SYM, symbol);
-        contentValues.put(GEN_INFO, textGenInfo);
-        contentValues.put(COMP_VALUE, textCompValue);
-        long result = db.insert(TABLE_SELECTED_COIN, null, contentValues);
-        if(result == -1)
-            return false;
-        else
+        db.beginTransaction();
+        try {
+            long result = executeInsert(SQL_UPSERT_GENERAL_INFO, symbol, textGenInfo, textCompValue, fetchedAt);
+            if(result == -1)
+                return false;
+            executeUpdateDelete(SQL_DELETE_INFO_FIELDS, symbol);
+            int position = 0;
+            for (Map.Entry<String, String> field : fields.entrySet())
+                executeInsert(SQL_INSERT_INFO_FIELD, symbol, field.getKey(), field.getValue(), position++);
+            db.setTransactionSuccessful();
             return true;
+        } finally {
+            db.endTransaction();
+        }
     }
 
     /**
-     * Insert graph lines with dots into the table Graph_line. Result - boolean. For successful
+     * Insert one graph line with dots into the table Graph_line. Every compared symbol is stored
+     * in its own row, so a single line could be added or deleted. Result - boolean. For successful
      * database entry, the function returns true, in the opposite returns false.
      *
      * @param symbolFrom        - Symbol of selected Cryptocurrency
-     * @param symbolsInString   - Symbols used for comparison
+     * @param symbolTo          - Symbol used for comparison
      * @param dotsXstring       - List of x values for PointF objects
      * @param dotsYstring       - List of y values for PointF objects
      * @param timeAxisString    - String of Time - seconds
@@ -121,51 +310,414 @@ public class DatabaseHandler extends SQLiteOpenHelper {
      * @param numColumns        - Number of columns for graph plotting
      * @return boolean          - True for successful database entry, in the opposite false
      */
-    public boolean writeAllGraphLinesIntoDB(String symbolFrom, String symbolsInString, String dotsXstring, String dotsYstring, String timeAxisString, String timeFrame, int numRows, int numColumns) {
+    public boolean writeGraphLineIntoDB(String symbolFrom, String symbolTo, String dotsXstring, String dotsYstring, String timeAxisString, String timeFrame, int numRows, int numColumns) {
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(SYM_FROM, symbolFrom);
-        contentValues.put(SYM_TO, symbolsInString );
-        contentValues.put(POINT_X, dotsXstring);
-        contentValues.put(POINT_Y, dotsYstring);
-        contentValues.put(TIME, timeAxisString);
-        contentValues.put(TIME_FRAME, timeFrame);
-        contentValues.put(NUM_ROWS, numRows);
-        contentValues.put(NUM_COLUMNS, numColumns);
-        long result = db.insert(TABLE_GRAPH_LINE, null, contentValues);
+        db.beginTransaction();
+        try {
+            executeUpdateDelete(SQL_DELETE_GRAPH_LINE_TIME_FRAME, symbolFrom, symbolTo, timeFrame);
+            long result = executeInsert(SQL_INSERT_GRAPH_LINE, symbolFrom, symbolTo, dotsXstring, dotsYstring, timeAxisString,
+                    timeFrame, numRows, numColumns);
+            db.setTransactionSuccessful();
 
-        if(result == -1)
-            return false;
-        else
-            return true;
+            if(result == -1)
+                return false;
+            else
+                return true;
+        } finally {
+            db.endTransaction();
+        }
     }
 
     // Getting all data from table Cryptocurrency_table - All Cryptocurrencies.
     public Cursor readCoinsFromDB(){
+        return query(SQL_READ_COINS);
+    }
+
+    /**
+     * Getting one page of table Cryptocurrency_table, in the order in which Coins were stored.
+     *
+     * @param offset  - Number of skipped rows
+     * @param limit   - Number of rows in the page
+     * @return Cursor - Result is found from query
+     */
+    public Cursor readCoinsPage(int offset, int limit) {
+        return query(SQL_READ_COINS_PAGE, String.valueOf(limit), String.valueOf(offset));
+    }
+
+    // Getting the full list of Cryptocurrencies (name, symbol, image), ordered by sort order.
+    public Cursor readCatalogFromDB() {
+        return query(SQL_READ_CATALOG);
+    }
+
+    /**
+     * Writer for the full list of Cryptocurrencies. Received Coins are written into a staging table
+     * while the payload is downloaded, in short batches, so no transaction is open while the network
+     * is read and only one batch is held in memory. On commit the old list is replaced by the staged
+     * one in one short transaction, only if the whole new list is received.
+     *
+     * @return CatalogSink - Writer used by CatalogIngest
+     */
+    public CatalogIngest.CatalogSink openCatalogWriter() {
+        return new CatalogIngest.CatalogSink() {
+            // Rows of the batch which is not written yet, the arrays are reused for every batch.
+            private final String[] symbols = new String[CATALOG_BATCH_ROWS];
+            private final String[] names = new String[CATALOG_BATCH_ROWS];
+            private final String[] imagePaths = new String[CATALOG_BATCH_ROWS];
+            private final int[] sortOrders = new int[CATALOG_BATCH_ROWS];
+            private int pending;
+
+            @Override
+            public void begin() {
+                // Rows of an ingest which was interrupted by process death.
+                rollback();
+            }
+
+            @Override
+            public void add(String symbol, String name, String imagePath, int sortOrder) {
+                symbols[pending] = symbol;
+                names[pending] = name;
+                imagePaths[pending] = imagePath;
+                sortOrders[pending] = sortOrder;
+                if (++pending == CATALOG_BATCH_ROWS)
+                    writeBatch();
+            }
+
+            @Override
+            public void commit() {
+                writeBatch();
+                SQLiteDatabase db = getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    executeUpdateDelete(SQL_DELETE_CATALOG);
+                    executeUpdateDelete(SQL_COPY_CATALOG_STAGING);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                executeUpdateDelete(SQL_DELETE_CATALOG_STAGING);
+            }
+
+            @Override
+            public void rollback() {
+                clearBatch();
+                executeUpdateDelete(SQL_DELETE_CATALOG_STAGING);
+            }
+
+            // Write pending rows into the staging table in one transaction.
+            private void writeBatch() {
+                if (pending == 0)
+                    return;
+                SQLiteDatabase db = getWritableDatabase();
+                SQLiteStatement insert = statementCache.statement(db, SQL_INSERT_CATALOG_STAGING);
+                db.beginTransaction();
+                try {
+                    synchronized (insert) {
+                        for (int i = 0; i < pending; i++) {
+                            insert.bindString(1, symbols[i]);
+                            insert.bindString(2, names[i]);
+                            if (imagePaths[i] != null)
+                                insert.bindString(3, imagePaths[i]);
+                            else
+                                insert.bindNull(3);
+                            insert.bindLong(4, sortOrders[i]);
+                            insert.executeInsert();
+                        }
+                        insert.clearBindings();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                    clearBatch();
+                }
+            }
+
+            // Strings of written rows are not kept.
+            private void clearBatch() {
+                for (int i = 0; i < pending; i++) {
+                    symbols[i] = null;
+                    names[i] = null;
+                    imagePaths[i] = null;
+                }
+                pending = 0;
+            }
+        };
+    }
+
+    // Length of one candle in seconds for the time frame, e.g. 60 for "minute".
+    public static int candleSeconds(String timeFrame) {
+        switch (timeFrame) {
+            case "minute":
+                return 60;
+            case "hour":
+                return 3600;
+            default:
+                return 86400;
+        }
+    }
+
+    /**
+     * Insert or replace candles in the table Candles, in one transaction.
+     *
+     * @param symbol    - Symbol of selected Cryptocurrency
+     * @param quote     - Symbol in which the value is expressed
+     * @param timeFrame - Time frame, e.g. "day", "hour", "minute"
+     * @param candles   - Candles to store
+     */
+    public void writeCandles(String symbol, String quote, String timeFrame, CandleBuffer candles) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement insert = statementCache.statement(db, SQL_UPSERT_CANDLE);
+            synchronized (insert) {
+                insert.bindString(1, symbol);
+                insert.bindString(2, quote);
+                insert.bindString(3, timeFrame);
+                for (int i = 0; i < candles.size(); i++) {
+                    insert.bindLong(4, candles.time(i));
+                    insert.bindDouble(5, candles.open(i));
+                    insert.bindDouble(6, candles.high(i));
+                    insert.bindDouble(7, candles.low(i));
+                    insert.bindDouble(8, candles.close(i));
+                    insert.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Read candles with open time in [fromTs, toTs] into the buffer, ordered by time.
+     *
+     * @param symbol    - Symbol of selected Cryptocurrency
+     * @param quote     - Symbol in which the value is expressed
+     * @param timeFrame - Time frame, e.g. "day", "hour", "minute"
+     * @param fromTs    - First time in seconds, inclusive
+     * @param toTs      - Last time in seconds, inclusive
+     * @param into      - Buffer for candles, it is cleared first
+     * @return int      - Number of read candles
+     */
+    public int readCandles(String symbol, String quote, String timeFrame, int fromTs, int toTs, CandleBuffer into) {
+        into.clear();
+        Cursor res = query(SQL_READ_CANDLES, symbol, quote, timeFrame, String.valueOf(fromTs), String.valueOf(toTs));
+        try {
+            while (res.moveToNext())
+                into.add(res.getInt(0), res.getFloat(1), res.getFloat(2), res.getFloat(3), res.getFloat(4));
+        } finally {
+            res.close();
+        }
+        return into.size();
+    }
+
+    /**
+     * First and last stored candle time.
+     *
+     * @param symbol    - Symbol of selected Cryptocurrency
+     * @param quote     - Symbol in which the value is expressed
+     * @param timeFrame - Time frame, e.g. "day", "hour", "minute"
+     * @return int[]    - First and last time in seconds, or null if no candle is stored
+     */
+    public int[] readCandleBounds(String symbol, String quote, String timeFrame) {
+        Cursor res = query(SQL_READ_CANDLE_BOUNDS, symbol, quote, timeFrame);
+        try {
+            if (res.moveToNext() && res.getInt(2) > 0)
+                return new int[] {res.getInt(0), res.getInt(1)};
+            return null;
+        } finally {
+            res.close();
+        }
+    }
+
+    /**
+     * Pairs of symbol and quote which have candles older than the time.
+     *
+     * @param timeFrame - Time frame, e.g. "day", "hour", "minute"
+     * @param beforeTs  - Time in seconds, exclusive
+     * @return Cursor   - symbol and quote of every pair
+     */
+    public Cursor readCandlePairsBefore(String timeFrame, int beforeTs) {
+        return query(SQL_READ_CANDLE_PAIRS_BEFORE, timeFrame, String.valueOf(beforeTs));
+    }
+
+    /**
+     * Roll up the oldest candles of one pair into candles of a longer time frame, and delete the
+     * rolled candles. One batch is done in one transaction, the caller repeats batches until 0 is
+     * returned. Candles of the longer time frame which are already stored (e.g. received from the
+     * API) are kept. Only whole buckets are rolled up, so beforeTs must be a bucket boundary.
+     *
+     * @param symbol     - Symbol of selected Cryptocurrency
+     * @param quote      - Symbol in which the value is expressed
+     * @param fromFrame  - Time frame of rolled candles, e.g. "minute"
+     * @param toFrame    - Time frame of new candles, e.g. "hour"
+     * @param beforeTs   - Candles older than this time are rolled up
+     * @param batchSize  - Maximal number of candles read in one batch
+     * @return int       - Number of deleted candles
+     */
+    public int rollUpCandles(String symbol, String quote, String fromFrame, String toFrame, int beforeTs, int batchSize) {
+        int bucketSeconds = candleSeconds(toFrame);
         SQLiteDatabase db = this.getWritableDatabase();
-        Cursor res = db.rawQuery("SELECT * FROM " + TABLE_COINS, null);
-        return res;
+        db.beginTransaction();
+        try {
+            CandleBuffer candles = new CandleBuffer(batchSize);
+            Cursor res = query(SQL_READ_CANDLES_BEFORE, symbol, quote, fromFrame, String.valueOf(beforeTs), String.valueOf(batchSize));
+            try {
+                while (res.moveToNext())
+                    candles.add(res.getInt(0), res.getFloat(1), res.getFloat(2), res.getFloat(3), res.getFloat(4));
+            } finally {
+                res.close();
+            }
+            if (candles.size() == 0)
+                return 0;
+
+            // The last bucket of a full batch could continue in the next batch, it is rolled up next time.
+            int lastBucket = candles.time(candles.size() - 1) - candles.time(candles.size() - 1) % bucketSeconds;
+            int rollUpBeforeTs = candles.size() < batchSize ? beforeTs : lastBucket;
+            SQLiteStatement insert = statementCache.statement(db, SQL_INSERT_ROLLED_CANDLE);
+            synchronized (insert) {
+                insert.bindString(1, symbol);
+                insert.bindString(2, quote);
+                insert.bindString(3, toFrame);
+                int i = 0;
+                while (i < candles.size() && candles.time(i) < rollUpBeforeTs) {
+                    int bucket = candles.time(i) - candles.time(i) % bucketSeconds;
+                    float open = candles.open(i), high = candles.high(i), low = candles.low(i), close = candles.close(i);
+                    for (i++; i < candles.size() && candles.time(i) < bucket + bucketSeconds; i++) {
+                        high = Math.max(high, candles.high(i));
+                        low = Math.min(low, candles.low(i));
+                        close = candles.close(i);
+                    }
+                    insert.bindLong(4, bucket);
+                    insert.bindDouble(5, open);
+                    insert.bindDouble(6, high);
+                    insert.bindDouble(7, low);
+                    insert.bindDouble(8, close);
+                    insert.executeInsert();
+                }
+            }
+            int deleted = executeUpdateDelete(SQL_DELETE_ROLLED_CANDLES, symbol, quote, fromFrame, rollUpBeforeTs);
+            db.setTransactionSuccessful();
+            return deleted;
+        } finally {
+            db.endTransaction();
+        }
     }
 
-    // Getting all data from the table Selected_coin.
-    public Cursor readGeneralInfoFromDB(){
+    /**
+     * Switch the database to incremental auto vacuum, so free pages could be released in small steps.
+     * The first switch rebuilds the database with VACUUM, it must be called from a background thread.
+     */
+    public void enableIncrementalVacuum() {
         SQLiteDatabase db = this.getWritableDatabase();
-        Cursor res = db.rawQuery("SELECT * FROM " + TABLE_SELECTED_COIN, null);
-        return res;
+        Cursor res = db.rawQuery("PRAGMA auto_vacuum", null);
+        int mode = res.moveToNext() ? res.getInt(0) : 0;
+        res.close();
+        if (mode != 2) {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        }
+    }
+
+    /**
+     * Release free pages of the database file.
+     *
+     * @param pages - Maximal number of released pages
+     */
+    public void incrementalVacuum(int pages) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        // The pragma returns no rows, but it runs only while the cursor is stepped. Pragma arguments could not be bound.
+        Cursor res = db.rawQuery("PRAGMA incremental_vacuum(" + pages + ")", null);
+        res.moveToNext();
+        res.close();
+    }
+
+    /**
+     * Store the cursor of a backfill. All candles from next_to_ts up to now are already stored.
+     *
+     * @param symbol       - Symbol of selected Cryptocurrency
+     * @param quote        - Symbol in which the value is expressed
+     * @param timeFrame    - Time frame, e.g. "day", "hour", "minute"
+     * @param nextToTs     - Time of the newest candle which is still missing
+     * @param targetFromTs - Oldest time which should be stored
+     * @param done         - True if the backfill is finished
+     */
+    public void writeBackfillCursor(String symbol, String quote, String timeFrame, int nextToTs, int targetFromTs, boolean done) {
+        executeInsert(SQL_UPSERT_BACKFILL, symbol, quote, timeFrame, nextToTs, targetFromTs, done ? 1 : 0);
+    }
+
+    /**
+     * Read backfill cursors: symbol, quote, time_frame, next_to_ts, target_from_ts, done.
+     *
+     * @param unfinishedOnly - True to read only backfills which are not finished
+     * @return Cursor        - Result is found from query
+     */
+    public Cursor readBackfillCursors(boolean unfinishedOnly) {
+        return query(unfinishedOnly ? SQL_READ_UNFINISHED_BACKFILLS : SQL_READ_BACKFILLS);
+    }
+
+    /**
+     * Store a fetch which could not run without network. A queued fetch of the same kind and key is
+     * replaced, so only the newest intent for every target is kept.
+     *
+     * @param kind      - Kind of the fetch, e.g. "graph"
+     * @param key       - Target of the fetch, e.g. symbol
+     * @param payload   - Parameters of the fetch, could be null
+     * @param createdAt - Time of the intent in milliseconds
+     */
+    public void writeDeferredFetch(String kind, String key, String payload, long createdAt) {
+        executeInsert(SQL_UPSERT_DEFERRED_FETCH, kind, key, payload, createdAt);
+    }
+
+    /**
+     * Read all deferred fetches, oldest first: kind, fetch_key, payload, created_at.
+     *
+     * @return Cursor - Result is found from query
+     */
+    public Cursor readDeferredFetches() {
+        return query(SQL_READ_DEFERRED_FETCHES);
     }
 
     /**
-     * Read graph lines from the table for specified symbol and time frame.
+     * Delete a replayed fetch. The row is deleted only if it was not replaced by a newer intent.
+     *
+     * @param kind      - Kind of the fetch
+     * @param key       - Target of the fetch
+     * @param createdAt - Time of the replayed intent in milliseconds
+     */
+    public void deleteDeferredFetch(String kind, String key, long createdAt) {
+        executeUpdateDelete(SQL_DELETE_DEFERRED_FETCH, kind, key, createdAt);
+    }
+
+    /**
+     * Getting General Information of one Coin from the table Selected_coin - general info,
+     * compared values and time of the download in seconds.
+     *
+     * @param symbol  - Symbol of selected Cryptocurrency
+     * @return Cursor - At most one row
+     */
+    public Cursor readGeneralInfoFromDB(String symbol) {
+        return query(SQL_READ_GENERAL_INFO, symbol);
+    }
+
+    /**
+     * Getting fields of the General Information of one Coin (name, value), in display order.
+     *
+     * @param symbol  - Symbol of selected Cryptocurrency
+     * @return Cursor - Result is found from query
+     */
+    public Cursor readGeneralInfoFields(String symbol) {
+        return query(SQL_READ_INFO_FIELDS, symbol);
+    }
+
+    /**
+     * Read graph lines from the table for specified symbol and time frame, one row per compared symbol.
      *
      * @param symbolFrom    - Symbol of selected Cryptocurrency
      * @param timeFrame     - Time frame, e.g. "day", "hour", "minute"
      * @return Cursor       - Result is found from query
      */
     public Cursor readGraphLineFromDB(String symbolFrom, String timeFrame) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        Cursor res = db.rawQuery("SELECT * FROM " + TABLE_GRAPH_LINE + " WHERE " + SYM_FROM + " = '" + symbolFrom +
-                "' AND " + TIME_FRAME + " = '" + timeFrame + "'", null);
-        return res;
+        return query(SQL_READ_GRAPH_LINES, symbolFrom, timeFrame);
     }
 
     /**
@@ -174,9 +726,17 @@ public class DatabaseHandler extends SQLiteOpenHelper {
      * @param symbolFrom    - Symbol of selected Cryptocurrency
      */
     public void deleteGraphBySymbol(String symbolFrom) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.execSQL("DELETE FROM "+ TABLE_GRAPH_LINE + " WHERE " + SYM_FROM + " = '" + symbolFrom + "'");
-        db.close();
+        executeUpdateDelete(SQL_DELETE_GRAPH_BY_SYMBOL, symbolFrom);
+    }
+
+    /**
+     * Delete the graph line of one compared symbol, for all time frames.
+     *
+     * @param symbolFrom    - Symbol of selected Cryptocurrency
+     * @param symbolTo      - Symbol used for comparison
+     */
+    public void deleteGraphLine(String symbolFrom, String symbolTo) {
+        executeUpdateDelete(SQL_DELETE_GRAPH_LINE, symbolFrom, symbolTo);
     }
 
     /**
@@ -186,19 +746,57 @@ public class DatabaseHandler extends SQLiteOpenHelper {
      * @param timeFrame     - Time frame, e.g. "day", "hour", "minute"
      */
     public void deleteGraphTimeFrame(String symbolFrom, String timeFrame) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.execSQL("DELETE FROM "+ TABLE_GRAPH_LINE + " WHERE " + SYM_FROM + " = '" + symbolFrom +
-                "' AND " + TIME_FRAME + " = '" + timeFrame + "'");
-        db.close();
+        executeUpdateDelete(SQL_DELETE_GRAPH_TIME_FRAME, symbolFrom, timeFrame);
     }
 
-    // Delete content from all tables in the database.
-    public void deleteAllTables() {
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.execSQL("DELETE FROM "+ TABLE_COINS);
-        db.execSQL("DELETE FROM "+ TABLE_SELECTED_COIN);
-        db.execSQL("DELETE FROM "+ TABLE_GRAPH_LINE);
-        db.close();
+    // Delete the stored list of Coins, it is replaced by the list received from the API.
+    public void deleteCoins() {
+        executeUpdateDelete(SQL_DELETE_COINS);
+    }
+
+    // Cursor query with constant SQL text and bound arguments.
+    private Cursor query(String sql, String... args) {
+        return this.getReadableDatabase().rawQuery(sql, args);
+    }
+
+    // Execute a cached insert, arguments are bound in order.
+    private long executeInsert(String sql, Object... args) {
+        SQLiteStatement statement = statementCache.statement(this.getWritableDatabase(), sql);
+        synchronized (statement) {
+            bindArgs(statement, args);
+            try {
+                return statement.executeInsert();
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    // Execute a cached update or delete, arguments are bound in order.
+    private int executeUpdateDelete(String sql, Object... args) {
+        SQLiteStatement statement = statementCache.statement(this.getWritableDatabase(), sql);
+        synchronized (statement) {
+            bindArgs(statement, args);
+            try {
+                return statement.executeUpdateDelete();
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    private static void bindArgs(SQLiteStatement statement, Object[] args) {
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg == null)
+                statement.bindNull(i + 1);
+            else if (arg instanceof Integer || arg instanceof Long)
+                statement.bindLong(i + 1, ((Number) arg).longValue());
+            else if (arg instanceof Float || arg instanceof Double)
+                statement.bindDouble(i + 1, ((Number) arg).doubleValue());
+            else
+                statement.bindString(i + 1, arg.toString());
+        }
     }
 
 }
@@ -0,0 +1,376 @@
+/**
+ * Versioned schema migrations of the database. Every step moves the schema from one version to the
+ * next one, and an old database is upgraded by running the steps in order, so cached data is kept.
+ *
+ * A step is split in two parts. The schema change runs inside the upgrade transaction and must be
+ * fast, because the database is opened from any thread. Data transforms which could touch many rows
+ * are deferred: they are run later in background, in small chunks, each in its own transaction. A
+ * deferred transform keeps its progress in the database, so it continues after process death.
+ *
+ * SQL of a step is written out in full and never refers to the current table definitions, a step
+ * must create exactly the schema of its version.
+ */
+
+package com.example.cryptocurrency;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class DatabaseMigrations {
+
+    private static final String TAG = "DatabaseMigrations";
+    private static final int CHUNK_ROWS = 20;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    // One step of the schema, from startVersion to startVersion + 1.
+    abstract static class Migration {
+        final int startVersion;
+
+        Migration(int startVersion) {
+            this.startVersion = startVersion;
+        }
+
+        // Schema change, runs in the upgrade transaction.
+        abstract void migrate(SQLiteDatabase db);
+
+        /**
+         * One chunk of the deferred data transform, runs in its own transaction in background.
+         *
+         * @param db       - Writable database
+         * @return boolean - True if there is more work, false if the transform is finished
+         */
+        boolean migrateChunk(SQLiteDatabase db) {
+            return false;
+        }
+    }
+
+    // Version 2 - full list of Cryptocurrencies.
+    private static final Migration ADD_CATALOG = new Migration(1) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS Coin_catalog (symbol TEXT PRIMARY KEY, name TEXT, image TEXT, sort_order INTEGER)");
+        }
+    };
+
+    // Version 3 - one row per compared symbol in Graph_lines. Old rows hold all symbols of a graph,
+    // they are moved into a legacy table and split in background.
+    private static final Migration SPLIT_GRAPH_LINES = new Migration(2) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE Graph_lines RENAME TO Graph_lines_v2");
+            db.execSQL("CREATE TABLE Graph_lines (sym_from TEXT, sym_to TEXT, point_x FLOAT, point_y FLOAT, time INTEGER, " +
+                    "time_frame TEXT, num_rows INTEGER, num_columns INTEGER)");
+        }
+
+        @Override
+        boolean migrateChunk(SQLiteDatabase db) {
+            if (!tableExists(db, "Graph_lines_v2"))
+                return false;
+            db.beginTransaction();
+            try {
+                Cursor res = db.rawQuery("SELECT rowid, sym_from, sym_to, point_x, point_y, time, time_frame, num_rows, " +
+                        "num_columns FROM Graph_lines_v2 LIMIT " + CHUNK_ROWS, null);
+                int rows = 0;
+                try {
+                    while (res.moveToNext()) {
+                        splitGraphLines(db, res.getString(1), res.getString(2), res.getString(3), res.getString(4),
+                                res.getString(5), res.getString(6), res.getInt(7), res.getInt(8));
+                        db.delete("Graph_lines_v2", "rowid = ?", new String[] {String.valueOf(res.getLong(0))});
+                        rows++;
+                    }
+                } finally {
+                    res.close();
+                }
+                if (rows < CHUNK_ROWS)
+                    db.execSQL("DROP TABLE Graph_lines_v2");
+                db.setTransactionSuccessful();
+                return rows == CHUNK_ROWS;
+            } finally {
+                db.endTransaction();
+            }
+        }
+    };
+
+    // Version 4 - candle store.
+    private static final Migration ADD_CANDLES = new Migration(3) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS Candles (symbol TEXT NOT NULL, quote TEXT NOT NULL, time_frame TEXT NOT NULL, " +
+                    "time INTEGER NOT NULL, open REAL, high REAL, low REAL, close REAL, " +
+                    "PRIMARY KEY (symbol, quote, time_frame, time))");
+        }
+    };
+
+    // Version 5 - resumable backfill cursors.
+    private static final Migration ADD_BACKFILL_CURSORS = new Migration(4) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS Backfill_cursors (symbol TEXT NOT NULL, quote TEXT NOT NULL, " +
+                    "time_frame TEXT NOT NULL, next_to_ts INTEGER, target_from_ts INTEGER, done INTEGER, " +
+                    "PRIMARY KEY (symbol, quote, time_frame))");
+        }
+    };
+
+    // Version 6 - one row per Coin in Selected_coins, keyed by symbol, with the time of the download. Old
+    // rows, one per opened Coin, are moved into a legacy table and copied in background, only the newest row
+    // of every symbol is kept. Fields of the stored general info are parsed in background.
+    private static final Migration KEY_SELECTED_COINS = new Migration(5) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE Selected_coins RENAME TO Selected_coins_v5");
+            db.execSQL("CREATE TABLE Selected_coins (sym TEXT PRIMARY KEY, general_info TEXT, compared_value TEXT, fetched_at INTEGER)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS General_info_fields (sym TEXT NOT NULL, field TEXT NOT NULL, value TEXT, " +
+                    "position INTEGER, PRIMARY KEY (sym, field))");
+        }
+
+        // Old rows are copied first, then rows without fetched_at are parsed, they get 0 - time of the
+        // download is unknown.
+        @Override
+        boolean migrateChunk(SQLiteDatabase db) {
+            if (tableExists(db, "Selected_coins_v5")) {
+                copySelectedCoins(db);
+                return true;
+            }
+            db.beginTransaction();
+            try {
+                Cursor res = db.rawQuery("SELECT sym, general_info FROM Selected_coins WHERE fetched_at IS NULL LIMIT " + CHUNK_ROWS, null);
+                int rows = 0;
+                try {
+                    while (res.moveToNext()) {
+                        String symbol = res.getString(0);
+                        String text = res.getString(1);
+                        String[] lines = splitLines(text != null ? text : "");
+                        for (int i = 0; i < lines.length; i++) {
+                            int separator = lines[i].indexOf(": ");
+                            if (separator <= 0)
+                                continue;
+                            ContentValues fieldValues = new ContentValues();
+                            fieldValues.put("sym", symbol);
+                            fieldValues.put("field", lines[i].substring(0, separator));
+                            fieldValues.put("value", lines[i].substring(separator + 2));
+                            fieldValues.put("position", i);
+                            db.insertWithOnConflict("General_info_fields", null, fieldValues, SQLiteDatabase.CONFLICT_IGNORE);
+                        }
+                        db.execSQL("UPDATE Selected_coins SET fetched_at = 0 WHERE sym = ?", new Object[] {symbol});
+                        rows++;
+                    }
+                } finally {
+                    res.close();
+                }
+                db.setTransactionSuccessful();
+                return rows == CHUNK_ROWS;
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        // Newest rows are copied first, so an older row of the same symbol, or a row written after the
+        // upgrade, is never replaced. The legacy table is dropped with its last chunk.
+        private void copySelectedCoins(SQLiteDatabase db) {
+            db.beginTransaction();
+            try {
+                Cursor res = db.rawQuery("SELECT rowid, sym, general_info, compared_value FROM Selected_coins_v5 " +
+                        "ORDER BY rowid DESC LIMIT " + CHUNK_ROWS, null);
+                int rows = 0;
+                try {
+                    while (res.moveToNext()) {
+                        if (!res.isNull(1)) {
+                            ContentValues contentValues = new ContentValues();
+                            contentValues.put("sym", res.getString(1));
+                            contentValues.put("general_info", res.getString(2));
+                            contentValues.put("compared_value", res.getString(3));
+                            db.insertWithOnConflict("Selected_coins", null, contentValues, SQLiteDatabase.CONFLICT_IGNORE);
+                        }
+                        db.delete("Selected_coins_v5", "rowid = ?", new String[] {String.valueOf(res.getLong(0))});
+                        rows++;
+                    }
+                } finally {
+                    res.close();
+                }
+                if (rows < CHUNK_ROWS)
+                    db.execSQL("DROP TABLE Selected_coins_v5");
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    };
+
+    // Version 7 - fetches which are replayed when the network is back.
+    private static final Migration ADD_DEFERRED_FETCHES = new Migration(6) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS Deferred_fetches (kind TEXT NOT NULL, fetch_key TEXT NOT NULL, payload TEXT, " +
+                    "created_at INTEGER, PRIMARY KEY (kind, fetch_key))");
+        }
+    };
+
+    // Version 8 - staging table of the catalog ingest, so the download does not hold a transaction open.
+    private static final Migration ADD_CATALOG_STAGING = new Migration(7) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS Coin_catalog_new (symbol TEXT PRIMARY KEY, name TEXT, image TEXT, " +
+                    "sort_order INTEGER)");
+        }
+    };
+
+    // All steps, ordered by version. A new schema version adds its step at the end.
+    static final Migration[] MIGRATIONS = {ADD_CATALOG, SPLIT_GRAPH_LINES, ADD_CANDLES, ADD_BACKFILL_CURSORS, KEY_SELECTED_COINS,
+            ADD_DEFERRED_FETCHES, ADD_CATALOG_STAGING};
+
+    // Tables which are not part of the current schema, but could still exist until deferred work is finished.
+    static final String[] LEGACY_TABLES = {"Graph_lines_v2", "Selected_coins_v5"};
+
+    private DatabaseMigrations() {
+    }
+
+    /**
+     * Steps from oldVersion to newVersion, in order.
+     *
+     * @param oldVersion        - Version of the stored database
+     * @param newVersion        - Version of the current schema
+     * @return List<Migration>  - Steps, or null if some step is missing
+     */
+    static List<Migration> path(int oldVersion, int newVersion) {
+        List<Migration> steps = new ArrayList<>();
+        for (int version = oldVersion; version < newVersion; version++) {
+            Migration step = null;
+            for (Migration migration : MIGRATIONS) {
+                if (migration.startVersion == version)
+                    step = migration;
+            }
+            if (step == null)
+                return null;
+            steps.add(step);
+        }
+        return steps;
+    }
+
+    /**
+     * Upgrade the schema. Called from onUpgrade, inside its transaction.
+     *
+     * @param db         - Database being upgraded
+     * @param oldVersion - Version of the stored database
+     * @param newVersion - Version of the current schema
+     * @return boolean   - True if every step was found and applied, false if the database must be recreated
+     */
+    static boolean upgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        List<Migration> steps = path(oldVersion, newVersion);
+        if (steps == null)
+            return false;
+        for (Migration step : steps) {
+            Log.i(TAG, "Migrating database from version " + step.startVersion + " to " + (step.startVersion + 1));
+            step.migrate(db);
+        }
+        return true;
+    }
+
+    // Run all deferred transforms in background. Runs are queued, so two runs never overlap.
+    public static void runDeferredAsync(final DatabaseHandler handler) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    runDeferred(handler.getWritableDatabase());
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Run all deferred transforms until they are finished. Must be called from a background thread.
+     *
+     * @param db - Writable database
+     */
+    static void runDeferred(SQLiteDatabase db) {
+        for (Migration migration : MIGRATIONS) {
+            long start = System.nanoTime();
+            int chunks = 0;
+            while (migration.migrateChunk(db))
+                chunks++;
+            if (chunks > 0)
+                Log.i(TAG, "Deferred migration to version " + (migration.startVersion + 1) + ": " + chunks + " chunks, " +
+                        (System.nanoTime() - start) / 1000000 + " ms");
+        }
+    }
+
+    private static boolean tableExists(SQLiteDatabase db, String table) {
+        Cursor res = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?", new String[] {table});
+        try {
+            return res.moveToFirst();
+        } finally {
+            res.close();
+        }
+    }
+
+    // Old row of Graph_lines: symbols are joined with "\n", x and y values of all symbols are concatenated,
+    // every symbol has as many values as the time axis. Rows which were already written in the new format win.
+    private static void splitGraphLines(SQLiteDatabase db, String symbolFrom, String symbolsTo, String dotsX, String dotsY,
+                                        String timeAxis, String timeFrame, int numRows, int numColumns) {
+        if (symbolFrom == null || symbolsTo == null || dotsX == null || dotsY == null || timeAxis == null)
+            return;
+        String[] symbols = splitLines(symbolsTo);
+        int pointsPerLine = splitLines(timeAxis).length;
+        String[] xs = splitLines(dotsX);
+        String[] ys = splitLines(dotsY);
+        if (pointsPerLine == 0 || xs.length != ys.length || xs.length != symbols.length * pointsPerLine)
+            return;
+        for (int i = 0; i < symbols.length; i++) {
+            Cursor res = db.rawQuery("SELECT 1 FROM Graph_lines WHERE sym_from = ? AND sym_to = ? AND time_frame = ?",
+                    new String[] {symbolFrom, symbols[i], timeFrame});
+            boolean exists;
+            try {
+                exists = res.moveToFirst();
+            } finally {
+                res.close();
+            }
+            if (exists)
+                continue;
+            ContentValues contentValues = new ContentValues();
+            contentValues.put("sym_from", symbolFrom);
+            contentValues.put("sym_to", symbols[i]);
+            contentValues.put("point_x", joinLines(xs, i * pointsPerLine, pointsPerLine));
+            contentValues.put("point_y", joinLines(ys, i * pointsPerLine, pointsPerLine));
+            contentValues.put("time", timeAxis);
+            contentValues.put("time_frame", timeFrame);
+            contentValues.put("num_rows", numRows);
+            contentValues.put("num_columns", numColumns);
+            db.insert("Graph_lines", null, contentValues);
+        }
+    }
+
+    // Lines of a "\n" terminated series, empty lines are skipped.
+    static String[] splitLines(String series) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < series.length()) {
+            int end = series.indexOf('\n', start);
+            if (end < 0)
+                end = series.length();
+            if (end > start)
+                lines.add(series.substring(start, end));
+            start = end + 1;
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    private static String joinLines(String[] lines, int from, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = from; i < from + count; i++)
+            builder.append(lines[i]).append('\n');
+        return builder.toString();
+    }
+
+}
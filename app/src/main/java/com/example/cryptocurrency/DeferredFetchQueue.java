@@ -0,0 +1,177 @@
+/**
+ * Fetches which could not run without network. Instead of dropping a request, the UI queues an
+ * intent - kind, key (target of the fetch) and payload (parameters). Intents are stored in the
+ * database, so they survive process death, and intents with the same kind and key are coalesced:
+ * only the newest one is kept, e.g. the last selected time frame of a graph.
+ *
+ * When the network is back, or on start with network, all intents are replayed on the main thread.
+ * Every intent is passed to the handlers of its kind, newest handler first, until one accepts it.
+ * Shown screens register handlers which reload their views, and the application registers handlers
+ * which fetch into the database in background when no screen accepts the intent. An accepted intent
+ * is deleted, an intent which was not accepted stays in the queue.
+ */
+
+package com.example.cryptocurrency;
+
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DeferredFetchQueue implements ConnectivityMonitor.Listener {
+
+    private static final String TAG = "DeferredFetchQueue";
+    private static final String KEY_SEPARATOR = "|";
+
+    public static final String KIND_GENERAL_INFO = "general_info";     // key: symbol
+    public static final String KIND_GRAPH = "graph";                   // key: symbol|graph index
+    public static final String KIND_BACKFILL = "backfill";             // key: symbol|quote
+
+    // Replays intents of one kind, called on the main thread.
+    public interface ReplayHandler {
+        /**
+         * @param key      - Target of the fetch
+         * @param payload  - Parameters of the fetch, could be null
+         * @return boolean - True if the fetch is started, false to pass the intent to the next handler
+         */
+        boolean onReplay(String key, String payload);
+    }
+
+    // One stored intent.
+    private static class Entry {
+        final String kind, key, payload;
+        final long createdAt;
+
+        Entry(String kind, String key, String payload, long createdAt) {
+            this.kind = kind;
+            this.key = key;
+            this.payload = payload;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final ConnectivityMonitor monitor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, List<ReplayHandler>> handlers = new HashMap<>();
+    private boolean replaying;
+
+    DeferredFetchQueue(ConnectivityMonitor monitor) {
+        this.monitor = monitor;
+        monitor.addListener(this);
+    }
+
+    // Key of several parts, e.g. symbol and quote.
+    public static String key(String... parts) {
+        return TextUtils.join(KEY_SEPARATOR, parts);
+    }
+
+    public static String[] splitKey(String key) {
+        return TextUtils.split(key, "\\" + KEY_SEPARATOR);
+    }
+
+    // Must be called from the main thread. Handlers of views are removed when the view is destroyed.
+    public void addHandler(String kind, ReplayHandler handler) {
+        List<ReplayHandler> kindHandlers = handlers.get(kind);
+        if (kindHandlers == null) {
+            kindHandlers = new ArrayList<>();
+            handlers.put(kind, kindHandlers);
+        }
+        kindHandlers.add(handler);
+    }
+
+    public void removeHandler(String kind, ReplayHandler handler) {
+        List<ReplayHandler> kindHandlers = handlers.get(kind);
+        if (kindHandlers != null)
+            kindHandlers.remove(handler);
+    }
+
+    /**
+     * Queue a fetch until the network is back. A queued fetch with the same kind and key is replaced.
+     *
+     * @param kind    - Kind of the fetch, one of KIND_*
+     * @param key     - Target of the fetch
+     * @param payload - Parameters of the fetch, could be null
+     */
+    public void enqueue(final String kind, final String key, final String payload) {
+        final long createdAt = System.currentTimeMillis();
+        CryptocurrencyApp.getDiskExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                CryptocurrencyApp.getDatabase().writeDeferredFetch(kind, key, payload, createdAt);
+            }
+        });
+    }
+
+    @Override
+    public void onConnectivityChanged(boolean connected) {
+        if (connected)
+            replay();
+    }
+
+    /**
+     * Replay all stored intents if the network is available. Must be called from the main thread.
+     * Intents are read on the disk executor, after all earlier writes of the queue.
+     */
+    public void replay() {
+        if (replaying || !monitor.isConnected())
+            return;
+        replaying = true;
+        CryptocurrencyApp.getDiskExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Entry> entries = new ArrayList<>();
+                try {
+                    Cursor res = CryptocurrencyApp.getDatabase().readDeferredFetches();
+                    while (res.moveToNext())
+                        entries.add(new Entry(res.getString(0), res.getString(1), res.getString(2), res.getLong(3)));
+                    res.close();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatch(entries);
+                    }
+                });
+            }
+        });
+    }
+
+    // Pass every intent to its handlers and delete accepted ones. Deletes are queued before the next replay reads.
+    private void dispatch(List<Entry> entries) {
+        final List<Entry> accepted = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!monitor.isConnected())
+                break;
+            List<ReplayHandler> kindHandlers = handlers.get(entry.kind);
+            if (kindHandlers == null)
+                continue;
+            for (int i = kindHandlers.size() - 1; i >= 0; i--) {
+                if (kindHandlers.get(i).onReplay(entry.key, entry.payload)) {
+                    accepted.add(entry);
+                    break;
+                }
+            }
+        }
+        if (!accepted.isEmpty()) {
+            Log.d(TAG, "Replayed " + accepted.size() + " of " + entries.size() + " deferred fetches");
+            CryptocurrencyApp.getDiskExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    DatabaseHandler db = CryptocurrencyApp.getDatabase();
+                    for (Entry entry : accepted)
+                        db.deleteDeferredFetch(entry.kind, entry.key, entry.createdAt);
+                }
+            });
+        }
+        replaying = false;
+    }
+
+}
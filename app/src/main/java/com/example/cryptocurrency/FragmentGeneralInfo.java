@@ -4,13 +4,14 @@
 
 package com.example.cryptocurrency;
 
-import android.content.Context;
 import android.database.Cursor;
 import android.graphics.Typeface;
-import android.net.ConnectivityManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 
-import androidx.fragment.app.Fragment;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.ViewModelProviders;
 
 import android.view.LayoutInflater;
 import android.view.View;
@@ -18,39 +19,60 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.android.volley.Request;
-import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.text.DateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 
-public class FragmentGeneralInfo extends Fragment {
+public class FragmentGeneralInfo extends LazyTabFragment {
+    private static final String ARG_SYMBOL = "symbol";
+    // Requested comparisons.
+    private static final String[] REQUESTED_COMPARISONS = {"BTC", "ETH", "EVN", "DOGE", "ZEC", "USD", "EUR"};
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
     private View view;
-    private ArrayList<String> listGenInfo, listCompareValue;
     private TextView captionGeneralInfo, captionComparedValue;
     private TextView textGenInfo, textCompValue;
-    private String[] listOfRequestedComparisons;    // list of the symbols for requested comparisons
+    private TextView textStale;
     private String symbolName;
+    private GeneralInfoViewModel viewModel;         // received text, kept across rotation
+    private Request.Priority requestPriority = Request.Priority.NORMAL;
+    private int pendingResponses;                   // requests which are still running
+    private boolean generalInfoFailed, comparedValuesFailed;
     private String URL_GENERAL_INFO;
     private String URL_COMPARED_VALUE;
+    private DeferredFetchQueue.ReplayHandler replayHandler;
 
     public FragmentGeneralInfo() {
     }
 
-    public FragmentGeneralInfo(String symbol) {
-        symbolName = symbol;
+    /**
+     * New general information fragment for the selected symbol.
+     *
+     * @param symbol              - Symbol of selected Cryptocurrency
+     * @return FragmentGeneralInfo - New fragment
+     */
+    public static FragmentGeneralInfo newInstance(String symbol) {
+        FragmentGeneralInfo fragment = new FragmentGeneralInfo();
+        Bundle arguments = new Bundle();
+        arguments.putString(ARG_SYMBOL, symbol);
+        fragment.setArguments(arguments);
+        return fragment;
     }
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        symbolName = getArguments().getString(ARG_SYMBOL);
+        viewModel = ViewModelProviders.of(this).get(GeneralInfoViewModel.class);
     }
 
     @Override
@@ -65,123 +87,336 @@ public class FragmentGeneralInfo extends Fragment {
         captionComparedValue.setTypeface(null, Typeface.BOLD);
         textGenInfo = (TextView) view.findViewById(R.id.textGenInfo);
         textCompValue = (TextView) view.findViewById(R.id.textCompValue);
-
-        // Requested comparisons.
-        listOfRequestedComparisons = new String[] {
-                "BTC", "ETH", "EVN", "DOGE", "ZEC", "USD", "EUR"
-        };
-        listGenInfo = new ArrayList<>();
-        listCompareValue = new ArrayList<>();
+        textStale = (TextView) view.findViewById(R.id.textStale);
 
         // Necessary url strings.
-        URL_GENERAL_INFO = "https://min-api.cryptocompare.com/data/pricemultifull?fsyms=" + symbolName + "&tsyms=USD";
-        URL_COMPARED_VALUE = "https://min-api.cryptocompare.com/data/price?fsym=" + symbolName + "&tsyms=" + listOfRequestedComparisons[0];
-        for(int i = 1; i < listOfRequestedComparisons.length; i++)
-            URL_COMPARED_VALUE = URL_COMPARED_VALUE + "," + listOfRequestedComparisons[i];
+        URL_GENERAL_INFO = generalInfoUrl(symbolName);
+        URL_COMPARED_VALUE = comparedValueUrl(symbolName);
 
-        // Checking internet Access. If Internet is available, use data from URL, otherwise use data from DB if exist.
-        if(isNetworkConnected()) {
-            try {
-                readGeneralInfoForSelectedCoin();
-                readComparedValuesForSelectedCoin();
+        // Text is shown from the view model, also after rotation.
+        viewModel.getGeneralInfo().observe(getViewLifecycleOwner(), new Observer<String>() {
+            @Override
+            public void onChanged(String text) {
+                textGenInfo.setText(text);
             }
-            catch (JSONException e) {
-                e.printStackTrace();
+        });
+        viewModel.getComparedValues().observe(getViewLifecycleOwner(), new Observer<String>() {
+            @Override
+            public void onChanged(String text) {
+                textCompValue.setText(text);
             }
-        }
-        else {
-            // Reading from database.
-            Cursor res = MainActivity.db.readGeneralInfoFromDB();
-            while(res.moveToNext()) {
-                if( res.getString(0).equals(symbolName)) {
-                    textGenInfo.setText(res.getString(1));
-                    textCompValue.setText(res.getString(2));
-                    break;
-                }
+        });
+        // Cached data is marked with the time of its download.
+        viewModel.getStaleNotice().observe(getViewLifecycleOwner(), new Observer<String>() {
+            @Override
+            public void onChanged(String notice) {
+                textStale.setText(notice);
+                textStale.setVisibility(notice != null ? View.VISIBLE : View.GONE);
             }
-        }
+        });
+
+        // Info requested without network is loaded into this tab when the network is back.
+        replayHandler = new DeferredFetchQueue.ReplayHandler() {
+            @Override
+            public boolean onReplay(String key, String payload) {
+                if (!key.equals(symbolName) || !viewModel.isRequested())
+                    return false;
+                startRequests();
+                return true;
+            }
+        };
+        CryptocurrencyApp.getFetchQueue().addHandler(DeferredFetchQueue.KIND_GENERAL_INFO, replayHandler);
 
         return view;
     }
 
+    @Override
+    public void onDestroyView() {
+        CryptocurrencyApp.getFetchQueue().removeHandler(DeferredFetchQueue.KIND_GENERAL_INFO, replayHandler);
+        super.onDestroyView();
+    }
+
+    // Called when the tab is shown, or for prefetch after the visible tab is loaded.
+    @Override
+    protected void onLoad(boolean prefetch) {
+        // Data is requested only once for this fragment, not after rotation.
+        if(viewModel.isRequested())
+            return;
+        viewModel.setRequested(true);
+        requestPriority = prefetch ? Request.Priority.LOW : Request.Priority.NORMAL;
+
+        // Checking internet Access. If Internet is available, use data from URL, otherwise use data from DB if exist.
+        if(CryptocurrencyApp.getConnectivityMonitor().isConnected())
+            startRequests();
+        else {
+            // Reading the row of this symbol from database. Fresh data is requested when the network is back.
+            showCachedInfo(viewModel, symbolName, true, true, "No Internet Connection.");
+            CryptocurrencyApp.getFetchQueue().enqueue(DeferredFetchQueue.KIND_GENERAL_INFO, symbolName, null);
+            notifyLoaded();
+        }
+    }
+
+    private void startRequests() {
+        pendingResponses = 2;
+        generalInfoFailed = false;
+        comparedValuesFailed = false;
+        try {
+            readGeneralInfoForSelectedCoin();
+            readComparedValuesForSelectedCoin();
+        }
+        catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
     // JSON deserialize method for compare selected Cryptocurrency with string array Cryptocurrencies.
     public void readComparedValuesForSelectedCoin() throws JSONException {
 
         // Json request for obtain compared values.
-        JsonObjectRequest request = new JsonObjectRequest(Request.Method.GET, URL_COMPARED_VALUE, null,
+        new ApiJsonRequest(ApiClient.ENDPOINT_PRICE, URL_COMPARED_VALUE,
                 new Response.Listener<JSONObject>() {
                     @Override
                     public void onResponse(JSONObject response) {
                         try {
-                            for(int i = 0; i < listOfRequestedComparisons.length; i++) {
-                                listCompareValue.add(symbolName + " compared to " + listOfRequestedComparisons[i] + " = " + response.getString(listOfRequestedComparisons[i]));
-                            }
-                            // Adding text into TextView.
-                            if(listCompareValue.size() > 0)
-                                textCompValue.setText(listCompareValue.get(0));
-                            for (int i = 1; i < listCompareValue.size(); i++) {
-                                textCompValue.append("\n");
-                                textCompValue.append(listCompareValue.get(i));
-                            }
-                            // Insert general information and comparison values for selected Cryptocurrency in database
-                            MainActivity.db.writeGeneralInfoIntoDB(symbolName, textGenInfo.getText().toString(), textCompValue.getText().toString());
+                            // Adding text into view model, TextView is updated by the observer.
+                            viewModel.setComparedValues(parseComparedValues(response, symbolName));
+                            storeGeneralInfo();
 
                         } catch (JSONException e) {
                             e.printStackTrace();
+                            comparedValuesFailed = true;
                         }
+                        responseFinished();
                     }
                 },
                 new Response.ErrorListener() {
                     @Override
                     public void onErrorResponse(VolleyError error) {
                         error.printStackTrace();
+                        comparedValuesFailed = true;
+                        responseFinished();
                     }
-                });
-        MainActivity.mQueue.add(request);
+                }).setPriority(requestPriority).send();
     }
 
     // JSON deserialize method for showing full information of selected Cryptocurrency.
     public void readGeneralInfoForSelectedCoin() throws JSONException {
 
         // Json request for obtain parameters for selected Cryptocurrency.
-        JsonObjectRequest request = new JsonObjectRequest(Request.Method.GET, URL_GENERAL_INFO, null,
+        new ApiJsonRequest(ApiClient.ENDPOINT_PRICE, URL_GENERAL_INFO,
                 new Response.Listener<JSONObject>() {
                     @Override
                     public void onResponse(JSONObject response) {
                         try {
-                            JSONObject display = response.getJSONObject("DISPLAY");
-                            JSONObject symbol = display.getJSONObject(symbolName);
-                            JSONObject usd = symbol.getJSONObject("USD");
-                            Iterator<?> keys = usd.keys();      // Data is unknown.
-                            while( keys.hasNext() ) {
-                                String name = (String) keys.next();
-                                String value = usd.getString(name);
-                                listGenInfo.add(name + ": " + value);
-                            }
-                            // Adding text into TextView.
-                            if(listGenInfo.size() > 0)
-                                textGenInfo.setText(listGenInfo.get(0));
-                            for (int i = 1; i < listGenInfo.size(); i++ ) {
-                                textGenInfo.append("\n");
-                                textGenInfo.append(listGenInfo.get(i));
-                            }
+                            Map<String, String> fields = viewModel.getGeneralInfoFields();
+                            fields.clear();
+                            // Adding text into view model, TextView is updated by the observer.
+                            viewModel.setGeneralInfo(parseGeneralInfo(response, symbolName, fields));
+                            storeGeneralInfo();
                         } catch (JSONException e) {
                             e.printStackTrace();
+                            generalInfoFailed = true;
                         }
+                        responseFinished();
                     }
                 },
                 new Response.ErrorListener() {
                     @Override
                     public void onErrorResponse(VolleyError error) {
                         error.printStackTrace();
+                        generalInfoFailed = true;
+                        responseFinished();
+                    }
+                }).setPriority(requestPriority).send();
+    }
+
+    // Tab is loaded when all requests are finished. Parts which could not be received are shown from database.
+    private void responseFinished() {
+        pendingResponses--;
+        if(pendingResponses > 0)
+            return;
+        if(generalInfoFailed || comparedValuesFailed)
+            showCachedInfo(viewModel, symbolName, generalInfoFailed, comparedValuesFailed, "The server is not responding.");
+        else
+            viewModel.setStaleNotice(null);
+        notifyLoaded();
+    }
+
+    /**
+     * Show stored data of the symbol, marked as stale with the time of its download. Data is read on the
+     * disk executor, after writes queued before, and is passed to the view model on the main thread.
+     *
+     * @param model          - View model of the fragment
+     * @param symbol         - Symbol of selected Cryptocurrency
+     * @param generalInfo    - True to show stored general info
+     * @param comparedValues - True to show stored compared values
+     * @param reason         - Why fresh data is not shown
+     */
+    private static void showCachedInfo(final GeneralInfoViewModel model, final String symbol, final boolean generalInfo,
+                                       final boolean comparedValues, final String reason) {
+        CryptocurrencyApp.getDiskExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final String[] stored = readCachedInfo(symbol);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(stored == null) {
+                            model.setStaleNotice(reason + " No stored data.");
+                            return;
+                        }
+                        if(generalInfo)
+                            model.setGeneralInfo(stored[0]);
+                        if(comparedValues)
+                            model.setComparedValues(stored[1]);
+                        long fetchedAt = Long.parseLong(stored[2]);
+                        model.setStaleNotice(reason + (fetchedAt > 0
+                                ? " Stored data from " + DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT).format(new Date(fetchedAt * 1000))
+                                : " Stored data is shown."));
                     }
                 });
-        MainActivity.mQueue.add(request);
+            }
+        });
+    }
+
+    // Stored general info, compared values and time of the download, null if nothing is stored.
+    private static String[] readCachedInfo(String symbol) {
+        Cursor res = CryptocurrencyApp.getDatabase().readGeneralInfoFromDB(symbol);
+        try {
+            if(!res.moveToFirst())
+                return null;
+            return new String[] {res.getString(0), res.getString(1), String.valueOf(res.getLong(2))};
+        } finally {
+            res.close();
+        }
+    }
+
+    // Insert general information and comparison values for selected Cryptocurrency in database, when both are received.
+    private void storeGeneralInfo() {
+        String generalInfo = viewModel.getGeneralInfo().getValue();
+        String comparedValues = viewModel.getComparedValues().getValue();
+        if(generalInfo != null && comparedValues != null)
+            writeGeneralInfo(symbolName, new LinkedHashMap<>(viewModel.getGeneralInfoFields()), generalInfo, comparedValues);
+    }
+
+    // Write on the disk executor, after all writes queued before. Fields must not be changed later.
+    private static void writeGeneralInfo(final String symbol, final Map<String, String> fields, final String generalInfo,
+                                         final String comparedValues) {
+        final long fetchedAt = System.currentTimeMillis() / 1000;
+        CryptocurrencyApp.getDiskExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                CryptocurrencyApp.getDatabase().writeGeneralInfoIntoDB(symbol, fields, generalInfo, comparedValues, fetchedAt);
+            }
+        });
+    }
+
+    private static String generalInfoUrl(String symbol) {
+        return "https://min-api.cryptocompare.com/data/pricemultifull?fsyms=" + symbol + "&tsyms=USD";
+    }
+
+    private static String comparedValueUrl(String symbol) {
+        String url = "https://min-api.cryptocompare.com/data/price?fsym=" + symbol + "&tsyms=" + REQUESTED_COMPARISONS[0];
+        for(int i = 1; i < REQUESTED_COMPARISONS.length; i++)
+            url = url + "," + REQUESTED_COMPARISONS[i];
+        return url;
+    }
+
+    /**
+     * JSON deserialize of the full information, fields are unknown.
+     *
+     * @param response - Response of the general info request
+     * @param symbol   - Symbol of selected Cryptocurrency
+     * @param fields   - Receives fields (name, value), in display order
+     * @return String  - Text with one field per line
+     */
+    private static String parseGeneralInfo(JSONObject response, String symbol, Map<String, String> fields) throws JSONException {
+        ArrayList<String> listGenInfo = new ArrayList<>();
+        JSONObject display = response.getJSONObject("DISPLAY");
+        JSONObject usd = display.getJSONObject(symbol).getJSONObject("USD");
+        Iterator<?> keys = usd.keys();      // Data is unknown.
+        while( keys.hasNext() ) {
+            String name = (String) keys.next();
+            String value = usd.getString(name);
+            listGenInfo.add(name + ": " + value);
+            fields.put(name, value);
+        }
+        return joinLines(listGenInfo);
+    }
+
+    // JSON deserialize of the compared values, one line per requested comparison.
+    private static String parseComparedValues(JSONObject response, String symbol) throws JSONException {
+        ArrayList<String> listCompareValue = new ArrayList<>();
+        for(int i = 0; i < REQUESTED_COMPARISONS.length; i++)
+            listCompareValue.add(symbol + " compared to " + REQUESTED_COMPARISONS[i] + " = " + response.getString(REQUESTED_COMPARISONS[i]));
+        return joinLines(listCompareValue);
     }
 
-    // Checking internet connection.
-    private boolean isNetworkConnected() {
-        ConnectivityManager cm = (ConnectivityManager) getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
-        return cm.getActiveNetworkInfo() != null && cm.getActiveNetworkInfo().isConnected();
+    // Replays info requested without network, when no tab of the symbol is shown. Received info is only stored.
+    static final DeferredFetchQueue.ReplayHandler REPLAY_IN_BACKGROUND = new DeferredFetchQueue.ReplayHandler() {
+        @Override
+        public boolean onReplay(String key, String payload) {
+            new BackgroundFetch(key).start();
+            return true;
+        }
+    };
+
+    // Both requests of one symbol without a fragment, stored in database when both are received.
+    private static class BackgroundFetch implements Response.ErrorListener {
+        private final String symbol;
+        private final Map<String, String> fields = new LinkedHashMap<>();
+        private String generalInfo, comparedValues;
+
+        BackgroundFetch(String symbol) {
+            this.symbol = symbol;
+        }
+
+        void start() {
+            new ApiJsonRequest(ApiClient.ENDPOINT_PRICE, generalInfoUrl(symbol),
+                    new Response.Listener<JSONObject>() {
+                        @Override
+                        public void onResponse(JSONObject response) {
+                            try {
+                                generalInfo = parseGeneralInfo(response, symbol, fields);
+                                store();
+                            } catch (JSONException e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    }, this).setPriority(Request.Priority.LOW).send();
+            new ApiJsonRequest(ApiClient.ENDPOINT_PRICE, comparedValueUrl(symbol),
+                    new Response.Listener<JSONObject>() {
+                        @Override
+                        public void onResponse(JSONObject response) {
+                            try {
+                                comparedValues = parseComparedValues(response, symbol);
+                                store();
+                            } catch (JSONException e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    }, this).setPriority(Request.Priority.LOW).send();
+        }
+
+        @Override
+        public void onErrorResponse(VolleyError error) {
+            error.printStackTrace();
+        }
+
+        private void store() {
+            if (generalInfo != null && comparedValues != null)
+                writeGeneralInfo(symbol, fields, generalInfo, comparedValues);
+        }
+    }
+
+    // Lines joined with new line characters.
+    private static String joinLines(ArrayList<String> lines) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            if(i > 0)
+                text.append("\n");
+            text.append(lines.get(i));
+        }
+        return text.toString();
     }
 }
\ No newline at end of file
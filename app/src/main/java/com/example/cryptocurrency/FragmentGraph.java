@@ -4,15 +4,13 @@
 
 package com.example.cryptocurrency;
 
-import android.content.Context;
-import android.database.Cursor;
 import android.graphics.Color;
-import android.graphics.PointF;
 import android.graphics.Typeface;
-import android.net.ConnectivityManager;
+import android.os.AsyncTask;
 import android.os.Bundle;
 
-import androidx.fragment.app.Fragment;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.ViewModelProviders;
 
 import android.view.LayoutInflater;
 import android.view.View;
@@ -20,15 +18,52 @@ import android.view.ViewGroup;
 
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 
-public class FragmentGraph extends Fragment implements View.OnClickListener {
+public class FragmentGraph extends LazyTabFragment implements View.OnClickListener {
+
+    private static final String ARG_SYMBOL = "symbol";
+    private static final int SELECTED_COLOR = Color.rgb(0, 157, 111);
+
+    // Time frame button: graph in which the lines are drawn and parameters of the request.
+    private static class TimeFrameOption {
+        final int buttonId, graphIndex, numberOfData, numRows, numColumns;
+        final String timeFrame;
+
+        TimeFrameOption(int buttonId, int graphIndex, int numberOfData, String timeFrame, int numRows, int numColumns) {
+            this.buttonId = buttonId;
+            this.graphIndex = graphIndex;
+            this.numberOfData = numberOfData;
+            this.timeFrame = timeFrame;
+            this.numRows = numRows;
+            this.numColumns = numColumns;
+        }
+    }
+
+    // All time frame buttons, first button of every graph is the initial one.
+    private static final TimeFrameOption[] TIME_FRAME_OPTIONS = {
+            new TimeFrameOption(R.id.first1D, 0, 1, "day", 2, 1),
+            new TimeFrameOption(R.id.first1W, 0, 7, "day", 5, 7),
+            new TimeFrameOption(R.id.first2W, 0, 14, "day", 5, 7),
+            new TimeFrameOption(R.id.first1M, 0, 30, "day", 5, 6),
+            new TimeFrameOption(R.id.second1D, 1, 24, "hour", 5, 6),
+            new TimeFrameOption(R.id.second3D, 1, 72, "hour", 5, 6),
+            new TimeFrameOption(R.id.second1W, 1, 168, "hour", 5, 6),
+            new TimeFrameOption(R.id.third1h, 2, 60, "minute", 5, 6),
+            new TimeFrameOption(R.id.third3h, 2, 180, "minute", 5, 6),
+            new TimeFrameOption(R.id.third1D, 2, 1440, "minute", 5, 6)
+    };
+    private static final String[] GRAPH_TIME_FRAMES = {"day", "hour", "minute"};
 
     private View view;
     private TextView addCompare, deleteCompare;
@@ -36,31 +71,44 @@ public class FragmentGraph extends Fragment implements View.OnClickListener {
     private Button first1D, first1W, first2W, first1M;
     private Button second1D, second3D, second1W;
     private Button third1H, third3H, third1D;
-    private Spinner addSpinner, deleteSpinner;
+    private Button[] timeFrameButtons;              // same order as TIME_FRAME_OPTIONS
+    private AutoCompleteTextView addSearch;
+    private Spinner deleteSpinner;
     private String symbolName;
-    private List<String> listOfAllAvailableSymbols;
-    private List<String> listOfAddedSymbolsOnGraph;
-    private List<PointF> pointsList = new ArrayList<>();
-    private List<PointF> pointsList2 = new ArrayList<>();
-    private List<PointF> pointsList3 = new ArrayList<>();
+    private GraphViewModel viewModel;               // graphs, buttons and added symbols, kept across rotation
+    private BitSet addedIds;                        // IDs of symbols shown on graphs, changed through the view model
+    private List<String> listOfAddedSymbolsOnGraph = new ArrayList<>();   // "Select" + added symbols, for spinner
+    private SymbolSuggestionAdapter adapterForAdd;
+    private boolean lowPriority;                    // initial graphs are prefetched while the tab is not visible
+    private ArrayAdapter<String> adapterForDelete;
+    private DeferredFetchQueue.ReplayHandler replayHandler;
+
     public FragmentGraph() {
     }
 
 
-    public FragmentGraph(String symbol, List<String> symbols) {
-        symbolName = symbol;
-        listOfAllAvailableSymbols = symbols;
-        listOfAllAvailableSymbols.remove(symbolName);
-    }
-
-    @Override
-    public void onResume() {
-        super.onResume();
+    /**
+     * New graph fragment for the selected symbol. Symbols for comparison are read from the CatalogRegistry.
+     *
+     * @param symbol        - Symbol of selected Cryptocurrency
+     * @return FragmentGraph - New fragment
+     */
+    public static FragmentGraph newInstance(String symbol) {
+        FragmentGraph fragment = new FragmentGraph();
+        Bundle arguments = new Bundle();
+        arguments.putString(ARG_SYMBOL, symbol);
+        fragment.setArguments(arguments);
+        return fragment;
     }
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        symbolName = getArguments().getString(ARG_SYMBOL);
+        viewModel = ViewModelProviders.of(this).get(GraphViewModel.class);
+        if (viewModel.getCatalog() == null)
+            viewModel.setCatalog(CatalogRegistry.getCatalog(getContext()));
+        addedIds = viewModel.getAddedIds();
     }
 
 
@@ -84,7 +132,7 @@ public class FragmentGraph extends Fragment implements View.OnClickListener {
         third3H = (Button) view.findViewById(R.id.third3h);
         third1D = (Button) view.findViewById(R.id.third1D);
         addCompare = (TextView) view.findViewById(R.id.add_Compared);
-        addSpinner = (Spinner) view.findViewById(R.id.add_spinner);
+        addSearch = (AutoCompleteTextView) view.findViewById(R.id.add_search);
         deleteCompare = (TextView) view.findViewById(R.id.delete_Compared);
         deleteSpinner = (Spinner) view.findViewById(R.id.delete_spinner);
 
@@ -99,9 +147,51 @@ public class FragmentGraph extends Fragment implements View.OnClickListener {
         third1H.setOnClickListener(this);
         third3H.setOnClickListener(this);
         third1D.setOnClickListener(this);
+        timeFrameButtons = new Button[] {
+                first1D, first1W, first2W, first1M, second1D, second3D, second1W, third1H, third3H, third1D
+        };
+
+        // Graphs are drawn from the view model, also after rotation.
+        final GraphView[] graphViews = {graphView, graphView2, graphView3};
+        // Panned graphs read windows from the candle store.
+        CandleWindowLoader windowLoader = new CandleWindowLoader();
+        for (GraphView graph : graphViews)
+            graph.setWindowLoader(windowLoader);
+        for (int i = 0; i < GraphViewModel.NUMBER_OF_GRAPHS; i++) {
+            final GraphView graph = graphViews[i];
+            viewModel.getGraph(i).observe(getViewLifecycleOwner(), new Observer<GraphData>() {
+                @Override
+                public void onChanged(GraphData graphData) {
+                    graphData.drawOn(graph, symbolName);
+                }
+            });
+        }
+        // Cached lines are shown while the server is not responding.
+        final TextView staleGraphs = (TextView) view.findViewById(R.id.stale_graphs);
+        viewModel.getStale().observe(getViewLifecycleOwner(), new Observer<Boolean>() {
+            @Override
+            public void onChanged(Boolean stale) {
+                staleGraphs.setVisibility(stale ? View.VISIBLE : View.GONE);
+            }
+        });
+        // Tab is loaded when all graph requests are finished.
+        viewModel.getPendingRequests().observe(getViewLifecycleOwner(), new Observer<Integer>() {
+            @Override
+            public void onChanged(Integer pending) {
+                if (pending == 0) {
+                    notifyLoaded();
+                    // Long histories are backfilled in background after the shown graphs are loaded.
+                    if (!viewModel.isBackfillStarted() && isConnected()) {
+                        viewModel.setBackfillStarted(true);
+                        for (String symbol : addedSymbols())
+                            startBackfill(symbol);
+                    }
+                }
+            }
+        });
 
         // The ability to select a symbol to display as a multiple comparison on the same graph.
-        // Spinner consists of loaded symbols.
+        // Symbols are searched by symbol or name in all loaded symbols.
         addCompare.setText("Add a comparison to the " + symbolName + ":");
         addCompare.setTypeface(null, Typeface.BOLD);
 
@@ -110,81 +200,51 @@ public class FragmentGraph extends Fragment implements View.OnClickListener {
         deleteCompare.setText("Delete shown comparison with " + symbolName + ":");
         deleteCompare.setTypeface(null, Typeface.BOLD);
 
-        listOfAddedSymbolsOnGraph = new ArrayList<String>();
-        listOfAddedSymbolsOnGraph.add("Select");
-        if (!symbolName.equals("BTC")) {
-            listOfAddedSymbolsOnGraph.add("BTC");
-            listOfAllAvailableSymbols.remove("BTC");
-        }
-        else {  // if Selected symbol is BTC. Show comparison with first non BTC coin.
-            for(int i = 0; i < listOfAllAvailableSymbols.size(); i++)
-                if(!listOfAllAvailableSymbols.get(i).equals("BTC") && !listOfAllAvailableSymbols.get(i).equals("Select")) {
-                    listOfAddedSymbolsOnGraph.add(listOfAllAvailableSymbols.get(i));
-                    listOfAllAvailableSymbols.remove(listOfAllAvailableSymbols.get(i));
-                    break;
-                }
-
-        }
+        if (!viewModel.isInitialized())
+            setDefaultComparison();
 
         // An initialization for adding and removing comparative graphs between symbols.
-        final ArrayAdapter<String> adapterForAdd = new ArrayAdapter<String>(
-                getActivity(),
-                android.R.layout.simple_spinner_item,
-                listOfAllAvailableSymbols
-        );
-        final ArrayAdapter<String> adapterForDelete = new ArrayAdapter<String>(
+        adapterForAdd = new SymbolSuggestionAdapter(getActivity());
+        adapterForDelete = new ArrayAdapter<String>(
                 getActivity(),
                 android.R.layout.simple_spinner_item,
                 listOfAddedSymbolsOnGraph
         );
-        addSpinner.setAdapter(adapterForAdd);
+        addSearch.setAdapter(adapterForAdd);
         deleteSpinner.setAdapter(adapterForDelete);
-
-        addSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+        // Catalog of the view model is read on every use, it is extended by graphs loaded offline.
+        viewModel.getCatalogData().observe(getViewLifecycleOwner(), new Observer<CoinCatalog>() {
             @Override
-            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                if(isNetworkConnected()) {
-                    if(position != 0) {
-                        listOfAddedSymbolsOnGraph.add(adapterForAdd.getItem(position));
-                        adapterForDelete.notifyDataSetChanged();
-                        listOfAllAvailableSymbols.remove(position);
-                        adapterForAdd.notifyDataSetChanged();
-                        addSpinner.setSelection(0);
-                        MainActivity.db.deleteGraphBySymbol(symbolName);
-                        initialSetButtonColor();
-                        initialDrawing();
-                    }
-                }
-                else {
-                    addSpinner.setSelection(0);
-                }
+            public void onChanged(CoinCatalog catalog) {
+                refreshSymbolLists();
             }
+        });
 
+        addSearch.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
-            public void onNothingSelected(AdapterView<?> parent) {
-
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                CoinCatalog catalog = viewModel.getCatalog();
+                int selectedId = catalog.idOf(adapterForAdd.getItem(position));
+                addSearch.setText("");
+                if(selectedId >= 0 && availableIds().get(selectedId)) {
+                    viewModel.addSymbol(selectedId);
+                    refreshSymbolLists();
+                    loadAddedLine(catalog.symbol(selectedId));
+                }
             }
         });
 
         deleteSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                if(isNetworkConnected()) {
-                    if(position != 0) {
-                        listOfAllAvailableSymbols.add(adapterForDelete.getItem(position));
-                        adapterForAdd.notifyDataSetChanged();
-                        listOfAddedSymbolsOnGraph.remove(position);
-                        adapterForDelete.notifyDataSetChanged();
-                        deleteSpinner.setSelection(0);
-                        MainActivity.db.deleteGraphBySymbol(symbolName);
-                        initialSetButtonColor();
-                        initialDrawing();
-                    }
-                }
-                else {
-                    if(position != 0) {
-                        deleteSpinner.setSelection(0);
-                    }
+                // Line of the symbol is dropped from graphs and database, nothing is requested.
+                if(position != 0) {
+                    String deletedSymbol = adapterForDelete.getItem(position);
+                    viewModel.removeSymbol(viewModel.getCatalog().idOf(deletedSymbol));
+                    refreshSymbolLists();
+                    deleteSpinner.setSelection(0);
+                    deleteGraphLine(symbolName, deletedSymbol);
+                    viewModel.removeLine(deletedSymbol);
                 }
             }
 
@@ -194,311 +254,406 @@ public class FragmentGraph extends Fragment implements View.OnClickListener {
             }
         });
 
+        // After rotation graphs and buttons are restored from the view model.
+        if (viewModel.isInitialized())
+            setButtonColors();
+
+        // Graphs requested without network are loaded into this tab when the network is back.
+        replayHandler = new DeferredFetchQueue.ReplayHandler() {
+            @Override
+            public boolean onReplay(String key, String payload) {
+                String[] parts = DeferredFetchQueue.splitKey(key);
+                if (!parts[0].equals(symbolName) || !viewModel.isInitialized())
+                    return false;
+                TimeFrameOption option = TIME_FRAME_OPTIONS[Integer.parseInt(DeferredFetchQueue.splitKey(payload)[0])];
+                if (addedIds.isEmpty()) {
+                    setDefaultComparison();
+                    refreshSymbolLists();
+                }
+                viewModel.setSelectedButton(option.graphIndex, option.buttonId);
+                setButtonColors();
+                loadGraph(option);
+                return true;
+            }
+        };
+        CryptocurrencyApp.getFetchQueue().addHandler(DeferredFetchQueue.KIND_GRAPH, replayHandler);
+
+        return view;
+    }
+
+    @Override
+    public void onDestroyView() {
+        CryptocurrencyApp.getFetchQueue().removeHandler(DeferredFetchQueue.KIND_GRAPH, replayHandler);
+        super.onDestroyView();
+    }
+
+    // Default comparison is BTC. If selected symbol is BTC, show comparison with first non BTC coin.
+    private void setDefaultComparison() {
+        viewModel.clearSymbols();
+        int defaultId = viewModel.getCatalog().idOf("BTC");
+        if (symbolName.equals("BTC") || defaultId < 0) {
+            BitSet candidates = availableIds();
+            defaultId = candidates.nextSetBit(0);
+        }
+        viewModel.addSymbol(defaultId);
+    }
+
+    // Called when the tab is shown, or for prefetch after the visible tab is loaded.
+    // Nothing is requested again after rotation.
+    @Override
+    protected void onLoad(boolean prefetch) {
+        if (viewModel.isInitialized())
+            return;
+        viewModel.setInitialized(true);
+        lowPriority = prefetch;
+
         // Initial setting for Button color.
         initialSetButtonColor();
 
         // Initial drawing.
         initialDrawing();
+    }
 
-        return view;
+    // Symbols which could be added: all symbols without added ones and without the selected symbol.
+    private BitSet availableIds() {
+        CoinCatalog catalog = viewModel.getCatalog();
+        BitSet available = catalog.allIds();
+        available.andNot(addedIds);
+        int selectedId = catalog.idOf(symbolName);
+        if (selectedId >= 0)
+            available.clear(selectedId);
+        return available;
     }
 
-    // Parse ArrayList to delete element "Select"
-    public List<String> deleteFirstElemOfList(List<String> list) {
-        List<String> newList = new ArrayList<>();
-        if(list.size() > 1) {
-            for(int i = 1; i < list.size(); i++)
-                newList.add(i - 1, list.get(i));
-        }
-        return newList;
+    // Symbols shown on graphs, in the order they were added.
+    private List<String> addedSymbols() {
+        return viewModel.getAddedSymbols();
+    }
+
+    // Refresh spinner list and suggestions after the added symbols are changed.
+    private void refreshSymbolLists() {
+        listOfAddedSymbolsOnGraph.clear();
+        listOfAddedSymbolsOnGraph.add("Select");
+        listOfAddedSymbolsOnGraph.addAll(addedSymbols());
+        if (adapterForDelete != null)
+            adapterForDelete.notifyDataSetChanged();
+        if (adapterForAdd != null)
+            adapterForAdd.setAllowedSymbols(viewModel.getCatalog().symbolsOf(availableIds()));
     }
 
     // InitialDrawing
     public void initialDrawing() {
-        if(isNetworkConnected()) {
-            // Initial graph plotting. By day compared - for one day.
-            try {
-
-                ReceivePoints receivePoints = new ReceivePoints(1,"day", 2, 1,
-                        symbolName, deleteFirstElemOfList(listOfAddedSymbolsOnGraph), graphView);
-                receivePoints.execute();
-            } catch (Exception e){
-                e.printStackTrace();
+        if(isConnected()) {
+            // Initial graph plotting for every graph: by day - for one day, by hour - for one day, by minute - for one hour.
+            for (TimeFrameOption option : TIME_FRAME_OPTIONS) {
+                if (option.buttonId == initialButtonId(option.graphIndex))
+                    loadGraph(option);
             }
+        }
+        else {
+            // Draw Graph lines in case users don't have an internet access. Stored lines are decoded in background.
+            // The tab is loaded by the observer of pending requests.
+            viewModel.clearSymbols();
+            refreshSymbolLists();
+            viewModel.requestStarted();
+            new OfflineGraphLoader(symbolName, GRAPH_TIME_FRAMES, offlineListener(viewModel, symbolName))
+                    .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+        lowPriority = false;
+    }
 
-            // Initial graph plotting. By hour compared - for one day.
-            try {
+    // First button of the graph.
+    private static int initialButtonId(int graphIndex) {
+        for (TimeFrameOption option : TIME_FRAME_OPTIONS) {
+            if (option.graphIndex == graphIndex)
+                return option.buttonId;
+        }
+        return 0;
+    }
 
-                ReceivePoints receivePoints = new ReceivePoints(24,"hour", 5, 6,
-                        symbolName, deleteFirstElemOfList(listOfAddedSymbolsOnGraph), graphView2);
-                receivePoints.execute();
-            } catch (Exception e){
-                e.printStackTrace();
-            }
+    /**
+     * Queue the graph until the network is back. A queued request for the same graph is replaced, so
+     * only the last selected time frame is loaded. Shown symbols are kept for a load in background.
+     *
+     * @param option - Time frame of the graph
+     */
+    private void deferGraph(TimeFrameOption option) {
+        deferGraph(viewModel, symbolName, option);
+    }
 
-            // Initial graph plotting. By minute compared - for one hour.
-            try {
+    private static void deferGraph(GraphViewModel model, String symbol, TimeFrameOption option) {
+        List<String> payload = new ArrayList<>();
+        payload.add(String.valueOf(Arrays.asList(TIME_FRAME_OPTIONS).indexOf(option)));
+        payload.addAll(model.getAddedSymbols());
+        CryptocurrencyApp.getFetchQueue().enqueue(DeferredFetchQueue.KIND_GRAPH,
+                DeferredFetchQueue.key(symbol, String.valueOf(option.graphIndex)),
+                DeferredFetchQueue.key(payload.toArray(new String[0])));
+    }
+
+    // Request graph lines for the time frame. Received data is stored in the view model, not in this fragment.
+    private void loadGraph(TimeFrameOption option) {
+        try {
+            ReceivePoints receivePoints = new ReceivePoints(option.numberOfData, option.timeFrame, option.numRows, option.numColumns,
+                    symbolName, addedSymbols(), graphListener(viewModel, option.graphIndex, symbolName, option.timeFrame));
+            receivePoints.setLineFilter(addedLines(viewModel));
+            viewModel.requestStarted();
+            receivePoints.setLowPriority(lowPriority).execute();
+        } catch (Exception e){
+            e.printStackTrace();
+        }
+    }
 
-                ReceivePoints receivePoints = new ReceivePoints(60,"minute", 5, 6,
-                        symbolName, deleteFirstElemOfList(listOfAddedSymbolsOnGraph), graphView3);
+    /**
+     * Request only the line of the added symbol, for the selected time frame of every graph. The line
+     * ends at the last time of the shown axis and is appended to lines which are already shown. A graph
+     * without selected time frame (e.g. drawn offline) is loaded with its initial time frame and all
+     * added symbols.
+     *
+     * @param addedSymbol - Symbol added for comparison
+     */
+    private void loadAddedLine(String addedSymbol) {
+        if (viewModel.isBackfillStarted())
+            startBackfill(addedSymbol);
+        // Without network every graph is queued, it is loaded with all added symbols.
+        if (!isConnected()) {
+            for (int graphIndex = 0; graphIndex < GraphViewModel.NUMBER_OF_GRAPHS; graphIndex++) {
+                TimeFrameOption option = selectedOption(graphIndex);
+                deferGraph(option != null ? option : optionFor(initialButtonId(graphIndex)));
+            }
+            return;
+        }
+        for (int graphIndex = 0; graphIndex < GraphViewModel.NUMBER_OF_GRAPHS; graphIndex++) {
+            TimeFrameOption option = selectedOption(graphIndex);
+            if (option == null) {
+                option = optionFor(initialButtonId(graphIndex));
+                viewModel.setSelectedButton(graphIndex, option.buttonId);
+                loadGraph(option);
+                continue;
+            }
+            try {
+                ReceivePoints receivePoints = new ReceivePoints(option.numberOfData, option.timeFrame, option.numRows, option.numColumns,
+                        symbolName, Collections.singletonList(addedSymbol), appendListener(viewModel, graphIndex));
+                receivePoints.setLineFilter(addedLines(viewModel));
+                GraphData shown = viewModel.getGraph(graphIndex).getValue();
+                if (shown != null && !shown.getSymbols().isEmpty())
+                    receivePoints.setToTs(shown.getLastTime());
+                viewModel.requestStarted();
                 receivePoints.execute();
             } catch (Exception e){
                 e.printStackTrace();
             }
         }
-        else {
-            // Draw Graph lines in case users don't have an internet access.
-            drawGraphsOffline(graphView, "day", pointsList);
-            drawGraphsOffline(graphView2, "hour", pointsList2);
-            drawGraphsOffline(graphView3, "minute", pointsList3);
-        }
+        setButtonColors();
     }
 
-    // Setting initial color for all buttons.
-    public void initialSetButtonColor() {
+    // Backfill history of the compared symbol for all time frames. Without network the backfill is queued.
+    private void startBackfill(String comparedSymbol) {
+        if (isConnected())
+            startBackfill(symbolName, comparedSymbol);
+        else
+            CryptocurrencyApp.getFetchQueue().enqueue(DeferredFetchQueue.KIND_BACKFILL,
+                    DeferredFetchQueue.key(symbolName, comparedSymbol), null);
+    }
 
-        first1W.setBackgroundColor(Color.WHITE);
-        first2W.setBackgroundColor(Color.WHITE);
-        first1M.setBackgroundColor(Color.WHITE);
-        second3D.setBackgroundColor(Color.WHITE);
-        second1W.setBackgroundColor(Color.WHITE);
-        third3H.setBackgroundColor(Color.WHITE);
-        third1D.setBackgroundColor(Color.WHITE);
-
-        if(isNetworkConnected()) {
-            // Initial activated Buttons.
-            first1D.setBackgroundColor(Color.rgb(0, 157, 111));
-            second1D.setBackgroundColor(Color.rgb(0, 157, 111));
-            third1H.setBackgroundColor(Color.rgb(0, 157, 111));
-        } else {
-            first1D.setBackgroundColor(Color.WHITE);
-            second1D.setBackgroundColor(Color.WHITE);
-            third1H.setBackgroundColor(Color.WHITE);
+    private static void startBackfill(String symbol, String comparedSymbol) {
+        BackfillEngine backfillEngine = BackfillEngine.getInstance();
+        for (String timeFrame : GRAPH_TIME_FRAMES)
+            backfillEngine.start(symbol, comparedSymbol, timeFrame, BackfillEngine.defaultTargetFromTs(timeFrame));
+    }
+
+    // Replays queued backfills, they always run in background.
+    static final DeferredFetchQueue.ReplayHandler BACKFILL_REPLAY = new DeferredFetchQueue.ReplayHandler() {
+        @Override
+        public boolean onReplay(String key, String payload) {
+            String[] parts = DeferredFetchQueue.splitKey(key);
+            startBackfill(parts[0], parts[1]);
+            return true;
+        }
+    };
+
+    // Replays graphs queued by a tab which is not shown anymore. Received lines are only stored, they
+    // replace stored lines of the time frame.
+    static final DeferredFetchQueue.ReplayHandler GRAPH_REPLAY_IN_BACKGROUND = new DeferredFetchQueue.ReplayHandler() {
+        @Override
+        public boolean onReplay(String key, String payload) {
+            final String symbol = DeferredFetchQueue.splitKey(key)[0];
+            String[] parts = DeferredFetchQueue.splitKey(payload);
+            final TimeFrameOption option = TIME_FRAME_OPTIONS[Integer.parseInt(parts[0])];
+            List<String> symbols = Arrays.asList(parts).subList(1, parts.length);
+            if (symbols.isEmpty())
+                return true;
+            new ReceivePoints(option.numberOfData, option.timeFrame, option.numRows, option.numColumns, symbol, symbols,
+                    new ReceivePoints.OnPointsReceivedListener() {
+                        @Override
+                        public void onPointsReceived(GraphData graphData) {
+                            // Called before the new lines are stored.
+                            deleteGraphTimeFrame(symbol, option.timeFrame);
+                        }
+
+                        @Override
+                        public void onPointsFailed() {
+                        }
+                    }).setLowPriority(true).execute();
+            return true;
         }
+    };
 
+    // Option of the selected button of the graph, null if no button is selected.
+    private TimeFrameOption selectedOption(int graphIndex) {
+        return optionFor(viewModel.getSelectedButton(graphIndex));
     }
 
-    // Redefine onClick method for Buttons.
-    @Override
-    public void onClick(View v) {
-        if(isNetworkConnected()) {
-            switch (v.getId()) {
-                case R.id.first1D:
-                    MainActivity.db.deleteGraphTimeFrame(symbolName, "day");
-                    try {
-                        ReceivePoints receivePoints = new ReceivePoints(1,"day", 2, 1,
-                                symbolName, deleteFirstElemOfList(listOfAddedSymbolsOnGraph), graphView);
-                        receivePoints.execute();
-                    } catch (Exception e){
-                        e.printStackTrace();
-                    }
-                    first1W.setBackgroundColor(Color.WHITE);
-                    first2W.setBackgroundColor(Color.WHITE);
-                    first1M.setBackgroundColor(Color.WHITE);
-                    first1D.setBackgroundColor(Color.rgb(0, 157, 111));
-                    break;
-                case R.id.first1W:
-                    MainActivity.db.deleteGraphTimeFrame(symbolName, "day");
-                    try {
-                        ReceivePoints receivePoints = new ReceivePoints(7,"day", 5, 7,
-                            symbolName, deleteFirstElemOfList(listOfAddedSymbolsOnGraph), graphView);
-                        receivePoints.execute();
-                    } catch (Exception e){
-                        e.printStackTrace();
-                    }
-                    first1D.setBackgroundColor(Color.WHITE);
-                    first2W.setBackgroundColor(Color.WHITE);
-                    first1M.setBackgroundColor(Color.WHITE);
-                    first1W.setBackgroundColor(Color.rgb(0, 157, 111));
-                    break;
-                case R.id.first2W:
-                    MainActivity.db.deleteGraphTimeFrame(symbolName, "day");
-                    try {
-                        ReceivePoints receivePoints = new ReceivePoints(14,"day", 5, 7,
-                                symbolName, deleteFirstElemOfList(listOfAddedSymbolsOnGraph), graphView);
-                        receivePoints.execute();
-                    } catch (Exception e){
-                        e.printStackTrace();
-                    }
-                    first1D.setBackgroundColor(Color.WHITE);
-                    first1W.setBackgroundColor(Color.WHITE);
-                    first1M.setBackgroundColor(Color.WHITE);
-                    first2W.setBackgroundColor(Color.rgb(0, 157, 111));
-                    break;
-                case R.id.first1M:
-                    MainActivity.db.deleteGraphTimeFrame(symbolName, "day");
-                    try {
-                        ReceivePoints receivePoints = new ReceivePoints(30,"day", 5, 6,
-                                symbolName, deleteFirstElemOfList(listOfAddedSymbolsOnGraph), graphView);
-                        receivePoints.execute();
-                    } catch (Exception e){
-                        e.printStackTrace();
-                    }
-                    first1D.setBackgroundColor(Color.WHITE);
-                    first1W.setBackgroundColor(Color.WHITE);
-                    first2W.setBackgroundColor(Color.WHITE);
-                    first1M.setBackgroundColor(Color.rgb(0, 157, 111));
-                    break;
-                case R.id.second1D:
-                    MainActivity.db.deleteGraphTimeFrame(symbolName, "hour");
-                    try {
-                        ReceivePoints receivePoints = new ReceivePoints(24,"hour", 5, 6,
-                                symbolName, deleteFirstElemOfList(listOfAddedSymbolsOnGraph), graphView2);
-                        receivePoints.execute();
-                    } catch (Exception e){
-                        e.printStackTrace();
-                    }
-                    second3D.setBackgroundColor(Color.WHITE);
-                    second1W.setBackgroundColor(Color.WHITE);
-                    second1D.setBackgroundColor(Color.rgb(0, 157, 111));
-                    break;
-                case R.id.second3D:
-                    MainActivity.db.deleteGraphTimeFrame(symbolName, "hour");
-                    try {
-                        ReceivePoints receivePoints = new ReceivePoints(72,"hour", 5, 6,
-                                symbolName, deleteFirstElemOfList(listOfAddedSymbolsOnGraph), graphView2);
-                        receivePoints.execute();
-                    } catch (Exception e){
-                        e.printStackTrace();
-                    }
-                    second1D.setBackgroundColor(Color.WHITE);
-                    second1W.setBackgroundColor(Color.WHITE);
-                    second3D.setBackgroundColor(Color.rgb(0, 157, 111));
-                    break;
-                case R.id.second1W:
-                    MainActivity.db.deleteGraphTimeFrame(symbolName, "hour");
-                    try {
-                        ReceivePoints receivePoints = new ReceivePoints(168,"hour", 5, 6,
-                                symbolName, deleteFirstElemOfList(listOfAddedSymbolsOnGraph), graphView2);
-                        receivePoints.execute();
-                    } catch (Exception e){
-                        e.printStackTrace();
-                    }
-                    second1D.setBackgroundColor(Color.WHITE);
-                    second3D.setBackgroundColor(Color.WHITE);
-                    second1W.setBackgroundColor(Color.rgb(0, 157, 111));
-                    break;
-                case R.id.third1h:
-                    MainActivity.db.deleteGraphTimeFrame(symbolName, "minute");
-                    try {
-                        ReceivePoints receivePoints = new ReceivePoints(60,"minute", 5, 6,
-                                symbolName, deleteFirstElemOfList(listOfAddedSymbolsOnGraph), graphView3);
-                        receivePoints.execute();
-                    } catch (Exception e){
-                        e.printStackTrace();
-                    }
-                    third1H.setBackgroundColor(Color.rgb(0, 157, 111));
-                    third3H.setBackgroundColor(Color.WHITE);
-                    third1D.setBackgroundColor(Color.WHITE);
-                    break;
-                case R.id.third3h:
-                    MainActivity.db.deleteGraphTimeFrame(symbolName, "minute");
-                    try {
-                        ReceivePoints receivePoints = new ReceivePoints(180,"minute", 5, 6,
-                                symbolName, deleteFirstElemOfList(listOfAddedSymbolsOnGraph), graphView3);
-                        receivePoints.execute();
-                    } catch (Exception e){
-                        e.printStackTrace();
-                    }
-                    third1H.setBackgroundColor(Color.WHITE);
-                    third3H.setBackgroundColor(Color.rgb(0, 157, 111));
-                    third1D.setBackgroundColor(Color.WHITE);
-                    break;
-                case R.id.third1D:
-                    MainActivity.db.deleteGraphTimeFrame(symbolName, "minute");
-                    try {
-                        ReceivePoints receivePoints = new ReceivePoints(1440,"minute", 5, 6,
-                                symbolName, deleteFirstElemOfList(listOfAddedSymbolsOnGraph), graphView3);
-                        receivePoints.execute();
-                    } catch (Exception e){
-                        e.printStackTrace();
-                    }
-                    third1H.setBackgroundColor(Color.WHITE);
-                    third3H.setBackgroundColor(Color.WHITE);
-                    third1D.setBackgroundColor(Color.rgb(0, 157, 111));
-                    break;
-            }
-        }
-        else {
-            Toast toast = Toast.makeText(getContext(),
-                    "No Internet Connection",
-                    Toast.LENGTH_SHORT);
-            toast.show();
+    private static TimeFrameOption optionFor(int buttonId) {
+        for (TimeFrameOption option : TIME_FRAME_OPTIONS) {
+            if (option.buttonId == buttonId)
+                return option;
         }
+        return null;
+    }
+
+    // Lines of symbols removed while they were loaded are not shown and not stored. Static, it holds only the view model.
+    private static ReceivePoints.LineFilter addedLines(final GraphViewModel model) {
+        return new ReceivePoints.LineFilter() {
+            @Override
+            public boolean isShown(String symbol) {
+                return model.isAdded(symbol);
+            }
+        };
+    }
+
+    private static ReceivePoints.OnPointsReceivedListener appendListener(final GraphViewModel model, final int graphIndex) {
+        return new ReceivePoints.OnPointsReceivedListener() {
+            @Override
+            public void onPointsReceived(GraphData graphData) {
+                model.appendLines(graphIndex, graphData);
+                model.requestFinished();
+            }
+
+            @Override
+            public void onPointsFailed() {
+                model.requestFinished();
+            }
+        };
     }
 
     /**
-     * Reading data from the database for specific parameters.
+     * Listener of the offline load of stored graphs. Static, it holds only the view model: symbol lists
+     * of the shown fragment are refreshed by the observer of the catalog.
      *
-     * @param graphView - Graph view - in which the graph lines are drawn
-     * @param timeFrame - Time frame, e.g. "day", "hour", "minute"
-     * @param points    - List of points which would be displayed
+     * @param model  - View model of the fragment
+     * @param symbol - Symbol of selected Cryptocurrency
      */
-    public void drawGraphsOffline(GraphView graphView, String timeFrame, List<PointF> points) {
-        // Adding string "Select" for spinner.
-        if(listOfAddedSymbolsOnGraph.size() > 0)
-            listOfAddedSymbolsOnGraph.clear();
-        listOfAddedSymbolsOnGraph.add("Select");
+    private static OfflineGraphLoader.OnGraphsLoadedListener offlineListener(final GraphViewModel model, final String symbol) {
+        return new OfflineGraphLoader.OnGraphsLoadedListener() {
+            @Override
+            public void onGraphsLoaded(GraphData[] graphs) {
+                model.showStoredGraphs(graphs);
+                // Initial graphs are requested when the network is back, unless another time frame is selected.
+                for (int i = 0; i < GraphViewModel.NUMBER_OF_GRAPHS; i++) {
+                    if (optionFor(model.getSelectedButton(i)) == null)
+                        deferGraph(model, symbol, optionFor(initialButtonId(i)));
+                }
+                model.requestFinished();
+            }
+        };
+    }
 
-        // Reading from Database.
-        Cursor res = MainActivity.db.readGraphLineFromDB(symbolName, timeFrame);
-        if(!res.moveToNext())
-            return;
+    /**
+     * Listener of a graph request. Static, so a running task does not hold the fragment which could be
+     * destroyed by rotation. Stored lines of the time frame are replaced only by received lines. If the
+     * request failed or timed out, stored lines are shown and the graph is marked as stale.
+     *
+     * @param model      - View model of the fragment
+     * @param graphIndex - Index of the graph
+     * @param symbol     - Symbol of selected Cryptocurrency
+     * @param timeFrame  - Time frame, e.g. "day", "hour", "minute"
+     */
+    private static ReceivePoints.OnPointsReceivedListener graphListener(final GraphViewModel model, final int graphIndex,
+                                                                        final String symbol, final String timeFrame) {
+        return new ReceivePoints.OnPointsReceivedListener() {
+            @Override
+            public void onPointsReceived(GraphData graphData) {
+                // Called before the new lines are stored.
+                deleteGraphTimeFrame(symbol, timeFrame);
+                model.setGraph(graphIndex, graphData);
+                model.setStale(graphIndex, false);
+                model.requestFinished();
+            }
 
-        // Deserialization ADDED symbols. (in database all symbols are stored as one string)
-        String listOfSymbols = res.getString(1);
-        String singleSymbol = "";
-        while (!singleSymbol.equals(listOfSymbols)) {
-            singleSymbol = listOfSymbols.substring(0, listOfSymbols.indexOf("\n") + 1);
-            listOfAddedSymbolsOnGraph.add(singleSymbol.substring(0, singleSymbol.indexOf("\n")));
-            listOfSymbols = listOfSymbols.substring(listOfSymbols.indexOf("\n") + 1);
-            singleSymbol = "";
-        }
+            @Override
+            public void onPointsFailed() {
+                new OfflineGraphLoader(symbol, new String[] {timeFrame}, new OfflineGraphLoader.OnGraphsLoadedListener() {
+                    @Override
+                    public void onGraphsLoaded(GraphData[] graphs) {
+                        if (graphs[0] != null) {
+                            model.setGraph(graphIndex, graphs[0]);
+                            model.setStale(graphIndex, true);
+                        }
+                        model.requestFinished();
+                    }
+                }).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+            }
+        };
+    }
 
-        // Deserialization for points. (in database all x values are stored as one string, same with y values)
-        String dotsX = res.getString(2);
-        String dotsY = res.getString(3);
-        String singleDotX = "";
-        String singleDotY = "";
-        while (!singleDotX.equals(dotsX)) {
-            singleDotX = dotsX.substring(0, dotsX.indexOf("\n") + 1);
-            singleDotY = dotsY.substring(0, dotsY.indexOf("\n") + 1);
-            PointF dot = new PointF(Float.valueOf(singleDotX.substring(0, singleDotX.indexOf("\n"))), Float.valueOf(singleDotY.substring(0, singleDotY.indexOf("\n"))));
-            points.add(dot);
-            dotsX = dotsX.substring(dotsX.indexOf("\n") + 1);
-            dotsY = dotsY.substring(dotsY.indexOf("\n") + 1);
-            singleDotY = "";
-            singleDotX = "";
-        }
+    // Setting initial color for all buttons.
+    public void initialSetButtonColor() {
+        for (int i = 0; i < GraphViewModel.NUMBER_OF_GRAPHS; i++)
+            viewModel.setSelectedButton(i, isConnected() ? initialButtonId(i) : 0);
+        setButtonColors();
+    }
 
-        // Deserialization for timeAxis. (x axis values)
-        int timeAxis[];
-        timeAxis = new int[points.size() / deleteFirstElemOfList(listOfAddedSymbolsOnGraph).size()];
-        String time = res.getString(4);
-        String singleTime = "";
-        int i = 0;
-        while (!singleTime.equals(time)) {
-            singleTime = time.substring(0, time.indexOf("\n") + 1);
-            timeAxis[i] = Integer.valueOf(singleTime.substring(0, singleTime.indexOf("\n")));
-            time = time.substring(time.indexOf("\n") + 1);
-            singleTime = "";
-            i++;
+    // Selected buttons are colored, all others are white.
+    private void setButtonColors() {
+        for (int i = 0; i < TIME_FRAME_OPTIONS.length; i++) {
+            TimeFrameOption option = TIME_FRAME_OPTIONS[i];
+            boolean selected = viewModel.getSelectedButton(option.graphIndex) == option.buttonId;
+            timeFrameButtons[i].setBackgroundColor(selected ? SELECTED_COLOR : Color.WHITE);
         }
+    }
 
-        // Deserialization for rows and columns.
-        int numRows = res.getInt(6);
-        int numColumns = res.getInt(7);
+    // Redefine onClick method for Buttons. Without network the graph is queued and loaded when the network is back.
+    @Override
+    public void onClick(View v) {
+        TimeFrameOption option = optionFor(v.getId());
+        if (option == null)
+            return;
+        viewModel.setSelectedButton(option.graphIndex, option.buttonId);
+        setButtonColors();
+        if(isConnected()) {
+            loadGraph(option);
+        }
+        else {
+            deferGraph(option);
+            Toast toast = Toast.makeText(getContext(),
+                    "No Internet Connection, the graph is loaded when the connection is back",
+                    Toast.LENGTH_SHORT);
+            toast.show();
+        }
+    }
 
-        if(points.size() > 0)
-            // Call method for setting and drawing Graph.
-            graphView.setAllDrawingParameters(points, timeAxis, timeFrame, numRows, numColumns, deleteFirstElemOfList(listOfAddedSymbolsOnGraph), symbolName);
+    // Deletes run on the disk executor, in order with the writes of received lines.
+    private static void deleteGraphTimeFrame(final String symbol, final String timeFrame) {
+        CryptocurrencyApp.getDiskExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                CryptocurrencyApp.getDatabase().deleteGraphTimeFrame(symbol, timeFrame);
+            }
+        });
+    }
 
+    private static void deleteGraphLine(final String symbol, final String comparedSymbol) {
+        CryptocurrencyApp.getDiskExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                CryptocurrencyApp.getDatabase().deleteGraphLine(symbol, comparedSymbol);
+            }
+        });
     }
 
-    // Checking internet connection.
-    private boolean isNetworkConnected() {
-        ConnectivityManager cm = (ConnectivityManager) getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
-        return cm.getActiveNetworkInfo() != null && cm.getActiveNetworkInfo().isConnected();
+    // Cached network state, it is updated by the system.
+    private static boolean isConnected() {
+        return CryptocurrencyApp.getConnectivityMonitor().isConnected();
     }
 
 }
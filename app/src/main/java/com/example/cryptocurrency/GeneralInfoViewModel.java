@@ -0,0 +1,62 @@
+/**
+ * State of the general information fragment which survives configuration changes. After
+ * rotation the received text is shown again, without new requests.
+ */
+
+package com.example.cryptocurrency;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.ViewModel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class GeneralInfoViewModel extends ViewModel {
+
+    private final MutableLiveData<String> generalInfo = new MutableLiveData<>();
+    private final MutableLiveData<String> comparedValues = new MutableLiveData<>();
+    private final MutableLiveData<String> staleNotice = new MutableLiveData<>();
+    private final Map<String, String> generalInfoFields = new LinkedHashMap<>();
+    private boolean requested;
+
+    public LiveData<String> getGeneralInfo() {
+        return generalInfo;
+    }
+
+    public LiveData<String> getComparedValues() {
+        return comparedValues;
+    }
+
+    // Must be called from the main thread.
+    public void setGeneralInfo(String text) {
+        generalInfo.setValue(text);
+    }
+
+    public void setComparedValues(String text) {
+        comparedValues.setValue(text);
+    }
+
+    // Shown above stored data, null while received data is shown.
+    public LiveData<String> getStaleNotice() {
+        return staleNotice;
+    }
+
+    public void setStaleNotice(String notice) {
+        staleNotice.setValue(notice);
+    }
+
+    // Received fields of the general info (name, value), in display order.
+    public Map<String, String> getGeneralInfoFields() {
+        return generalInfoFields;
+    }
+
+    public boolean isRequested() {
+        return requested;
+    }
+
+    public void setRequested(boolean requested) {
+        this.requested = requested;
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Data of one drawn graph: values of all lines, time axis and drawing parameters.
+ * Values of all symbols are stored one after another in one array, every line has the same number of values.
+ */
+
+package com.example.cryptocurrency;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GraphData {
+    private final float[] values;
+    private final int[] timeAxis;
+    private final String timeFrame;
+    private final int numRows;
+    private final int numColumns;
+    private final List<String> symbols;
+
+    public GraphData(float[] values, int[] timeAxis, String timeFrame, int numRows, int numColumns, List<String> symbols) {
+        this.values = values;
+        this.timeAxis = timeAxis;
+        this.timeFrame = timeFrame;
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.symbols = symbols;
+    }
+
+    public float[] getValues() { return values; }
+
+    public int[] getTimeAxis() { return timeAxis; }
+
+    public String getTimeFrame() { return timeFrame; }
+
+    public int getNumRows() { return numRows; }
+
+    public int getNumColumns() { return numColumns; }
+
+    public List<String> getSymbols() { return symbols; }
+
+    // Number of values in every line.
+    public int getPointsPerLine() {
+        return symbols.isEmpty() ? 0 : values.length / symbols.size();
+    }
+
+    // Time of the last value, 0 for an empty axis.
+    public int getLastTime() {
+        return timeAxis.length == 0 ? 0 : timeAxis[timeAxis.length - 1];
+    }
+
+    /**
+     * New graph data with lines of the other data appended. Lines are appended only if they have the
+     * same time frame, number of values and last time of the axis, otherwise null is returned, so a
+     * line received later is not drawn shifted against the shown axis.
+     *
+     * @param other       - Graph data with new lines
+     * @return GraphData  - Graph data with all lines, or null
+     */
+    public GraphData withLines(GraphData other) {
+        if (!timeFrame.equals(other.timeFrame) || getPointsPerLine() != other.getPointsPerLine() || getLastTime() != other.getLastTime())
+            return null;
+        float[] allValues = new float[values.length + other.values.length];
+        System.arraycopy(values, 0, allValues, 0, values.length);
+        System.arraycopy(other.values, 0, allValues, values.length, other.values.length);
+        List<String> allSymbols = new ArrayList<>(symbols);
+        allSymbols.addAll(other.symbols);
+        return new GraphData(allValues, timeAxis, timeFrame, numRows, numColumns, allSymbols);
+    }
+
+    // New graph data without the line of the symbol.
+    public GraphData withoutLine(String symbol) {
+        int index = symbols.indexOf(symbol);
+        if (index < 0)
+            return this;
+        int pointsPerLine = getPointsPerLine();
+        float[] leftValues = new float[values.length - pointsPerLine];
+        System.arraycopy(values, 0, leftValues, 0, index * pointsPerLine);
+        System.arraycopy(values, (index + 1) * pointsPerLine, leftValues, index * pointsPerLine,
+                values.length - (index + 1) * pointsPerLine);
+        List<String> leftSymbols = new ArrayList<>(symbols);
+        leftSymbols.remove(index);
+        return new GraphData(leftValues, timeAxis, timeFrame, numRows, numColumns, leftSymbols);
+    }
+
+    // Draw this data on the graph view.
+    public void drawOn(GraphView graphView, String symbolName) {
+        graphView.setAllDrawingParameters(values, timeAxis, timeFrame, numRows, numColumns, symbols, symbolName);
+    }
+
+}
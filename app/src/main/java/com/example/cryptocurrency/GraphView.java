@@ -1,5 +1,9 @@
 /**
  * Line View class for drawing a graph.
+ *
+ * A graph could show only a window of its values. If a window loader is set, users can pan the
+ * graph horizontally, and a new window around the visible values is requested from the loader
+ * when the visible window gets near the edge of loaded values.
  */
 
 package com.example.cryptocurrency;
@@ -8,15 +12,16 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.PointF;
 import android.text.format.DateFormat;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewParent;
 
 import androidx.annotation.Nullable;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
@@ -24,9 +29,16 @@ import java.util.Random;
 
 
 public class GraphView extends View {
+
+    // Loads values of the time window [fromTs, toTs] and passes them to showWindow, with the generation of the request.
+    public interface WindowLoader {
+        void loadWindow(GraphView graphView, int fromTs, int toTs);
+    }
+
+    private static final long LINE_COLOR_SEED = 42;     // same line colors for every redraw
     private Paint lineChart = new Paint();
     private float yMin, yMax;
-    private List<PointF> points = new ArrayList<>();
+    private float[] values = new float[0];     // y values of all lines, one line after another
     private List<String> selectedSymbols;
     private String symbolName;
     private String[] yAxisValue;
@@ -34,7 +46,7 @@ public class GraphView extends View {
     private String[] xAxisValueSecondLine;
     private String sharedTimeFrame;
     private float width, height;
-    private float[] yDots;
+    private float[] xDots, yDots;
     private int scaleFactor;
     private int numColumns, numRows;
     private int cellWidth, cellHeight;
@@ -45,6 +57,15 @@ public class GraphView extends View {
     private int[] timeAxis;
     private int yPrecision;
     private int textAxisSize = 20;          // Text size of axis
+    private int visibleStart;               // index of the first visible value in every line
+    private int visibleCount;               // number of visible values in every line
+    private WindowLoader windowLoader;
+    private boolean windowPending;
+    private int windowGeneration;           // changed with every new graph, windows of older graphs are dropped
+    private int requestedFromTs, requestedToTs;
+    private boolean olderExhausted, newerExhausted;     // no more stored values before / after the loaded window
+    private float lastTouchX;
+    private boolean dragging;
 
 
     public GraphView(Context context) {
@@ -63,7 +84,7 @@ public class GraphView extends View {
     /**
      * Set all drawing parameters for selected Cryptocurrency.
      *
-     * @param points        - List of points which would be displayed
+     * @param values        - Values of all lines which would be displayed, one line after another
      * @param timeAxis      - Time in seconds - array
      * @param timeFrame     - Time frame, e.g. "day", "hour", "minute"
      * @param numberRows    - Number of rows for graph plotting
@@ -71,7 +92,7 @@ public class GraphView extends View {
      * @param selSymbol     - List of loaded symbols
      * @param forSymbolName - Selected symbol
      */
-    public void setAllDrawingParameters(List<PointF> points, int[] timeAxis, String timeFrame, int numberRows, int numberColumns, List<String> selSymbol, String forSymbolName) {
+    public void setAllDrawingParameters(float[] values, int[] timeAxis, String timeFrame, int numberRows, int numberColumns, List<String> selSymbol, String forSymbolName) {
         blackPaint = new Paint();
         textTitlePaint = new Paint();
         textAxisPaint = new Paint();
@@ -79,29 +100,164 @@ public class GraphView extends View {
         textTitlePaint.setFakeBoldText(true);
         textTitlePaint.setTextAlign(Paint.Align.CENTER);
         textAxisPaint.setTextSize(textAxisSize);
-        this.points = points;
+        this.values = values;
         this.timeAxis = timeAxis;
         this.sharedTimeFrame = timeFrame;
         this.numRows = numberRows;
         this.numColumns = numberColumns;
         this.selectedSymbols = selSymbol;
         this.symbolName = forSymbolName;
+        this.visibleStart = 0;
+        this.visibleCount = pointsPerLine();
+        this.windowPending = false;
+        this.windowGeneration++;
+        this.olderExhausted = false;
+        this.newerExhausted = false;
         calculateDimensions();
         invalidate();
         requestLayout();
     }
 
-    // Find minimum and maximum value for Y axis.
+    /**
+     * Show values of a new window, loaded after the loader was asked. Time frame, rows and columns
+     * are not changed, and the first visible time stays visible. A window requested for another graph,
+     * e.g. before the time frame or the symbols were changed, is dropped.
+     *
+     * @param generation     - Generation of the graph when the window was requested
+     * @param windowValues   - Values of all lines in the window, one line after another
+     * @param windowTimeAxis - Time in seconds for every value of a line
+     * @param symbols        - Symbols of lines
+     */
+    public void showWindow(int generation, float[] windowValues, int[] windowTimeAxis, List<String> symbols) {
+        if (generation != windowGeneration)
+            return;
+        windowPending = false;
+        if (windowTimeAxis.length < 2 || symbols.isEmpty()) {
+            olderExhausted = true;
+            newerExhausted = true;
+            return;
+        }
+        int firstVisibleTs = timeAxis[visibleStart];
+        olderExhausted = windowTimeAxis[0] > requestedFromTs;
+        newerExhausted = windowTimeAxis[windowTimeAxis.length - 1] < requestedToTs;
+        values = windowValues;
+        timeAxis = windowTimeAxis;
+        selectedSymbols = symbols;
+        visibleCount = Math.min(visibleCount, windowTimeAxis.length);
+        int start = 0;
+        while (start < windowTimeAxis.length - 1 && windowTimeAxis[start] < firstVisibleTs)
+            start++;
+        visibleStart = Math.max(0, Math.min(start, windowTimeAxis.length - visibleCount));
+        invalidate();
+    }
+
+    // Graph could be panned if a loader is set. Panning stays inside the graph, it is not a swipe of tabs.
+    public void setWindowLoader(WindowLoader windowLoader) {
+        this.windowLoader = windowLoader;
+    }
+
+    public String getSymbolName() { return symbolName; }
+
+    public String getTimeFrame() { return sharedTimeFrame; }
+
+    public List<String> getSymbols() { return selectedSymbols; }
+
+    public int getWindowGeneration() { return windowGeneration; }
+
+    // Number of values in every line.
+    private int pointsPerLine() {
+        return selectedSymbols == null || selectedSymbols.isEmpty() ? 0 : values.length / selectedSymbols.size();
+    }
+
+    private boolean canPan() {
+        return windowLoader != null && visibleCount > 1 && timeAxis != null && timeAxis.length > 1;
+    }
+
+    @Override
+    public boolean canScrollHorizontally(int direction) {
+        if (!canPan())
+            return super.canScrollHorizontally(direction);
+        if (direction < 0)
+            return visibleStart > 0 || !olderExhausted;
+        return visibleStart + visibleCount < pointsPerLine() || !newerExhausted;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (!canPan())
+            return super.onTouchEvent(event);
+        ViewParent parent = getParent();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                lastTouchX = event.getX();
+                dragging = false;
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                float dx = event.getX() - lastTouchX;
+                if (!dragging && Math.abs(dx) > ViewConfiguration.get(getContext()).getScaledTouchSlop()) {
+                    dragging = true;
+                    if (parent != null)
+                        parent.requestDisallowInterceptTouchEvent(true);
+                }
+                if (dragging && width > 0) {
+                    // Dragging to the right shows older values.
+                    float xGrid = width / (visibleCount - 1);
+                    int shift = (int) (dx / xGrid);
+                    if (shift != 0) {
+                        lastTouchX += shift * xGrid;
+                        panBy(-shift);
+                    }
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                dragging = false;
+                if (parent != null)
+                    parent.requestDisallowInterceptTouchEvent(false);
+                return true;
+        }
+        return super.onTouchEvent(event);
+    }
+
+    // Move the visible window by number of values, and request a new window near the edge of loaded values.
+    private void panBy(int delta) {
+        int start = Math.max(0, Math.min(visibleStart + delta, pointsPerLine() - visibleCount));
+        if (start != visibleStart) {
+            visibleStart = start;
+            invalidate();
+        }
+        int margin = visibleCount / 2;
+        boolean nearOldest = visibleStart < margin && !olderExhausted;
+        boolean nearNewest = pointsPerLine() - (visibleStart + visibleCount) < margin && !newerExhausted;
+        if (!windowPending && (nearOldest || nearNewest)) {
+            // Visible window plus one visible width on every side.
+            int step = timeAxis[1] - timeAxis[0];
+            int firstVisibleTs = timeAxis[visibleStart];
+            requestedFromTs = firstVisibleTs - visibleCount * step;
+            requestedToTs = firstVisibleTs + (2 * visibleCount - 1) * step;
+            windowPending = true;
+            windowLoader.loadWindow(this, requestedFromTs, requestedToTs);
+        }
+    }
+
+    // Find minimum and maximum value for Y axis, only visible values are used.
     public void findMaxMin() {
-        if(points.size() != 0) {
-            yMin = points.get(0).y;
-            yMax = points.get(0).y;
+        boolean found = false;
+        int pointsPerLine = pointsPerLine();
+        for(int line = 0; line < selectedSymbols.size(); line++) {
+            for(int i = line * pointsPerLine + visibleStart; i < line * pointsPerLine + visibleStart + visibleCount; i++) {
+                if (Float.isNaN(values[i]))
+                    continue;
+                if (!found || values[i] > yMax)
+                    yMax = values[i];
+                if (!found || values[i] < yMin)
+                    yMin = values[i];
+                found = true;
+            }
         }
-        for(int i = 0; i < points.size(); i++) {
-            if (points.get(i).y > yMax)
-                yMax = points.get(i).y;
-            if (points.get(i).y < yMin)
-                yMin = points.get(i).y;
+        if (!found) {
+            yMin = 1;
+            yMax = 1;
         }
     }
 
@@ -115,15 +271,16 @@ public class GraphView extends View {
             yMax = yMax / 10;
         }
         // If yMin < 1, increase yMin and yMax
-        while (yMin < 1) {
+        while (yMin > 0 && yMin < 1) {
             scaleFactor --;
             yMin = yMin * 10;
             yMax = yMax * 10;
         }
-        if(points.size() > 0)
-            yDots = new float[points.size()];
-        for (int i = 0; i < points.size(); i++) {
-            yDots[i] = points.get(i).y * (float) Math.pow(10, -scaleFactor);
+        if(yDots == null || yDots.length != values.length)
+            yDots = new float[values.length];
+        float scale = (float) Math.pow(10, -scaleFactor);
+        for (int i = 0; i < values.length; i++) {
+            yDots[i] = values[i] * scale;
         }
     }
 
@@ -150,28 +307,32 @@ public class GraphView extends View {
 
     // Create xAxisValue - an array of strings which would be shown as values of X axis.
     private void setXAxisValue() {
-        int xDeltaGrid = (timeAxis.length - 1) / numColumns;
+        int xDeltaGrid = (visibleCount - 1) / numColumns;
         xAxisValue = new String[numColumns + 1];
         xAxisValueSecondLine = new String[numColumns + 1];
         for (int i = 0; i <= numColumns; i++) {
-            xAxisValue[i] = " " + getMonth(timeAxis[i * xDeltaGrid])+ " " + getDay(timeAxis[i * xDeltaGrid]);
-            xAxisValueSecondLine[i] =  getHour(timeAxis[i * xDeltaGrid]) + ":" + getMinute(timeAxis[i * xDeltaGrid]) + getAmPm(timeAxis[i * xDeltaGrid]);
+            int time = timeAxis[visibleStart + i * xDeltaGrid];
+            xAxisValue[i] = " " + getMonth(time)+ " " + getDay(time);
+            xAxisValueSecondLine[i] =  getHour(time) + ":" + getMinute(time) + getAmPm(time);
         }
     }
 
     // Setting Y coordinates of points for plotting on canvas.
     private void setDotsY() {
         float yGrid = height / (yMax - yMin);
-        for(int i = 0; i < points.size(); i++)
+        for(int i = 0; i < values.length; i++)
             yDots[i] = ((height + paddingOffset) - (yDots[i] - yMin) * yGrid);
     }
 
     // Setting X coordinates of points for plotting on canvas.
     private void setDotsX() {
-        float xGrid = width / (points.size() / selectedSymbols.size() - 1);
+        int pointsPerLine = pointsPerLine();
+        float xGrid = width / (visibleCount - 1);
+        if(xDots == null || xDots.length != values.length)
+            xDots = new float[values.length];
         for(int i = 0; i < selectedSymbols.size(); i++) {
-            for(int j = 0; j < points.size() / selectedSymbols.size(); j++)
-                points.get(j + i * points.size() / selectedSymbols.size()).x = j * xGrid + paddingOffset;
+            for(int j = 0; j < pointsPerLine; j++)
+                xDots[j + i * pointsPerLine] = (j - visibleStart) * xGrid + paddingOffset;
         }
     }
 
@@ -185,7 +346,7 @@ public class GraphView extends View {
         }
 
         canvas.drawColor(Color.WHITE);
-        Random rnd = new Random();
+        Random rnd = new Random(LINE_COLOR_SEED);
         lineChart.setColor(Color.RED);
         lineChart.setStrokeWidth(5);
         lineChart.setTextSize(25);
@@ -195,7 +356,7 @@ public class GraphView extends View {
         height =  (super.getHeight() - 2 * paddingOffset);
 
         // Initializing all chart adjustment functions.
-        if(points.size() != 0){
+        if(values.length != 0){
 
             calculateDimensions();
             findMaxMin();
@@ -238,8 +399,12 @@ public class GraphView extends View {
         // Drawing graphic lines
         for(int i = 0; i < selectedSymbols.size(); i++) {
             // Draw graphic line for each symbol from selectedSymbols.
-            for (int j = i * points.size() / selectedSymbols.size(); j < (i + 1) * (points.size() / selectedSymbols.size()) - 1; j++) {
-                canvas.drawLine(points.get(j).x, yDots[j], points.get(j + 1).x, yDots[j+1], lineChart);
+            // Only visible values are drawn, missing values (NaN) are skipped.
+            int first = i * pointsPerLine() + visibleStart;
+            for (int j = first; j < first + visibleCount - 1 && values.length > 0; j++) {
+                if (Float.isNaN(yDots[j]) || Float.isNaN(yDots[j + 1]))
+                    continue;
+                canvas.drawLine(xDots[j], yDots[j], xDots[j + 1], yDots[j + 1], lineChart);
             }
             // Draw legend for each line.
             canvas.drawText(selectedSymbols.get(i), width + paddingOffset + 5, paddingOffset + textAxisSize * (i + 1) , lineChart);
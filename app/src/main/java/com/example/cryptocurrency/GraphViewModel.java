@@ -0,0 +1,204 @@
+/**
+ * State of the graph fragment which survives configuration changes: data of all three graphs,
+ * selected time frame buttons and symbols added for comparison. After rotation the fragment
+ * binds this state again, without network requests and without parsing.
+ */
+
+package com.example.cryptocurrency;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.ViewModel;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+public class GraphViewModel extends ViewModel {
+
+    public static final int NUMBER_OF_GRAPHS = 3;
+
+    private final MutableLiveData<GraphData>[] graphs;
+    private final int[] selectedButtons = new int[NUMBER_OF_GRAPHS];     // button id per graph, 0 if nothing is selected
+    private final MutableLiveData<Integer> pendingRequests = new MutableLiveData<>();
+    private final boolean[] staleGraphs = new boolean[NUMBER_OF_GRAPHS];   // graph shows cached lines, the request failed
+    private final MutableLiveData<Boolean> stale = new MutableLiveData<>();
+    private final BitSet addedIds = new BitSet();
+    private final List<Integer> addedOrder = new ArrayList<>();     // IDs of added symbols, in the order they were added
+    private CoinCatalog catalog;
+    private final MutableLiveData<CoinCatalog> catalogData = new MutableLiveData<>();
+    private boolean initialized;
+    private boolean backfillStarted;
+
+    @SuppressWarnings("unchecked")
+    public GraphViewModel() {
+        graphs = new MutableLiveData[NUMBER_OF_GRAPHS];
+        for (int i = 0; i < NUMBER_OF_GRAPHS; i++)
+            graphs[i] = new MutableLiveData<>();
+    }
+
+    public LiveData<GraphData> getGraph(int graphIndex) {
+        return graphs[graphIndex];
+    }
+
+    // Must be called from the main thread.
+    public void setGraph(int graphIndex, GraphData data) {
+        graphs[graphIndex].setValue(data);
+    }
+
+    // True while some graph shows cached lines instead of received ones.
+    public LiveData<Boolean> getStale() {
+        return stale;
+    }
+
+    public void setStale(int graphIndex, boolean isStale) {
+        staleGraphs[graphIndex] = isStale;
+        boolean anyStale = false;
+        for (boolean graphStale : staleGraphs)
+            anyStale |= graphStale;
+        stale.setValue(anyStale);
+    }
+
+    // Number of running graph requests, no value before the first request.
+    public LiveData<Integer> getPendingRequests() {
+        return pendingRequests;
+    }
+
+    public void requestStarted() {
+        Integer pending = pendingRequests.getValue();
+        pendingRequests.setValue(pending == null ? 1 : pending + 1);
+    }
+
+    public void requestFinished() {
+        Integer pending = pendingRequests.getValue();
+        pendingRequests.setValue(pending == null || pending <= 1 ? 0 : pending - 1);
+    }
+
+    /**
+     * Append lines of one more compared symbol to the graph. Lines which do not fit the shown time
+     * frame are dropped, because the time frame was changed while they were loaded.
+     *
+     * @param graphIndex - Index of the graph
+     * @param lines      - Graph data with new lines
+     */
+    public void appendLines(int graphIndex, GraphData lines) {
+        GraphData current = graphs[graphIndex].getValue();
+        if (current == null || current.getSymbols().isEmpty()) {
+            graphs[graphIndex].setValue(lines);
+            return;
+        }
+        GraphData merged = current.withLines(lines);
+        if (merged != null)
+            graphs[graphIndex].setValue(merged);
+    }
+
+    // Remove the line of the symbol from all graphs.
+    public void removeLine(String symbol) {
+        for (MutableLiveData<GraphData> graph : graphs) {
+            GraphData current = graph.getValue();
+            if (current != null && current.getSymbols().contains(symbol))
+                graph.setValue(current.withoutLine(symbol));
+        }
+    }
+
+    public int getSelectedButton(int graphIndex) {
+        return selectedButtons[graphIndex];
+    }
+
+    public void setSelectedButton(int graphIndex, int buttonId) {
+        selectedButtons[graphIndex] = buttonId;
+    }
+
+    // Symbols shown on graphs, IDs from the catalog of this model. It is changed only by addSymbol, removeSymbol and clearSymbols.
+    public BitSet getAddedIds() {
+        return addedIds;
+    }
+
+    // Symbols shown on graphs in the order they were added, which is also the order of lines and their colors.
+    public List<String> getAddedSymbols() {
+        List<String> symbols = new ArrayList<>(addedOrder.size());
+        for (int id : addedOrder)
+            symbols.add(catalog.symbol(id));
+        return symbols;
+    }
+
+    public void addSymbol(int id) {
+        if (id < 0 || addedIds.get(id))
+            return;
+        addedIds.set(id);
+        addedOrder.add(id);
+    }
+
+    public void removeSymbol(int id) {
+        if (id < 0 || !addedIds.get(id))
+            return;
+        addedIds.clear(id);
+        addedOrder.remove(Integer.valueOf(id));
+    }
+
+    public void clearSymbols() {
+        addedIds.clear();
+        addedOrder.clear();
+    }
+
+    // True if the symbol is still shown on graphs, e.g. it was not removed while its line was loaded.
+    public boolean isAdded(String symbol) {
+        int id = catalog == null ? -1 : catalog.idOf(symbol);
+        return id >= 0 && addedIds.get(id);
+    }
+
+    public CoinCatalog getCatalog() {
+        return catalog;
+    }
+
+    // Catalog with the added symbols, a new value is set when the catalog or the symbols are replaced.
+    public LiveData<CoinCatalog> getCatalogData() {
+        return catalogData;
+    }
+
+    // Must be called from the main thread.
+    public void setCatalog(CoinCatalog catalog) {
+        this.catalog = catalog;
+        catalogData.setValue(catalog);
+    }
+
+    /**
+     * Show stored graph lines. Their symbols are added to the catalog and become the added symbols.
+     * Must be called from the main thread.
+     *
+     * @param stored - Graph data for every graph, null for graphs without stored lines
+     */
+    public void showStoredGraphs(GraphData[] stored) {
+        CoinCatalog.Builder builder = catalog.toBuilder();
+        List<Integer> storedIds = new ArrayList<>();
+        for (int i = 0; i < stored.length; i++) {
+            if (stored[i] == null)
+                continue;
+            for (String storedSymbol : stored[i].getSymbols())
+                storedIds.add(builder.add(storedSymbol, storedSymbol, null));     // -1 for a row without symbol
+            graphs[i].setValue(stored[i]);
+        }
+        catalog = builder.build();
+        for (int id : storedIds)
+            addSymbol(id);
+        // Observers read the new catalog together with the added symbols.
+        catalogData.setValue(catalog);
+    }
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    public void setInitialized(boolean initialized) {
+        this.initialized = initialized;
+    }
+
+    public boolean isBackfillStarted() {
+        return backfillStarted;
+    }
+
+    public void setBackfillStarted(boolean backfillStarted) {
+        this.backfillStarted = backfillStarted;
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Streaming parser for responses of https://min-api.cryptocompare.com/data/v2/histoday (histohour,
+ * histominute). Candles are read directly into a CandleBuffer, the response is never held in memory.
+ */
+
+package com.example.cryptocurrency;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+public final class HistoParser {
+
+    private HistoParser() {
+    }
+
+    /**
+     * Read candles of the response into the buffer. Candles before the Coin existed are returned by
+     * the API with all values 0, they are skipped.
+     *
+     * @param reader   - Reader of the JSON response
+     * @param candles  - Buffer for candles, candles are appended
+     * @return boolean - True if the response reached the time before the Coin existed
+     */
+    public static boolean parse(Reader reader, CandleBuffer candles) throws IOException {
+        JsonReader jsonReader = new JsonReader(reader);
+        boolean reachedStart = false;
+        int sizeBefore = candles.size();
+        try {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                String name = jsonReader.nextName();
+                if (name.equals("Response") && jsonReader.peek() == JsonToken.STRING) {
+                    if (jsonReader.nextString().equals("Error"))
+                        throw new IOException("API returned an error response");
+                }
+                else if (name.equals("Data") && jsonReader.peek() == JsonToken.BEGIN_OBJECT) {
+                    jsonReader.beginObject();
+                    while (jsonReader.hasNext()) {
+                        if (jsonReader.nextName().equals("Data") && jsonReader.peek() == JsonToken.BEGIN_ARRAY)
+                            reachedStart = readCandles(jsonReader, candles);
+                        else
+                            jsonReader.skipValue();
+                    }
+                    jsonReader.endObject();
+                }
+                else
+                    jsonReader.skipValue();
+            }
+            jsonReader.endObject();
+        } finally {
+            jsonReader.close();
+        }
+        return reachedStart || candles.size() == sizeBefore;
+    }
+
+    // Array of candles. Returns true if a candle with all values 0 is found.
+    private static boolean readCandles(JsonReader jsonReader, CandleBuffer candles) throws IOException {
+        boolean emptyCandle = false;
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            int time = 0;
+            float open = 0, high = 0, low = 0, close = 0;
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                String field = jsonReader.nextName();
+                if (jsonReader.peek() == JsonToken.NULL) {
+                    jsonReader.nextNull();
+                    continue;
+                }
+                switch (field) {
+                    case "time":
+                        time = jsonReader.nextInt();
+                        break;
+                    case "open":
+                        open = (float) jsonReader.nextDouble();
+                        break;
+                    case "high":
+                        high = (float) jsonReader.nextDouble();
+                        break;
+                    case "low":
+                        low = (float) jsonReader.nextDouble();
+                        break;
+                    case "close":
+                        close = (float) jsonReader.nextDouble();
+                        break;
+                    default:
+                        jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+            if (open == 0 && high == 0 && low == 0 && close == 0)
+                emptyCandle = true;
+            else
+                candles.add(time, open, high, low, close);
+        }
+        jsonReader.endArray();
+        return emptyCandle;
+    }
+
+}
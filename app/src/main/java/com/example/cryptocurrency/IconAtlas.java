@@ -0,0 +1,294 @@
+/**
+ * Persistent icon atlas. Downscaled icons of all Cryptocurrencies are packed into a few page
+ * bitmaps, and the index keeps the cell of every symbol. The atlas is built incrementally, every
+ * downloaded icon is added into it. Icons could be drawn without network and without decoding
+ * every single icon, and only a limited number of pages is held in memory.
+ *
+ * Pages are owned by the writer thread: the index is read, pages are decoded, icons are drawn into
+ * them and changed pages are written there, so the main thread never decodes or copies a page.
+ * A shown icon is a copy of its cell, it does not keep its page in memory. Recently shown cells
+ * are cached for the main thread.
+ *
+ * Files: <files>/icon_atlas/page_<n>.png and <files>/icon_atlas/index. Public methods must be
+ * called from the main thread.
+ */
+
+package com.example.cryptocurrency;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class IconAtlas {
+
+    private static final String DIRECTORY = "icon_atlas";
+    private static final String INDEX_FILE = "index";
+    private static final int INDEX_VERSION = 1;
+    private static final int CELL_SIZE = 96;                        // size of a single icon in pixels
+    private static final int PAGE_SIZE = 768;                       // size of a page bitmap in pixels
+    private static final int CELLS_PER_ROW = PAGE_SIZE / CELL_SIZE;
+    private static final int CELLS_PER_PAGE = CELLS_PER_ROW * CELLS_PER_ROW;
+    private static final int MAX_LOADED_PAGES = 3;                  // memory budget, 2.25 MB per page
+    private static final int MAX_CACHED_ICONS = 64;                 // 36 KB per icon
+
+    // Receives an icon of the atlas on the main thread. The icon is null if it could not be read.
+    public interface IconCallback {
+        void onIcon(String symbol, Bitmap icon);
+    }
+
+    private static IconAtlas instance;
+    private final File directory;
+    private final Map<String, Integer> index = new ConcurrentHashMap<>();   // symbol -> cell number, written by the writer
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, Bitmap> icons = new LruCache<>(MAX_CACHED_ICONS);   // symbol -> cell copy, main thread
+
+    // Used only by the writer thread.
+    private final LinkedHashMap<Integer, Bitmap> loadedPages;       // page number -> page bitmap, LRU order
+    private final Map<Integer, Bitmap> dirtyPages = new HashMap<>();  // pages changed after the last flush
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private boolean flushScheduled;
+
+    private IconAtlas(Context context) {
+        directory = new File(context.getFilesDir(), DIRECTORY);
+        loadedPages = new LinkedHashMap<Integer, Bitmap>(MAX_LOADED_PAGES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Bitmap> eldest) {
+                return size() > MAX_LOADED_PAGES;
+            }
+        };
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                readIndex();
+            }
+        });
+    }
+
+    public static synchronized IconAtlas getInstance(Context context) {
+        if (instance == null)
+            instance = new IconAtlas(context.getApplicationContext());
+        return instance;
+    }
+
+    // False also while the index is still being read.
+    public boolean contains(String symbol) {
+        return symbol != null && index.containsKey(symbol);
+    }
+
+    // Icon of the symbol if it was shown recently, otherwise null.
+    public Bitmap getCachedIcon(String symbol) {
+        return symbol == null ? null : icons.get(symbol);
+    }
+
+    /**
+     * Read the icon of the symbol from its atlas page on the writer thread.
+     *
+     * @param symbol   - Symbol of the Cryptocurrency
+     * @param callback - Receives the icon, or null if it is not in the atlas
+     */
+    public void loadIcon(final String symbol, final IconCallback callback) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap icon = readCell(symbol);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (icon != null)
+                            icons.put(symbol, icon);
+                        callback.onIcon(symbol, icon);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Add the icon into the atlas. The icon is downscaled into a free cell and the changed page is
+     * written on the writer thread.
+     *
+     * @param symbol - Symbol of the Cryptocurrency
+     * @param icon   - Loaded icon, it is only read
+     */
+    public void add(final String symbol, final Bitmap icon) {
+        if (symbol == null || icon == null || index.containsKey(symbol))
+            return;
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                drawCell(symbol, icon);
+            }
+        });
+    }
+
+    /**
+     * Add the icon which is shown in the image view, if it is a bitmap.
+     *
+     * @param symbol   - Symbol of the Cryptocurrency
+     * @param drawable - Drawable of the image view
+     */
+    public void add(String symbol, Drawable drawable) {
+        if (drawable instanceof BitmapDrawable)
+            add(symbol, ((BitmapDrawable) drawable).getBitmap());
+    }
+
+    // Copy of the cell, so the page could be evicted while the icon is shown. Writer thread.
+    private Bitmap readCell(String symbol) {
+        Integer cell = index.get(symbol);
+        if (cell == null)
+            return null;
+        Bitmap page = getPage(cell / CELLS_PER_PAGE, false);
+        if (page == null)
+            return null;
+        Rect rect = cellRect(cell % CELLS_PER_PAGE);
+        return Bitmap.createBitmap(page, rect.left, rect.top, CELL_SIZE, CELL_SIZE);
+    }
+
+    // Writer thread. Icons which are added together are written by one flush.
+    private void drawCell(String symbol, Bitmap icon) {
+        if (index.containsKey(symbol))
+            return;
+        int cell = index.size();
+        Bitmap page = getPage(cell / CELLS_PER_PAGE, true);
+        if (page == null)
+            return;
+        new Canvas(page).drawBitmap(icon, null, cellRect(cell % CELLS_PER_PAGE), paint);
+        index.put(symbol, cell);
+        dirtyPages.put(cell / CELLS_PER_PAGE, page);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushScheduled = false;
+                    writeFiles();
+                }
+            });
+        }
+    }
+
+    private Rect cellRect(int cellInPage) {
+        int left = (cellInPage % CELLS_PER_ROW) * CELL_SIZE;
+        int top = (cellInPage / CELLS_PER_ROW) * CELL_SIZE;
+        return new Rect(left, top, left + CELL_SIZE, top + CELL_SIZE);
+    }
+
+    // Page from memory, disk or a new empty one. A page is decoded once for all its icons. Writer thread.
+    private Bitmap getPage(int pageNumber, boolean create) {
+        Bitmap page = loadedPages.get(pageNumber);
+        if (page != null)
+            return page;
+        page = dirtyPages.get(pageNumber);      // evicted, but still not written
+        if (page == null) {
+            File pageFile = pageFile(pageNumber);
+            if (pageFile.exists()) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inMutable = true;
+                page = BitmapFactory.decodeFile(pageFile.getPath(), options);
+            }
+        }
+        if (page == null && create)
+            page = Bitmap.createBitmap(PAGE_SIZE, PAGE_SIZE, Bitmap.Config.ARGB_8888);
+        if (page != null)
+            loadedPages.put(pageNumber, page);
+        return page;
+    }
+
+    private File pageFile(int pageNumber) {
+        return new File(directory, "page_" + pageNumber + ".png");
+    }
+
+    // Write changed pages and the index. Writer thread, so pages are not changed meanwhile.
+    private void writeFiles() {
+        if (!directory.exists() && !directory.mkdirs())
+            return;
+        try {
+            for (Map.Entry<Integer, Bitmap> entry : dirtyPages.entrySet()) {
+                File tmpFile = new File(directory, "page_" + entry.getKey() + ".tmp");
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile));
+                try {
+                    entry.getValue().compress(Bitmap.CompressFormat.PNG, 100, out);
+                } finally {
+                    out.close();
+                }
+                if (!tmpFile.renameTo(pageFile(entry.getKey())))
+                    throw new IOException("Renaming of " + tmpFile + " failed");
+            }
+            // Index is written after pages, so it never points to a cell which is not stored.
+            File tmpIndex = new File(directory, INDEX_FILE + ".tmp");
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpIndex)));
+            try {
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(index.size());
+                Iterator<Map.Entry<String, Integer>> iterator = index.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<String, Integer> entry = iterator.next();
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmpIndex.renameTo(new File(directory, INDEX_FILE)))
+                throw new IOException("Renaming of " + tmpIndex + " failed");
+            dirtyPages.clear();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Writer thread, before any other task.
+    private void readIndex() {
+        File indexFile = new File(directory, INDEX_FILE);
+        if (!indexFile.exists())
+            return;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (in.readInt() != INDEX_VERSION)
+                return;
+            int count = in.readInt();
+            Map<String, Integer> stored = new HashMap<>(count);
+            for (int i = 0; i < count; i++)
+                stored.put(in.readUTF(), in.readInt());
+            index.putAll(stored);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+/**
+ * Base fragment for tabs which load their data only when they become visible.
+ *
+ * The view pager creates neighbouring tabs before they are shown. Their views are built right
+ * away, but onLoad is called only when the tab is visible to the user. When the visible tab
+ * finished loading, the activity could ask other tabs to prefetch their data with low priority.
+ */
+
+package com.example.cryptocurrency;
+
+import android.os.Bundle;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+public abstract class LazyTabFragment extends Fragment {
+
+    // Notified when a tab finished loading its data.
+    public interface OnTabLoadedListener {
+        void onTabLoaded(LazyTabFragment tab);
+    }
+
+    private boolean prefetchRequested;
+
+    /**
+     * Start loading data of the tab. Called on the main thread every time the tab is shown, the
+     * implementation must skip the loading if it is already started or the data is retained.
+     *
+     * @param prefetch - True if the tab is not visible and data is loaded with low priority
+     */
+    protected abstract void onLoad(boolean prefetch);
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        if (getUserVisibleHint())
+            onLoad(false);
+        else if (prefetchRequested)
+            onLoad(true);
+    }
+
+    // Called by the view pager when this tab is shown or hidden.
+    @Override
+    public void setUserVisibleHint(boolean isVisibleToUser) {
+        super.setUserVisibleHint(isVisibleToUser);
+        if (isVisibleToUser && getView() != null)
+            onLoad(false);
+    }
+
+    // Load data while the tab is not visible. If the view does not exist yet, it is loaded when the view is created.
+    public void prefetch() {
+        prefetchRequested = true;
+        if (getView() != null)
+            onLoad(true);
+    }
+
+    // Must be called by the implementation when data of the tab is loaded, also when loading failed.
+    protected void notifyLoaded() {
+        if (getActivity() instanceof OnTabLoadedListener)
+            ((OnTabLoadedListener) getActivity()).onTabLoaded(this);
+    }
+
+}
@@ -20,47 +20,58 @@
  */
 package com.example.cryptocurrency;
 
-import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.database.Cursor;
-import android.net.ConnectivityManager;
+import android.os.AsyncTask;
 import android.os.Bundle;
-import android.view.View;
-import android.widget.AbsListView;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
+import android.widget.EditText;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
 import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class MainActivity extends AppCompatActivity {
 
-    private static final String ARG_NAME_FROM_MAIN = "name_coin";
-    private static final String ARG_IMAGE_FROM_MAIN = "image_coin";
-    private static final String ARG_SYMBOL_FROM_MAIN = "symbol_coin";
-    private static final String ARG_LIST_SYMBOL = "list_symbol";
+    private static final String TAG = "MainActivity";
+    public static final String ARG_SYMBOL_FROM_MAIN = "symbol_coin";
 
     private static final String CRYPTOCOMPARE_URL = "https://www.cryptocompare.com";
     private static final String API_CRYPTOCOMPARE_URL = "https://min-api.cryptocompare.com/data/top/totaltoptiervolfull?tsym=USD&limit=";
-    private List<String> listSymbol;
-    private ListView listView;
-    private CoinArrayAdapter coinArrayAdapter;
-    public static RequestQueue mQueue;
-    public static DatabaseHandler db;
+    private static final String PREF_CATALOG_INGESTED_AT = "catalog_ingested_at";
+    private static final long CATALOG_MAX_AGE_MS = 24 * 60 * 60 * 1000;
+    private List<Coin> loadedCoins;     // all loaded Coins, the adapter receives a copy of this list
+    private List<Coin> snapshotCoins;   // Coins from the last sync, shown until the new pages arrive
+    private CatalogSnapshot catalogSnapshot;
+    private EditText searchCoins;
+    private String currentQuery = "";   // text of the list filter
+    private RecyclerView listView;
+    private LinearLayoutManager layoutManager;
+    private CoinRecyclerAdapter coinRecyclerAdapter;
+    private CoinPager coinPager;
+    private boolean listOnline;                  // pages of the list are requested from the API
+    private boolean storedListReplaced;          // stored data was deleted after the first received page
+    private ConnectivityMonitor.Listener connectivityListener;
     private final int numberDataPerPages = 20;   // number of Cryptocurrencies returned
+    private final int prefetchDistance = 10;     // next page is requested this many rows before the end
+    private final int maxPagesInFlight = 2;      // number of pages which could be loaded at the same time
+    private final int maxSearchResults = 200;    // maximum number of rows shown for the list filter
 
 
     // Main Activity create
@@ -68,95 +79,231 @@ public class MainActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        StartupTrace.mark("activity_content_set");
 
-        // Initialization parameters.
-        mQueue = Volley.newRequestQueue(this);
-        db = new DatabaseHandler(this);
-
-        listView = (ListView) findViewById(R.id.listView);
-        coinArrayAdapter = new CoinArrayAdapter(getApplicationContext(), R.layout.list_of_coins);
-        listView.setAdapter(coinArrayAdapter);
+        listView = (RecyclerView) findViewById(R.id.listView);
+        layoutManager = new LinearLayoutManager(this);
+        layoutManager.setItemPrefetchEnabled(true);
+        final CoinIconLoader iconLoader = CryptocurrencyApp.getIconLoader();
+        iconLoader.setOffline(!CryptocurrencyApp.getConnectivityMonitor().isConnected());
+        coinRecyclerAdapter = new CoinRecyclerAdapter(iconLoader, CryptocurrencyApp.getIconAtlas());
+        listView.setLayoutManager(layoutManager);
+        listView.setHasFixedSize(true);
+        listView.setItemViewCacheSize(numberDataPerPages / 2);
+        listView.setAdapter(coinRecyclerAdapter);
         listView.setFocusable(false);
-        listSymbol = new ArrayList<>();
-        listSymbol.add("Select");
+        loadedCoins = new ArrayList<>();
 
+        // Show the last known list in the first frame. Network or database refresh is applied as a diff later.
+        catalogSnapshot = new CatalogSnapshot(this);
+        snapshotCoins = catalogSnapshot.read();
+        coinRecyclerAdapter.submitList(new ArrayList<>(snapshotCoins));
+        CatalogRegistry.publish(snapshotCoins);
 
-        // If users don't have an internet access, data from the Database is loaded. In the second
-        // case, the old data from the Database will be wiped out and refreshed with a new one.
-        if(!isNetworkConnected()) {
-            Cursor res = db.readCoinsFromDB();
-            while(res.moveToNext()) {
-                Coin coin = new Coin( res.getString(2), res.getString(0), res.getString(1));
-                listSymbol.add(res.getString(1));
-                coinArrayAdapter.add(coin);
+        // Database and network are used only after the first frame is drawn.
+        StartupTrace.afterFirstFrame(listView, new Runnable() {
+            @Override
+            public void run() {
+                loadCoins();
             }
-        }
-        else {
-            // If network is connected, delete all previous tables and create new ones according to the activities in the app.
-            db.deleteAllTables();
-            // Use readCryptocurrencies method to get Cryptocurrencies.
-            if (coinArrayAdapter.getCount() == 0) {
-                try {
-                    readCryptocurrenciesFromUrl(coinArrayAdapter.getCount());
-                } catch (JSONException e) {
-                    e.printStackTrace();
+        });
+
+        // When the network is back, the list read from the database is loaded again from the API.
+        connectivityListener = new ConnectivityMonitor.Listener() {
+            @Override
+            public void onConnectivityChanged(boolean connected) {
+                iconLoader.setOffline(!connected);
+                if (connected && coinPager != null && !listOnline) {
+                    coinPager.reset();
+                    loadedCoins.clear();
+                    loadCoins();
                 }
             }
-        }
+        };
+        CryptocurrencyApp.getConnectivityMonitor().addListener(connectivityListener);
+
+        // List filter. Coins are found by symbol or name prefix, or by fuzzy match.
+        searchCoins = (EditText) findViewById(R.id.searchCoins);
+        searchCoins.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                currentQuery = s.toString().trim();
+                filterList();
+            }
+        });
 
         // OnClick Listener. Opens a new layout with general information about the Cryptocurrency clicked.
-        listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Only the symbol is passed, everything else is read from the CatalogRegistry.
+        coinRecyclerAdapter.setOnCoinClickListener(new CoinRecyclerAdapter.OnCoinClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+            public void onCoinClick(Coin coin, int position) {
                 Intent intent = new Intent(MainActivity.this, TabMenuForSelectedCoin.class);
-                intent.putExtra(ARG_NAME_FROM_MAIN, coinArrayAdapter.getItem(position).getNameCoin());
-                intent.putExtra(ARG_SYMBOL_FROM_MAIN, coinArrayAdapter.getItem(position).getSymbolCoin());
-                intent.putExtra(ARG_IMAGE_FROM_MAIN, coinArrayAdapter.getItem(position).getImageCoin());
-                intent.putStringArrayListExtra(ARG_LIST_SYMBOL, (ArrayList<String>)listSymbol);
+                intent.putExtra(ARG_SYMBOL_FROM_MAIN, coin.getSymbolCoin());
                 startActivity(intent);
             }
         });
 
-        // Scroll Listener. Expands the list of loaded Cryptocurrencies.
-        listView.setOnScrollListener(new AbsListView.OnScrollListener() {
-            private int firstItem = -1;
-
+        // Scroll Listener. Expands the list of loaded Cryptocurrencies before the user reaches the end.
+        // Icon requests are paused during fling, and icons of the next page are prefetched.
+        listView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void onScrollStateChanged(AbsListView view, int scrollState) {
-
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_SETTLING)
+                    CryptocurrencyApp.getIconLoader().pauseList();
+                else
+                    CryptocurrencyApp.getIconLoader().resumeList();
             }
 
-            // Load new Cryptocurrencies only if user scrolled to bottom of list.
             @Override
-            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
-                if (visibleItemCount < totalItemCount && (firstVisibleItem + visibleItemCount == totalItemCount)) {
-                    if (firstVisibleItem != firstItem) {
-                        firstItem = firstVisibleItem;
-                        try {
-                            readCryptocurrenciesFromUrl(coinArrayAdapter.getCount());
-                        } catch (JSONException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int lastVisiblePosition = layoutManager.findLastVisibleItemPosition();
+                if (coinPager != null)
+                    coinPager.onScrolled(lastVisiblePosition);
+                if (recyclerView.getScrollState() != RecyclerView.SCROLL_STATE_SETTLING)
+                    coinRecyclerAdapter.prefetchIcons(lastVisiblePosition, numberDataPerPages);
             }
         });
     }
 
+    @Override
+    protected void onDestroy() {
+        CryptocurrencyApp.getConnectivityMonitor().removeListener(connectivityListener);
+        super.onDestroy();
+    }
+
+    /**
+     * Load the list after the first frame. Both modes use the same pager: with an internet access
+     * pages come from the API, the old list in the Database will be wiped out and refreshed with
+     * a new one after the first page arrives, and without it pages are read from the Database in background while the user
+     * scrolls. Database writes run on the disk executor, in order.
+     */
+    private void loadCoins() {
+        final boolean online = CryptocurrencyApp.getConnectivityMonitor().isConnected();
+        listOnline = online;
+        storedListReplaced = false;
+        // Use readCryptocurrencies method to get Cryptocurrencies, page by page.
+        coinPager = new CoinPager(numberDataPerPages, prefetchDistance, maxPagesInFlight,
+                new CoinPager.PageLoader() {
+                    @Override
+                    public void loadPage(int page, int pageSize) {
+                        if (online)
+                            readCryptocurrenciesFromUrl(page, pageSize);
+                        else
+                            new LoadStoredPageTask(coinPager, page, pageSize).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+                    }
+                },
+                new CoinPager.Listener() {
+                    @Override
+                    public void onCoinsAppended(final List<Coin> coins) {
+                        StartupTrace.mark("first_page_shown");
+                        loadedCoins.addAll(coins);
+                        List<Coin> shownCoins = mergeWithSnapshot();
+                        if (currentQuery.length() == 0)
+                            coinRecyclerAdapter.submitList(shownCoins);
+                        CatalogRegistry.publish(coins);
+                        // Stored pages are already in the database, snapshot and search index.
+                        if (!online)
+                            return;
+                        // Stored list is kept until the API answers, so it is still shown while the API is down.
+                        // With the first received page it is deleted and refreshed. Stored graphs and general
+                        // info are kept as fallback, they are replaced when they are received again.
+                        final boolean deleteStored = !storedListReplaced;
+                        storedListReplaced = true;
+                        // Insert loaded Coins into database
+                        CryptocurrencyApp.getDiskExecutor().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                DatabaseHandler db = CryptocurrencyApp.getDatabase();
+                                if (deleteStored)
+                                    db.deleteCoins();
+                                for (Coin coin : coins)
+                                    db.writeCoinIntoDB(coin);
+                            }
+                        });
+                        catalogSnapshot.writeAsync(shownCoins);
+                        // Page is merged into the search index, the index is not rebuilt.
+                        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                SymbolSearchIndex.addShared(coins);
+                            }
+                        });
+                    }
+                });
+        coinPager.start();
+        // Index is built once per process, and again after the full list is ingested.
+        if (SymbolSearchIndex.getShared() == null)
+            new BuildSearchIndexTask(mergeWithSnapshot()).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        if (!online)
+            return;
+
+        // Backfills which were interrupted, e.g. by process death, continue from their stored cursors.
+        BackfillEngine.getInstance().resumeAll();
+
+        // Full list of Cryptocurrencies is refreshed once per day.
+        SharedPreferences preferences = getPreferences(MODE_PRIVATE);
+        if (System.currentTimeMillis() - preferences.getLong(PREF_CATALOG_INGESTED_AT, 0) > CATALOG_MAX_AGE_MS)
+            new CatalogIngestTask(preferences).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Loaded Coins followed by the rest of the snapshot. Snapshot Coins which are already loaded
+     * are skipped, so refreshed rows only replace old ones.
+     *
+     * @return List<Coin> - New list for the adapter
+     */
+    private List<Coin> mergeWithSnapshot() {
+        List<Coin> shownCoins = new ArrayList<>(Math.max(loadedCoins.size(), snapshotCoins.size()));
+        Set<String> loadedSymbols = new HashSet<>();
+        for (Coin coin : loadedCoins) {
+            if (loadedSymbols.add(coin.getSymbolCoin()))
+                shownCoins.add(coin);
+        }
+        for (int i = loadedCoins.size(); i < snapshotCoins.size(); i++) {
+            if (loadedSymbols.add(snapshotCoins.get(i).getSymbolCoin()))
+                shownCoins.add(snapshotCoins.get(i));
+        }
+        return shownCoins;
+    }
+
+    // Show Coins which match the list filter, or all Coins if the filter is empty.
+    private void filterList() {
+        if (currentQuery.length() == 0) {
+            coinRecyclerAdapter.submitList(mergeWithSnapshot());
+            return;
+        }
+        SymbolSearchIndex index = SymbolSearchIndex.getShared();
+        if (index == null)
+            index = new SymbolSearchIndex(mergeWithSnapshot());     // index is still not built, list is small
+        coinRecyclerAdapter.submitList(index.search(currentQuery, maxSearchResults));
+    }
+
     /**
      * JSON deserialize method. Cryptocurrencies are arranged by 24H Top Tier Volume.
      *
-     * @param countCoins    - Number of shown elements
+     * @param page        - Requested page
+     * @param pageSize    - Number of Cryptocurrencies per page
      */
-    private void readCryptocurrenciesFromUrl(int countCoins) throws JSONException {
+    private void readCryptocurrenciesFromUrl(final int page, int pageSize) {
         // Read data from URL
-        String url = API_CRYPTOCOMPARE_URL + numberDataPerPages + "&page=" + countCoins / numberDataPerPages;
+        String url = API_CRYPTOCOMPARE_URL + pageSize + "&page=" + page;
 
-        JsonObjectRequest request = new JsonObjectRequest(Request.Method.GET, url, null, new com.android.volley.Response.Listener<JSONObject>() {
+        new ApiJsonRequest(ApiClient.ENDPOINT_TOP_LIST, url, new com.android.volley.Response.Listener<JSONObject>() {
             @Override
             public void onResponse(JSONObject response) {
                 try {
                     JSONArray data = response.getJSONArray("Data");     // find Array with name DATA
+                    List<Coin> coins = new ArrayList<>(data.length());
                     for(int i=0; i<data.length();i++) {
                         // Get important element from Array DATA
                         JSONObject objectData = data.getJSONObject(i);
@@ -165,29 +312,115 @@ public class MainActivity extends AppCompatActivity {
                         String coinName = coinInfo.getString("FullName");
                         String imageUrl = CRYPTOCOMPARE_URL + coinInfo.getString("ImageUrl");
                         Coin coin = new Coin(imageUrl, coinName, symbol);
-                        coinArrayAdapter.add(coin);
-                        listSymbol.add(symbol);
-
-                        // Insert loaded Coin into database
-                        db.writeCoinIntoDB(coin);
+                        coins.add(coin);
                     }
+                    coinPager.onPageLoaded(page, coins);
                 } catch (JSONException e) {
                     e.printStackTrace();
+                    coinPager.onPageFailed(page);
                 }
             }
         }, new com.android.volley.Response.ErrorListener() {
             @Override
             public void onErrorResponse(VolleyError error) {
                 error.printStackTrace();
+                coinPager.onPageFailed(page);
             }
-        });
-        mQueue.add(request);
+        }).send();
     }
 
-    // Checking network access.
-    private boolean isNetworkConnected() {
-        ConnectivityManager cm = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-        return cm.getActiveNetworkInfo() != null && cm.getActiveNetworkInfo().isConnected();
+    // Build the search index on a background thread from the given Coins and all Coins stored in database.
+    private static class BuildSearchIndexTask extends AsyncTask<Void, Void, Void> {
+        private final List<Coin> coins;
+
+        BuildSearchIndexTask(List<Coin> coins) {
+            this.coins = new ArrayList<>(coins);
+        }
+
+        @Override
+        protected Void doInBackground(Void... voids) {
+            DatabaseHandler db = CryptocurrencyApp.getDatabase();
+            Cursor res = db.readCoinsFromDB();
+            while (res.moveToNext())
+                coins.add(new Coin(res.getString(2), res.getString(0), res.getString(1)));
+            res.close();
+            res = db.readCatalogFromDB();
+            while (res.moveToNext()) {
+                String image = res.isNull(2) ? null : CRYPTOCOMPARE_URL + res.getString(2);
+                coins.add(new Coin(image, res.getString(0), res.getString(1)));
+            }
+            res.close();
+            CatalogRegistry.publish(coins);
+            SymbolSearchIndex.setShared(new SymbolSearchIndex(coins));
+            return null;
+        }
+    }
+
+    // Read one page of Coins stored by the last online start. Only this page is held in memory.
+    private static class LoadStoredPageTask extends AsyncTask<Void, Void, List<Coin>> {
+        private final CoinPager pager;
+        private final int page;
+        private final int pageSize;
+
+        LoadStoredPageTask(CoinPager pager, int page, int pageSize) {
+            this.pager = pager;
+            this.page = page;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        protected List<Coin> doInBackground(Void... voids) {
+            List<Coin> coins = new ArrayList<>(pageSize);
+            try {
+                Cursor res = CryptocurrencyApp.getDatabase().readCoinsPage(page * pageSize, pageSize);
+                while (res.moveToNext())
+                    coins.add(new Coin(res.getString(2), res.getString(0), res.getString(1)));
+                res.close();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                return null;
+            }
+            return coins;
+        }
+
+        @Override
+        protected void onPostExecute(List<Coin> coins) {
+            if (coins == null)
+                pager.onPageFailed(page);
+            else
+                pager.onPageLoaded(page, coins);
+        }
+    }
+
+    // Download and store the full list of Cryptocurrencies, then rebuild the search index. It does not hold the
+    // activity, so it could finish after the activity is destroyed. It runs on the thread pool, graph loads on
+    // the serial executor do not wait for the download.
+    private static class CatalogIngestTask extends AsyncTask<Void, Void, CatalogIngest.Result> {
+        private final SharedPreferences preferences;
+
+        CatalogIngestTask(SharedPreferences preferences) {
+            this.preferences = preferences;
+        }
+
+        @Override
+        protected CatalogIngest.Result doInBackground(Void... voids) {
+            try {
+                return new CatalogIngest(CatalogIngest.COIN_LIST_URL, CryptocurrencyApp.getDatabase().openCatalogWriter()).ingest();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(CatalogIngest.Result result) {
+            if (result == null)
+                return;
+            Log.d(TAG, "Catalog ingest: " + result.count + " coins in " + result.durationMs + " ms");
+            preferences.edit().putLong(PREF_CATALOG_INGESTED_AT, System.currentTimeMillis()).apply();
+            // Loaded pages are already stored in the database, the index reads them from there.
+            new BuildSearchIndexTask(new ArrayList<Coin>()).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
     }
 
 }
\ No newline at end of file
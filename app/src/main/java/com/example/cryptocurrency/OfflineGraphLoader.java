@@ -0,0 +1,97 @@
+/**
+ * An asynchronous task for reading stored graph lines from database, used when users don't have an
+ * internet access. Every stored series is decoded in one pass into primitive arrays, and finished
+ * graph data is passed to the listener on the main thread.
+ */
+
+package com.example.cryptocurrency;
+
+import android.database.Cursor;
+import android.os.AsyncTask;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OfflineGraphLoader extends AsyncTask<Void, Void, GraphData[]> {
+
+    // Receives graph data for every time frame on the main thread, null for time frames without stored lines.
+    public interface OnGraphsLoadedListener {
+        void onGraphsLoaded(GraphData[] graphs);
+    }
+
+    private final String selSymbol;
+    private final String[] timeFrames;
+    private final OnGraphsLoadedListener listener;
+
+    public OfflineGraphLoader(String selSymbol, String[] timeFrames, OnGraphsLoadedListener listener) {
+        this.selSymbol = selSymbol;
+        this.timeFrames = timeFrames;
+        this.listener = listener;
+    }
+
+    @Override
+    protected GraphData[] doInBackground(Void... voids) {
+        GraphData[] graphs = new GraphData[timeFrames.length];
+        for (int i = 0; i < timeFrames.length; i++)
+            graphs[i] = readGraph(timeFrames[i]);
+        return graphs;
+    }
+
+    @Override
+    protected void onPostExecute(GraphData[] graphs) {
+        super.onPostExecute(graphs);
+        listener.onGraphsLoaded(graphs);
+    }
+
+    /**
+     * Read all stored lines of the time frame. X values are not read, they are indexes of the values.
+     *
+     * @param timeFrame  - Time frame, e.g. "day", "hour", "minute"
+     * @return GraphData - Graph data, or null if no complete line is stored
+     */
+    private GraphData readGraph(String timeFrame) {
+        List<String> symbols = new ArrayList<>();
+        List<String> series = new ArrayList<>();
+        int[] timeAxis = null;
+        int numRows = 0, numColumns = 0;
+
+        Cursor res = CryptocurrencyApp.getDatabase().readGraphLineFromDB(selSymbol, timeFrame);
+        try {
+            while (res.moveToNext()) {
+                symbols.add(res.getString(1));
+                series.add(res.getString(3));
+                if (timeAxis == null) {
+                    timeAxis = SeriesDecoder.decodeInts(res.getString(4));
+                    numRows = res.getInt(6);
+                    numColumns = res.getInt(7);
+                }
+            }
+        } finally {
+            res.close();
+        }
+        if (timeAxis == null || timeAxis.length == 0)
+            return null;
+
+        // Every line has as many values as the time axis, lines with a different length are skipped.
+        int pointsPerLine = timeAxis.length;
+        float[] values = new float[symbols.size() * pointsPerLine];
+        List<String> storedSymbols = new ArrayList<>(symbols.size());
+        int offset = 0;
+        for (int i = 0; i < symbols.size(); i++) {
+            if (SeriesDecoder.count(series.get(i)) != pointsPerLine)
+                continue;
+            SeriesDecoder.decodeFloats(series.get(i), values, offset);
+            offset += pointsPerLine;
+            storedSymbols.add(symbols.get(i));
+        }
+        if (storedSymbols.isEmpty())
+            return null;
+        if (offset < values.length) {
+            float[] storedValues = new float[offset];
+            System.arraycopy(values, 0, storedValues, 0, offset);
+            values = storedValues;
+        }
+        return new GraphData(values, timeAxis, timeFrame, numRows, numColumns, storedSymbols);
+    }
+
+}
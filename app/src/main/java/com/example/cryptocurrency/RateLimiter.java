@@ -0,0 +1,32 @@
+/**
+ * Rate limiter for requests to the API. Permits are handed out at a fixed rate; a caller which
+ * asks too early waits for its slot, so requests from several threads are spread evenly in time.
+ */
+
+package com.example.cryptocurrency;
+
+import java.util.concurrent.TimeUnit;
+
+public class RateLimiter {
+    private final long intervalNanos;
+    private long nextFreeNanos;
+
+    public RateLimiter(double permitsPerSecond) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    // Wait until the next permit is free. Must be called from a background thread.
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(nextFreeNanos, now);
+            nextFreeNanos = slot + intervalNanos;
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0)
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+
+}
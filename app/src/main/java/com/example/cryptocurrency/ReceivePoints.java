@@ -1,44 +1,57 @@
 /**
- * An asynchronous task for receiving data from internet, plotting the graph and storing data in database.
+ * An asynchronous task for receiving data from internet, passing the graph data to the listener and storing data in database.
+ * All lines of the graph share one deadline, a graph which is not received in time fails and cached lines are shown.
  */
 
 package com.example.cryptocurrency;
 
-import android.graphics.PointF;
 import android.os.AsyncTask;
+import android.os.Process;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
 public class ReceivePoints extends AsyncTask<Void, Void, Void> {
+
+    private static final long DEADLINE_MS = 10000;
+
+    // Receives the graph data on the main thread. If not all lines are received, onPointsFailed is called.
+    public interface OnPointsReceivedListener {
+        void onPointsReceived(GraphData graphData);
+        void onPointsFailed();
+    }
+
+    // Decides on the main thread which received lines are still shown. Other lines are not passed and not stored.
+    public interface LineFilter {
+        boolean isShown(String symbol);
+    }
+
     private String data;
     private String timeFrame;
-    private URL url;
     private int numberOfData;
     private String selSymbol;
     private int numRows, numColumns;
     private int[] timeAxis;
     private List<String> listOfSymbols = new ArrayList<>();
-    private List<PointF> points;
-    private GraphView graph;
-    private String dotsXstring;
-    private String dotsYstring;
-    private String symbolsInString;
+    private float[] values;                     // values of all lines, one line after another
+    private int valueCount;
+    private OnPointsReceivedListener listener;
+    private boolean lowPriority;
+    private int toTs;                           // time of the last value, 0 for the latest values
+    private LineFilter lineFilter;              // null if all received lines are kept
+    private List<String> receivedSymbols;       // symbols with received lines, one stored row per symbol
+    private List<String> dotsXPerSymbol;
+    private List<String> dotsYPerSymbol;
     private String timeAxisString;
+    private CandleBuffer candles = new CandleBuffer();
 
     // Initial setup for this object.
-    public ReceivePoints(int numberOfData, String timeFrame, int numRows, int numColumns, String selSymbol, List<String> listOfSymbols, GraphView graph){
+    public ReceivePoints(int numberOfData, String timeFrame, int numRows, int numColumns, String selSymbol, List<String> listOfSymbols, OnPointsReceivedListener listener){
         this.numberOfData = numberOfData;
         this.timeFrame = timeFrame;
         this.numRows = numRows;
@@ -46,76 +59,133 @@ public class ReceivePoints extends AsyncTask<Void, Void, Void> {
         this.selSymbol = selSymbol;
         this.listOfSymbols = listOfSymbols;
         this.timeAxis = new int[numberOfData + 1];
-        this.graph = graph;
+        this.listener = listener;
         this.data = "";
-        this.points = new ArrayList<>();
-        this.dotsXstring = "";
-        this.dotsYstring = "";
-        this.symbolsInString = "";
+        this.values = new float[listOfSymbols.size() * (numberOfData + 1)];
+        this.receivedSymbols = new ArrayList<>();
+        this.dotsXPerSymbol = new ArrayList<>();
+        this.dotsYPerSymbol = new ArrayList<>();
         this.timeAxisString = "";
     }
 
+    // Prefetch of a tab which is not visible. The thread priority is lowered while this task is running.
+    public ReceivePoints setLowPriority(boolean lowPriority) {
+        this.lowPriority = lowPriority;
+        return this;
+    }
+
+    // Lines which end at the given time, e.g. a line appended to a shown graph ends at the time of its axis.
+    public ReceivePoints setToTs(int toTs) {
+        this.toTs = toTs;
+        return this;
+    }
+
+    // Lines of symbols which were removed while the task was running are dropped.
+    public ReceivePoints setLineFilter(LineFilter lineFilter) {
+        this.lineFilter = lineFilter;
+        return this;
+    }
+
     // Receiving data from url connections. JSON procedure is used to separate necessary data.
     @Override
     protected Void doInBackground(Void... voids) {
+        if (lowPriority)
+            Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+        try {
+            receiveAllLines();
+        } finally {
+            if (lowPriority)
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        }
+        return null;
+    }
+
+    private void receiveAllLines() {
+        long deadlineAt = System.currentTimeMillis() + DEADLINE_MS;
         for ( int i = 0; i < listOfSymbols.size(); i++) {
             // Preparing URL address.
             try {
-                url = new URL("https://min-api.cryptocompare.com/data/v2/histo" + timeFrame +
-                        "?fsym=" + selSymbol + "&tsym=" + listOfSymbols.get(i) + "&limit=" + numberOfData);
-                HttpURLConnection httpURLConnection = (HttpURLConnection) url.openConnection();
-                InputStream inputStream = httpURLConnection.getInputStream();
-                BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
+                String url = BackfillEngine.HISTO_URL + timeFrame +
+                        "?fsym=" + selSymbol + "&tsym=" + listOfSymbols.get(i) + "&limit=" + numberOfData;
+                if (toTs > 0)
+                    url = url + "&toTs=" + toTs;
+                data = ApiClient.getInstance().getString(ApiClient.ENDPOINT_HISTO, url, deadlineAt - System.currentTimeMillis());
 
                 // Generating JSON array using string - data. Cropping all characters between symbols '[' and ']'.
-                String line = "";
-                while(line != null) {
-                    line = bufferedReader.readLine();
-                    data = data + line;
-                }
                 data = data.substring(data.indexOf("["));
                 data = data.substring(0, data.indexOf("]") + 1);
                 JSONArray JAdata = new JSONArray(data);
 
                 // Deserializing all JSON objects and reading necessary data. (X and Y values, time values)
+                StringBuilder dotsX = new StringBuilder();
+                StringBuilder dotsY = new StringBuilder();
+                candles.clear();
                 for(int j = 0; j < JAdata.length(); j++) {
                     JSONObject JOdata = (JSONObject) JAdata.get(j);
                     String y = JOdata.getString("close");
-                    PointF dot = new PointF(j, Float.valueOf(y));
-                    points.add(dot);
-                    dotsXstring = dotsXstring + j + "\n";
-                    dotsYstring = dotsYstring + y + "\n";
-                    if(points.size() <= numberOfData + 1) {     // Only once reading.
+                    if(valueCount == values.length)     // More values than requested.
+                        break;
+                    values[valueCount++] = Float.parseFloat(y);
+                    candles.add(JOdata.getInt("time"), (float) JOdata.getDouble("open"), (float) JOdata.getDouble("high"),
+                            (float) JOdata.getDouble("low"), (float) JOdata.getDouble("close"));
+                    dotsX.append(j).append('\n');
+                    dotsY.append(y).append('\n');
+                    if(valueCount <= numberOfData + 1) {     // Only once reading.
                         timeAxis[j] = Integer.valueOf(JOdata.getString("time"));
                         timeAxisString = timeAxisString + JOdata.getString("time") + "\n";
                     }
                 }
                 data = "";
-                symbolsInString = symbolsInString + listOfSymbols.get(i) + "\n";
+                // Candles are stored as soon as they are received, they are kept for range queries and panning.
+                CryptocurrencyApp.getDatabase().writeCandles(selSymbol, listOfSymbols.get(i), timeFrame, candles);
+                receivedSymbols.add(listOfSymbols.get(i));
+                dotsXPerSymbol.add(dotsX.toString());
+                dotsYPerSymbol.add(dotsY.toString());
 
-            } catch (MalformedURLException e) {
-                e.printStackTrace();
             } catch (IOException e) {
+                // Remaining lines are not requested, the graph could not be complete.
                 e.printStackTrace();
+                break;
             } catch (JSONException e) {
                 e.printStackTrace();
             }
         }
-
-        return null;
     }
 
     @Override
     protected  void onPostExecute(Void avoid) {
         super.onPostExecute(avoid);
 
-        // Drawing graph after receiving data from internet.
+        // Passing graph data after receiving data from internet.
         // Storing data into database.
-        if( points.size() == listOfSymbols.size() * (numberOfData + 1)) {
-            graph.setAllDrawingParameters(points, timeAxis, timeFrame, numRows, numColumns, listOfSymbols, selSymbol);
-            if( !symbolsInString.equals(""))
-                MainActivity.db.writeAllGraphLinesIntoDB(selSymbol, symbolsInString, dotsXstring, dotsYstring, timeAxisString, timeFrame, numRows, numColumns);
+        if( valueCount == values.length) {
+            GraphData graphData = new GraphData(values, timeAxis, timeFrame, numRows, numColumns, listOfSymbols);
+            for (String symbol : listOfSymbols) {
+                if (!isShown(symbol))
+                    graphData = graphData.withoutLine(symbol);
+            }
+            listener.onPointsReceived(graphData);
+            // Shown lines are stored on the disk executor, after deletes queued by the listener.
+            final List<Integer> storedLines = new ArrayList<>();
+            for (int i = 0; i < receivedSymbols.size(); i++) {
+                if (isShown(receivedSymbols.get(i)))
+                    storedLines.add(i);
+            }
+            CryptocurrencyApp.getDiskExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i : storedLines)
+                        CryptocurrencyApp.getDatabase().writeGraphLineIntoDB(selSymbol, receivedSymbols.get(i), dotsXPerSymbol.get(i),
+                                dotsYPerSymbol.get(i), timeAxisString, timeFrame, numRows, numColumns);
+                }
+            });
         }
+        else
+            listener.onPointsFailed();
+    }
+
+    private boolean isShown(String symbol) {
+        return lineFilter == null || lineFilter.isShown(symbol);
     }
 
 }
@@ -0,0 +1,96 @@
+/**
+ * Retention of the candle store. Every time frame has its own time to live: expired minute candles
+ * are rolled up into hour candles and expired hour candles into day candles, before raw candles
+ * are deleted. Day candles are kept forever. Work is done in small batches, each in its own
+ * transaction, on a background thread, and free pages are released with incremental vacuum, so
+ * the database stays bounded on disk.
+ */
+
+package com.example.cryptocurrency;
+
+import android.database.Cursor;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class RetentionEngine {
+
+    private static final String TAG = "RetentionEngine";
+    private static final int BATCH_SIZE = 2000;         // must hold at least one whole day of hours
+    private static final int VACUUM_PAGES = 256;
+
+    // Time frames from the shortest, with time to live in seconds and the time frame they are rolled into.
+    private static final String[] TIME_FRAMES = {"minute", "hour", "day"};
+    private static final long[] TTL_SECONDS = {7L * 86400, 90L * 86400, 0};      // 0 - kept forever
+    private static final String[] ROLL_UP_INTO = {"hour", "day", null};
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private RetentionEngine() {
+    }
+
+    // Apply the retention policy in background. Runs are queued, so two runs never overlap.
+    public static void runAsync() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    run((int) (System.currentTimeMillis() / 1000));
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Apply the retention policy. Must be called from a background thread.
+     *
+     * @param nowTs - Current time in seconds
+     */
+    static void run(int nowTs) {
+        DatabaseHandler db = CryptocurrencyApp.getDatabase();
+        long start = System.nanoTime();
+        int rolledUp = 0;
+        db.enableIncrementalVacuum();
+
+        for (int i = 0; i < TIME_FRAMES.length; i++) {
+            if (TTL_SECONDS[i] == 0)
+                continue;
+            String timeFrame = TIME_FRAMES[i];
+            String into = ROLL_UP_INTO[i];
+            int cutoffTs = (int) (nowTs - TTL_SECONDS[i]);
+            // Only whole buckets of the longer time frame are rolled up.
+            int bucketSeconds = DatabaseHandler.candleSeconds(into);
+            cutoffTs -= cutoffTs % bucketSeconds;
+            for (String[] pair : readPairs(db, timeFrame, cutoffTs)) {
+                int batch;
+                while ((batch = db.rollUpCandles(pair[0], pair[1], timeFrame, into, cutoffTs, BATCH_SIZE)) > 0)
+                    rolledUp += batch;
+                db.incrementalVacuum(VACUUM_PAGES);
+            }
+        }
+
+        db.incrementalVacuum(VACUUM_PAGES);
+        Log.d(TAG, "Rolled up " + rolledUp + " candles in " +
+                (System.nanoTime() - start) / 1000000 + " ms, statements: " + db.getStatementStats());
+    }
+
+    private static List<String[]> readPairs(DatabaseHandler db, String timeFrame, int beforeTs) {
+        List<String[]> pairs = new ArrayList<>();
+        Cursor res = db.readCandlePairsBefore(timeFrame, beforeTs);
+        try {
+            while (res.moveToNext())
+                pairs.add(new String[] {res.getString(0), res.getString(1)});
+        } finally {
+            res.close();
+        }
+        return pairs;
+    }
+
+}
@@ -0,0 +1,164 @@
+/**
+ * Decoder for graph series stored in the database. Values of a series are stored as one string,
+ * every value is followed by "\n". The string is decoded in one pass, directly into primitive
+ * arrays, without substrings and without boxed numbers.
+ */
+
+package com.example.cryptocurrency;
+
+public final class SeriesDecoder {
+
+    // Powers of ten for decimal exponents -38..38, enough for float values.
+    private static final double[] POWERS_OF_TEN = new double[77];
+
+    static {
+        for (int i = 0; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = Math.pow(10, i - 38);
+    }
+
+    private SeriesDecoder() {
+    }
+
+    /**
+     * Number of values in the series.
+     *
+     * @param series - Values, each one followed by "\n"
+     * @return int   - Number of values
+     */
+    public static int count(String series) {
+        if (series == null)
+            return 0;
+        int count = 0;
+        int length = series.length();
+        for (int i = 0; i < length; i++) {
+            if (series.charAt(i) == '\n')
+                count++;
+        }
+        // The last value could be stored without "\n".
+        if (length > 0 && series.charAt(length - 1) != '\n')
+            count++;
+        return count;
+    }
+
+    /**
+     * Decode float values of the series into the target array.
+     *
+     * @param series - Values, each one followed by "\n"
+     * @param target - Array for values
+     * @param offset - Index in the target array for the first value
+     * @return int   - Number of decoded values
+     */
+    public static int decodeFloats(String series, float[] target, int offset) {
+        if (series == null)
+            return 0;
+        int length = series.length();
+        int index = offset;
+        int start = 0;
+        while (start < length && index < target.length) {
+            int end = series.indexOf('\n', start);
+            if (end < 0)
+                end = length;
+            if (end > start)
+                target[index++] = (float) parseDecimal(series, start, end);
+            start = end + 1;
+        }
+        return index - offset;
+    }
+
+    /**
+     * Decode int values of the series.
+     *
+     * @param series - Values, each one followed by "\n"
+     * @return int[] - Decoded values
+     */
+    public static int[] decodeInts(String series) {
+        int[] values = new int[count(series)];
+        if (series == null)
+            return values;
+        int length = series.length();
+        int index = 0;
+        int value = 0;
+        boolean negative = false, hasDigits = false;
+        for (int i = 0; i <= length && index < values.length; i++) {
+            char c = i < length ? series.charAt(i) : '\n';
+            if (c == '\n') {
+                if (hasDigits)
+                    values[index++] = negative ? -value : value;
+                value = 0;
+                negative = false;
+                hasDigits = false;
+            }
+            else if (c == '-')
+                negative = true;
+            else if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                hasDigits = true;
+            }
+        }
+        return values;
+    }
+
+    // Decimal number between start and end, e.g. "7345.12", "-0.5", "1.2E-5". Malformed numbers are 0.
+    static double parseDecimal(String text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                // Digits over the precision of long are dropped, only the exponent is counted.
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0)
+                        digits++;
+                    if (fraction)
+                        exponent--;
+                }
+                else if (!fraction)
+                    exponent++;
+            }
+            else if (c == '.' && !fraction)
+                fraction = true;
+            else
+                break;
+        }
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+                negativeExponent = text.charAt(i) == '-';
+                i++;
+            }
+            int explicitExponent = 0;
+            for (; i < end && explicitExponent < 1000; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9')
+                    break;
+                explicitExponent = explicitExponent * 10 + (c - '0');
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        double value = mantissa;
+        if (mantissa != 0 && exponent != 0) {
+            // Scale in steps inside the table, so large exponents of long mantissas do not overflow.
+            while (exponent < -38) {
+                value *= POWERS_OF_TEN[0];
+                exponent += 38;
+            }
+            while (exponent > 38) {
+                value *= POWERS_OF_TEN[76];
+                exponent -= 38;
+            }
+            value *= POWERS_OF_TEN[exponent + 38];
+        }
+        return negative ? -value : value;
+    }
+
+}
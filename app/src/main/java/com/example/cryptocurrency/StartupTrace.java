@@ -0,0 +1,65 @@
+/**
+ * Timings of the startup phases. Every phase is recorded with the time since the application was
+ * created and logged, e.g. "first_frame +180 ms". A phase is recorded only once per process.
+ */
+
+package com.example.cryptocurrency;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class StartupTrace {
+
+    private static final String TAG = "StartupTrace";
+
+    private static long startMs;
+    private static final Map<String, Long> phases = new LinkedHashMap<>();
+
+    private StartupTrace() {
+    }
+
+    // Start of the process, called from Application.onCreate.
+    static synchronized void begin() {
+        startMs = SystemClock.uptimeMillis();
+        phases.clear();
+    }
+
+    // Record the end of a phase.
+    public static synchronized void mark(String phase) {
+        if (phases.containsKey(phase))
+            return;
+        long elapsed = SystemClock.uptimeMillis() - startMs;
+        phases.put(phase, elapsed);
+        Log.i(TAG, phase + " +" + elapsed + " ms on " + Thread.currentThread().getName());
+    }
+
+    // Recorded phases with milliseconds since the start, in order.
+    public static synchronized Map<String, Long> getPhases() {
+        return new LinkedHashMap<>(phases);
+    }
+
+    /**
+     * Run an action after the first frame of the view is drawn. The phase "first_frame" is recorded
+     * when the frame is about to be drawn, and the action is posted behind the frame.
+     *
+     * @param view   - Root view of the activity
+     * @param action - Startup work which must not delay the first frame
+     */
+    public static void afterFirstFrame(final View view, final Runnable action) {
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                mark("first_frame");
+                view.post(action);
+                return true;
+            }
+        });
+    }
+
+}
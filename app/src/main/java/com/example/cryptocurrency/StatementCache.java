@@ -0,0 +1,76 @@
+/**
+ * Cache of precompiled statements of the database. Every statement of DatabaseHandler is constant
+ * SQL text with bound arguments. A write SQLiteStatement is compiled once per SQL text and reused
+ * with new arguments, so SQLite does not parse and plan it again. Only these statements are
+ * counted: queries which return a Cursor are not held here, and whether a connection reuses them
+ * is not observed.
+ *
+ * A cached statement must be locked while its arguments are bound and it is executed. A statement
+ * is used either only inside transactions or only outside of them, so the lock of a statement is
+ * never taken in a different order with the connection of a transaction.
+ */
+
+package com.example.cryptocurrency;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class StatementCache {
+
+    // Number of reused and compiled statements.
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+
+        Stats(long hits, long misses) {
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        public double hitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return "hits " + hits + ", misses " + misses + ", hit rate " + Math.round(hitRate() * 1000) / 10.0 + " %";
+        }
+    }
+
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+    private long hits, misses;
+
+    /**
+     * Precompiled statement for the SQL text. The caller locks the statement while it is used.
+     *
+     * @param db                - Writable database
+     * @param sql               - SQL text with ? for every argument
+     * @return SQLiteStatement  - Cached statement
+     */
+    public synchronized SQLiteStatement statement(SQLiteDatabase db, String sql) {
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            misses++;
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        else
+            hits++;
+        return statement;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses);
+    }
+
+    // Close all statements, they are compiled again on the next use.
+    public synchronized void clear() {
+        for (SQLiteStatement statement : statements.values())
+            statement.close();
+        statements.clear();
+    }
+
+}
@@ -0,0 +1,326 @@
+/**
+ * In-memory search index over symbols and full names of all known Cryptocurrencies.
+ *
+ * Prefix search is a binary search in a sorted array of keys (symbol and every word of the full
+ * name). Fuzzy search uses trigrams, so a query with a typo still finds the Coin. The index is
+ * immutable, it is built on a background thread and could be used from any thread. Coins received
+ * later are added by a merge into a new index, without a rebuild. The same index is used by the main
+ * list filter and by the comparison picker in the graph view.
+ */
+
+package com.example.cryptocurrency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+public class SymbolSearchIndex {
+
+    private static final float MIN_FUZZY_SCORE = 0.5f;    // part of query trigrams which must match
+
+    private static volatile SymbolSearchIndex shared;
+    private static final Map<String, Coin> addedCoins = new LinkedHashMap<>();   // symbol -> Coin added to the shared index
+
+    private final Coin[] coins;                 // id -> Coin, ids are ordered by rank
+    private final String[] keys;                // sorted lower case keys
+    private final int[] keyIds;                 // Coin id for every key
+    private final Map<Integer, int[]> trigrams; // trigram -> sorted ids of Coins which contain it
+
+    /**
+     * Build the index. It should be called from a background thread for large lists.
+     *
+     * @param coinList - Coins ordered by rank, duplicate symbols are skipped
+     */
+    public SymbolSearchIndex(List<Coin> coinList) {
+        List<Coin> uniqueCoins = new ArrayList<>(coinList.size());
+        Set<String> symbols = new HashSet<>();
+        for (Coin coin : coinList) {
+            if (coin.getSymbolCoin() != null && symbols.add(coin.getSymbolCoin()))
+                uniqueCoins.add(coin);
+        }
+        coins = uniqueCoins.toArray(new Coin[0]);
+
+        List<String> keyList = new ArrayList<>();
+        List<Integer> keyIdList = new ArrayList<>();
+        Map<Integer, List<Integer>> trigramLists = new HashMap<>();
+        for (int id = 0; id < coins.length; id++)
+            indexCoin(id, coins[id], keyList, keyIdList, trigramLists);
+
+        keys = new String[keyList.size()];
+        keyIds = new int[keyList.size()];
+        sortKeys(keyList, keyIdList, keys, keyIds);
+
+        trigrams = new HashMap<>(trigramLists.size());
+        for (Map.Entry<Integer, List<Integer>> entry : trigramLists.entrySet())
+            trigrams.put(entry.getKey(), toArray(entry.getValue()));
+    }
+
+    private SymbolSearchIndex(Coin[] coins, String[] keys, int[] keyIds, Map<Integer, int[]> trigrams) {
+        this.coins = coins;
+        this.keys = keys;
+        this.keyIds = keyIds;
+        this.trigrams = trigrams;
+    }
+
+    /**
+     * New index with Coins appended after the indexed ones. Only keys and trigrams of the new Coins
+     * are computed, they are merged into the sorted keys and trigram lists of this index.
+     *
+     * @param coinList           - Coins ordered by rank, already indexed symbols are skipped
+     * @return SymbolSearchIndex - New index, or this index if there is no new Coin
+     */
+    public SymbolSearchIndex withCoins(Collection<Coin> coinList) {
+        List<Coin> newCoins = new ArrayList<>();
+        Set<String> symbols = new HashSet<>();
+        for (Coin coin : coinList) {
+            String symbol = coin.getSymbolCoin();
+            if (symbol != null && !containsSymbol(symbol) && symbols.add(symbol))
+                newCoins.add(coin);
+        }
+        if (newCoins.isEmpty())
+            return this;
+
+        Coin[] allCoins = Arrays.copyOf(coins, coins.length + newCoins.size());
+        List<String> keyList = new ArrayList<>();
+        List<Integer> keyIdList = new ArrayList<>();
+        Map<Integer, List<Integer>> trigramLists = new HashMap<>();
+        for (int i = 0; i < newCoins.size(); i++) {
+            allCoins[coins.length + i] = newCoins.get(i);
+            indexCoin(coins.length + i, newCoins.get(i), keyList, keyIdList, trigramLists);
+        }
+        String[] newKeys = new String[keyList.size()];
+        int[] newKeyIds = new int[keyList.size()];
+        sortKeys(keyList, keyIdList, newKeys, newKeyIds);
+
+        // Merge of two sorted key arrays.
+        String[] allKeys = new String[keys.length + newKeys.length];
+        int[] allKeyIds = new int[allKeys.length];
+        int i = 0, j = 0;
+        for (int k = 0; k < allKeys.length; k++) {
+            if (j == newKeys.length || (i < keys.length && keys[i].compareTo(newKeys[j]) <= 0)) {
+                allKeys[k] = keys[i];
+                allKeyIds[k] = keyIds[i++];
+            }
+            else {
+                allKeys[k] = newKeys[j];
+                allKeyIds[k] = newKeyIds[j++];
+            }
+        }
+
+        // New ids are bigger than all old ones, so they are appended to sorted id lists.
+        Map<Integer, int[]> allTrigrams = new HashMap<>(trigrams);
+        for (Map.Entry<Integer, List<Integer>> entry : trigramLists.entrySet()) {
+            int[] oldIds = allTrigrams.get(entry.getKey());
+            int[] addedIds = toArray(entry.getValue());
+            if (oldIds == null) {
+                allTrigrams.put(entry.getKey(), addedIds);
+                continue;
+            }
+            int[] ids = Arrays.copyOf(oldIds, oldIds.length + addedIds.length);
+            System.arraycopy(addedIds, 0, ids, oldIds.length, addedIds.length);
+            allTrigrams.put(entry.getKey(), ids);
+        }
+        return new SymbolSearchIndex(allCoins, allKeys, allKeyIds, allTrigrams);
+    }
+
+    // Index which is shared by the whole application. It is null until the first index is built.
+    public static SymbolSearchIndex getShared() {
+        return shared;
+    }
+
+    // Coins added with addShared are kept also in a rebuilt index.
+    public static synchronized void setShared(SymbolSearchIndex index) {
+        shared = index.withCoins(addedCoins.values());
+    }
+
+    /**
+     * Add Coins into the shared index without a rebuild, e.g. a received page of the list. Should be
+     * called from a background thread.
+     *
+     * @param coinList - Coins ordered by rank
+     */
+    public static synchronized void addShared(List<Coin> coinList) {
+        for (Coin coin : coinList) {
+            if (coin.getSymbolCoin() != null && !addedCoins.containsKey(coin.getSymbolCoin()))
+                addedCoins.put(coin.getSymbolCoin(), coin);
+        }
+        if (shared != null)
+            shared = shared.withCoins(coinList);
+    }
+
+    public int size() {
+        return coins.length;
+    }
+
+    /**
+     * Search Coins for the typed text. Results are ordered as: exact symbol, symbol or name word
+     * prefix, fuzzy matches. Inside every group Coins are ordered by rank.
+     *
+     * @param query      - Typed text
+     * @param maxResults - Maximum number of results
+     * @return List<Coin> - Found Coins
+     */
+    public List<Coin> search(String query, int maxResults) {
+        List<Coin> results = new ArrayList<>();
+        String normalized = normalize(query).trim();
+        if (normalized.length() == 0 || maxResults <= 0)
+            return results;
+        boolean[] found = new boolean[coins.length];
+
+        // Exact symbol.
+        int from = lowerBound(normalized);
+        for (int i = from; i < keys.length && keys[i].equals(normalized); i++) {
+            int id = keyIds[i];
+            if (!found[id] && normalize(coins[id].getSymbolCoin()).equals(normalized)) {
+                found[id] = true;
+                results.add(coins[id]);
+            }
+        }
+
+        // Prefix matches, ordered by rank.
+        List<Integer> prefixIds = new ArrayList<>();
+        for (int i = from; i < keys.length && keys[i].startsWith(normalized); i++) {
+            if (!found[keyIds[i]]) {
+                found[keyIds[i]] = true;
+                prefixIds.add(keyIds[i]);
+            }
+        }
+        addOrdered(prefixIds, results, maxResults);
+
+        // Fuzzy matches by trigrams.
+        if (results.size() < maxResults && normalized.length() >= 3) {
+            Set<Integer> queryTrigrams = new HashSet<>();
+            addTrigrams(normalized, queryTrigrams);
+            int[] counts = new int[coins.length];
+            for (int trigram : queryTrigrams) {
+                int[] ids = trigrams.get(trigram);
+                if (ids != null) {
+                    for (int id : ids)
+                        counts[id]++;
+                }
+            }
+            int minCount = Math.max(1, (int) Math.ceil(queryTrigrams.size() * MIN_FUZZY_SCORE));
+            List<Integer> fuzzyIds = new ArrayList<>();
+            for (int id = 0; id < coins.length; id++) {
+                if (!found[id] && counts[id] >= minCount)
+                    fuzzyIds.add(id);
+            }
+            addOrdered(fuzzyIds, results, maxResults);
+        }
+
+        if (results.size() > maxResults)
+            return new ArrayList<>(results.subList(0, maxResults));
+        return results;
+    }
+
+    // Symbols of found Coins.
+    public List<String> searchSymbols(String query, int maxResults) {
+        List<Coin> found = search(query, maxResults);
+        List<String> symbols = new ArrayList<>(found.size());
+        for (Coin coin : found)
+            symbols.add(coin.getSymbolCoin());
+        return symbols;
+    }
+
+    private void addOrdered(List<Integer> ids, List<Coin> results, int maxResults) {
+        Collections.sort(ids);
+        for (int i = 0; i < ids.size() && results.size() < maxResults; i++)
+            results.add(coins[ids.get(i)]);
+    }
+
+    private boolean containsSymbol(String symbol) {
+        String normalized = normalize(symbol);
+        for (int i = lowerBound(normalized); i < keys.length && keys[i].equals(normalized); i++) {
+            if (symbol.equals(coins[keyIds[i]].getSymbolCoin()))
+                return true;
+        }
+        return false;
+    }
+
+    // Keys for prefix search (symbol and all words of the full name) and trigrams of one Coin.
+    private static void indexCoin(int id, Coin coin, List<String> keyList, List<Integer> keyIdList,
+                                  Map<Integer, List<Integer>> trigramLists) {
+        String symbol = normalize(coin.getSymbolCoin());
+        String name = normalize(coin.getNameCoin());
+        keyList.add(symbol);
+        keyIdList.add(id);
+        for (String word : name.split(" ")) {
+            if (word.length() > 0 && !word.equals(symbol)) {
+                keyList.add(word);
+                keyIdList.add(id);
+            }
+        }
+        Set<Integer> coinTrigrams = new HashSet<>();
+        addTrigrams(symbol, coinTrigrams);
+        addTrigrams(name, coinTrigrams);
+        for (int trigram : coinTrigrams) {
+            List<Integer> ids = trigramLists.get(trigram);
+            if (ids == null) {
+                ids = new ArrayList<>();
+                trigramLists.put(trigram, ids);
+            }
+            ids.add(id);
+        }
+    }
+
+    // Sort keys together with their ids.
+    private static void sortKeys(List<String> keyList, List<Integer> keyIdList, String[] sortedKeys, int[] sortedIds) {
+        final String[] unsortedKeys = keyList.toArray(new String[0]);
+        Integer[] order = new Integer[unsortedKeys.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                return unsortedKeys[first].compareTo(unsortedKeys[second]);
+            }
+        });
+        for (int i = 0; i < order.length; i++) {
+            sortedKeys[i] = unsortedKeys[order[i]];
+            sortedIds[i] = keyIdList.get(order[i]);
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = list.get(i);
+        return array;
+    }
+
+    // First position of a key which is not smaller than the prefix.
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(prefix) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    // Trigrams are packed into an int, 3 chars x 10 bits (chars outside of that range share codes).
+    private static void addTrigrams(String text, Set<Integer> out) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            int trigram = ((text.charAt(i) & 0x3FF) << 20) | ((text.charAt(i + 1) & 0x3FF) << 10) | (text.charAt(i + 2) & 0x3FF);
+            out.add(trigram);
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.US);
+    }
+
+}
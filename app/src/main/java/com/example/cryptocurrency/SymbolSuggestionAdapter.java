@@ -0,0 +1,87 @@
+/**
+ * Suggestion adapter for the comparison picker. Typed text is searched in the shared
+ * SymbolSearchIndex, and only symbols which could still be added are suggested.
+ */
+
+package com.example.cryptocurrency;
+
+import android.content.Context;
+import android.util.Log;
+import android.widget.ArrayAdapter;
+import android.widget.Filter;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+public class SymbolSuggestionAdapter extends ArrayAdapter<String> {
+
+    private static final String TAG = "SymbolSuggestionAdapter";
+    private static final int MAX_SUGGESTIONS = 50;
+
+    private volatile Set<String> allowedSymbols = new HashSet<>();
+    private final Filter filter = new Filter() {
+        // Runs on a background thread.
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            FilterResults results = new FilterResults();
+            List<String> suggestions = new ArrayList<>();
+            Set<String> allowed = allowedSymbols;
+            if (constraint != null && constraint.length() > 0) {
+                SymbolSearchIndex index = SymbolSearchIndex.getShared();
+                if (index != null) {
+                    // Ask for more results, because some of them could be already added.
+                    long start = System.nanoTime();
+                    List<String> found = index.searchSymbols(constraint.toString(), MAX_SUGGESTIONS * 4);
+                    Log.d(TAG, "Searched " + index.size() + " symbols in " + (System.nanoTime() - start) / 1000 + " us");
+                    for (String symbol : found) {
+                        if (allowed.contains(symbol) && suggestions.size() < MAX_SUGGESTIONS)
+                            suggestions.add(symbol);
+                    }
+                }
+                else {
+                    // Index is still not built, search symbols by prefix.
+                    String prefix = constraint.toString().toUpperCase(Locale.US);
+                    for (String symbol : allowed) {
+                        if (symbol.toUpperCase(Locale.US).startsWith(prefix) && suggestions.size() < MAX_SUGGESTIONS)
+                            suggestions.add(symbol);
+                    }
+                }
+            }
+            results.values = suggestions;
+            results.count = suggestions.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            setNotifyOnChange(false);
+            clear();
+            if (results.values != null)
+                addAll((List<String>) results.values);
+            notifyDataSetChanged();
+        }
+    };
+
+    public SymbolSuggestionAdapter(Context context) {
+        super(context, android.R.layout.simple_dropdown_item_1line, new ArrayList<String>());
+    }
+
+    // Symbols which could be suggested. The set is copied.
+    public void setAllowedSymbols(Collection<String> symbols) {
+        allowedSymbols = new HashSet<>(symbols);
+    }
+
+    @NonNull
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+
+}
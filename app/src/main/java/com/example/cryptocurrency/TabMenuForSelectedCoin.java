@@ -6,36 +6,37 @@
 
 package com.example.cryptocurrency;
 
+import android.graphics.Bitmap;
 import android.os.Bundle;
 
 import com.google.android.material.tabs.TabLayout;
 import androidx.viewpager.widget.ViewPager;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.fragment.app.Fragment;
 
 import android.widget.ImageView;
 import android.widget.TextView;
-import com.squareup.picasso.Picasso;
 
-import java.util.List;
+import com.squareup.picasso.Callback;
 
 
-public class TabMenuForSelectedCoin extends AppCompatActivity {
+public class TabMenuForSelectedCoin extends AppCompatActivity implements LazyTabFragment.OnTabLoadedListener {
     private TextView coinName, coinSymbol;
     private ImageView coinImage;
     private ViewPager viewPager;
     private TabLayout tabLayout;
-    private List<String> listSymbol;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.coin_details_tab);
 
-        // Obtained data from MAIN ACTIVITY
-        String passedArgName = getIntent().getExtras().getString("name_coin");
-        String passedArgSymbol = getIntent().getExtras().getString("symbol_coin");
-        String passedArgImage = getIntent().getExtras().getString("image_coin");
-        listSymbol = getIntent().getStringArrayListExtra("list_symbol");
+        // Obtained symbol from MAIN ACTIVITY. Name and image are read from the catalog.
+        String passedArgSymbol = getIntent().getExtras().getString(MainActivity.ARG_SYMBOL_FROM_MAIN);
+        CoinCatalog catalog = CatalogRegistry.getCatalog(this);
+        int coinId = catalog.idOf(passedArgSymbol);
+        String passedArgName = coinId >= 0 ? catalog.name(coinId) : passedArgSymbol;
+        String passedArgImage = coinId >= 0 ? catalog.imageUrl(coinId) : null;
 
         tabLayout = (TabLayout) findViewById(R.id.tabs);
         viewPager = (ViewPager) findViewById(R.id.view_pager);
@@ -45,18 +46,64 @@ public class TabMenuForSelectedCoin extends AppCompatActivity {
 
         coinName.setText(passedArgName);
         coinSymbol.setText(passedArgSymbol);
-        Picasso.get().load(passedArgImage).resize(70, 70).into(coinImage);
+        // Header icon from the atlas if it exists, otherwise load it and add it into the atlas.
+        final IconAtlas iconAtlas = CryptocurrencyApp.getIconAtlas();
+        final String symbol = passedArgSymbol;
+        final String imageUrl = passedArgImage;
+        Bitmap cachedIcon = iconAtlas.getCachedIcon(symbol);
+        if (cachedIcon != null) {
+            coinImage.setImageBitmap(cachedIcon);
+        }
+        else if (iconAtlas.contains(symbol)) {
+            iconAtlas.loadIcon(symbol, new IconAtlas.IconCallback() {
+                @Override
+                public void onIcon(String symbol, Bitmap icon) {
+                    if (icon != null)
+                        coinImage.setImageBitmap(icon);
+                    else
+                        loadHeaderIcon(iconAtlas, symbol, imageUrl);
+                }
+            });
+        }
+        else {
+            loadHeaderIcon(iconAtlas, symbol, imageUrl);
+        }
 
         FragmentPagerAdapterCustom adapter = new FragmentPagerAdapterCustom(getSupportFragmentManager());
-        adapter.AddFragment(new FragmentGeneralInfo(passedArgSymbol), "General info");
-        adapter.AddFragment(new FragmentGraph(passedArgSymbol, listSymbol), "Graph view");
+        adapter.AddFragment(FragmentGeneralInfo.newInstance(passedArgSymbol), "General info");
+        adapter.AddFragment(FragmentGraph.newInstance(passedArgSymbol), "Graph view");
 
 
+        // Tabs load their data only when they are shown, see onTabLoaded for prefetch of other tabs.
         viewPager.setAdapter(adapter);
-        viewPager.setOffscreenPageLimit(2);
 
         tabLayout.setupWithViewPager(viewPager);
 
     }
 
-}
\ No newline at end of file
+    // Visible tab is loaded, other tabs could load their data in background with low priority.
+    @Override
+    public void onTabLoaded(LazyTabFragment tab) {
+        for (Fragment fragment : getSupportFragmentManager().getFragments()) {
+            if (fragment != tab && fragment instanceof LazyTabFragment)
+                ((LazyTabFragment) fragment).prefetch();
+        }
+    }
+
+    // Header icon from the network or the icon cache, it is added into the atlas.
+    private void loadHeaderIcon(final IconAtlas iconAtlas, final String symbol, String imageUrl) {
+        if (imageUrl == null)
+            return;
+        CryptocurrencyApp.getIconLoader().loadIcon(imageUrl, coinImage, 70, new Callback() {
+            @Override
+            public void onSuccess() {
+                iconAtlas.add(symbol, coinImage.getDrawable());
+            }
+
+            @Override
+            public void onError(Exception e) {
+            }
+        });
+    }
+
+}
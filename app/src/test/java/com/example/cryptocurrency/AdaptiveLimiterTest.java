@@ -0,0 +1,184 @@
+package com.example.cryptocurrency;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Adaptive concurrency limit of ApiClient against a local stand-in server which can add latency
+ * and throttle with HTTP 429 when too many requests run at the same time.
+ */
+public class AdaptiveLimiterTest {
+
+    private static final long DEADLINE_MS = 10000;
+    private static final byte[] BODY = "{\"Response\":\"Success\"}".getBytes();
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private volatile long latencyMs;
+    private volatile int capacity = Integer.MAX_VALUE;      // more concurrent requests are throttled
+    private ApiClient client;
+
+    // Results of the calls of all workers.
+    private static class Run {
+        final AtomicInteger successes = new AtomicInteger();
+        final AtomicInteger throttled = new AtomicInteger();
+        final AtomicInteger otherErrors = new AtomicInteger();
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/data/histoday", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    if (concurrent.incrementAndGet() > capacity) {
+                        exchange.sendResponseHeaders(429, -1);
+                        return;
+                    }
+                    Thread.sleep(latencyMs);
+                    exchange.sendResponseHeaders(200, BODY.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(BODY);
+                    out.close();
+                } catch (InterruptedException e) {
+                    exchange.sendResponseHeaders(500, -1);
+                } finally {
+                    concurrent.decrementAndGet();
+                    exchange.close();
+                }
+            }
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        // Breaker never opens, so every call reaches the limiter.
+        client = new ApiClient(Integer.MAX_VALUE);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Test
+    public void flatLatency_raisesTheLimit() throws InterruptedException {
+        latencyMs = 20;
+
+        Run run = runWorkers(12, 30);
+
+        AdaptiveLimiter.Metrics metrics = limiterMetrics();
+        assertEquals(12 * 30, run.successes.get());
+        assertTrue("Limit " + metrics.limit, metrics.limit > 6);
+        assertTrue("Max in flight " + metrics.maxInFlight, metrics.maxInFlight > 4);
+        assertEquals(0, metrics.drops);
+        assertEquals(0, metrics.inFlight);
+    }
+
+    @Test
+    public void throttling_backsTheLimitOff() throws InterruptedException {
+        latencyMs = 20;
+        capacity = 2;
+
+        Run run = runWorkers(12, 30);
+
+        AdaptiveLimiter.Metrics metrics = limiterMetrics();
+        assertEquals(0, run.otherErrors.get());
+        assertTrue(metrics.decreases > 0);
+        // Limit saws around the capacity of the server, far below the number of workers.
+        assertTrue("Limit " + metrics.limit, metrics.limit < 8);
+        assertTrue("Max in flight " + metrics.maxInFlight, metrics.maxInFlight <= 6);
+        // Without the limiter 10 of 12 concurrent requests would be throttled.
+        double dropRatio = run.throttled.get() / (double) (12 * 30);
+        assertTrue("Drop ratio " + dropRatio, dropRatio < 0.5);
+        assertEquals(run.throttled.get(), metrics.drops);
+    }
+
+    @Test
+    public void latencySpike_decreasesTheLimit() throws InterruptedException {
+        latencyMs = 10;
+        runWorkers(8, 25);
+        AdaptiveLimiter.Metrics before = limiterMetrics();
+
+        latencyMs = 300;
+        Run run = runWorkers(8, 2);
+
+        AdaptiveLimiter.Metrics after = limiterMetrics();
+        assertEquals(8 * 2, run.successes.get());
+        assertTrue("Limit " + after.limit + " before " + before.limit, after.limit < before.limit);
+        assertTrue(after.decreases > before.decreases);
+        assertEquals(0, after.drops);
+    }
+
+    @Test
+    public void limitedWait_failsWithTimeout() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 4);
+        AdaptiveLimiter.Permit permit = limiter.tryAcquire();
+        assertNotNull(permit);
+
+        assertNull(limiter.acquire(50));
+        assertNull(limiter.tryAcquire());
+
+        limiter.onSuccess(permit, 10);
+        assertNotNull(limiter.tryAcquire());
+    }
+
+    // Every worker makes its calls one after another, all workers run at the same time.
+    private Run runWorkers(int workers, final int callsEach) throws InterruptedException {
+        final Run run = new Run();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int call = 0; call < callsEach; call++) {
+                        try {
+                            client.getString(ApiClient.ENDPOINT_HISTO, url(), DEADLINE_MS);
+                            run.successes.incrementAndGet();
+                        } catch (ApiClient.HttpStatusException e) {
+                            if (e.code == 429)
+                                run.throttled.incrementAndGet();
+                            else
+                                run.otherErrors.incrementAndGet();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                            run.otherErrors.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        return run;
+    }
+
+    private AdaptiveLimiter.Metrics limiterMetrics() {
+        return client.getLimiterMetrics().get(ApiClient.ENDPOINT_HISTO);
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/data/histoday?fsym=BTC&tsym=USD";
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.example.cryptocurrency;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Catalog ingest against a local stand-in server which serves a recorded payload of
+ * https://min-api.cryptocompare.com/data/all/coinlist and a generated payload of several megabytes.
+ */
+public class CatalogIngestTest {
+
+    private HttpServer server;
+    private final Map<String, byte[]> payloads = new HashMap<>();
+
+    // Sink which keeps Coins in memory only if asked, and measures peak retained heap at a few points of the payload.
+    private static class RecordingSink implements CatalogIngest.CatalogSink {
+        final boolean keepCoins;
+        final int expectedCount;
+        final List<String> symbols = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        final List<String> images = new ArrayList<>();
+        final List<Integer> sortOrders = new ArrayList<>();
+        boolean committed, rolledBack;
+        int count;
+        long baselineHeap, peakHeap;
+
+        RecordingSink(boolean keepCoins, int expectedCount) {
+            this.keepCoins = keepCoins;
+            this.expectedCount = expectedCount;
+        }
+
+        @Override
+        public void begin() {
+            baselineHeap = usedHeap();
+        }
+
+        @Override
+        public void add(String symbol, String name, String imagePath, int sortOrder) {
+            count++;
+            if (keepCoins) {
+                symbols.add(symbol);
+                names.add(name);
+                images.add(imagePath);
+                sortOrders.add(sortOrder);
+            }
+            // Heap after collection at every quarter of the payload.
+            if (expectedCount >= 4 && count % (expectedCount / 4) == 0)
+                peakHeap = Math.max(peakHeap, usedHeap() - baselineHeap);
+        }
+
+        @Override
+        public void commit() {
+            committed = true;
+        }
+
+        @Override
+        public void rollback() {
+            rolledBack = true;
+        }
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/data/all/coinlist", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = payloads.get(exchange.getRequestURI().getQuery());
+                if (body == null) {
+                    exchange.sendResponseHeaders(500, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void recordedPayload_isStoredInOneTransaction() throws IOException {
+        payloads.put("recorded", readResource("coinlist_sample.json"));
+        RecordingSink sink = new RecordingSink(true, 5);
+
+        CatalogIngest.Result result = new CatalogIngest(url("recorded"), sink).ingest();
+
+        assertEquals(5, result.count);
+        assertTrue(sink.committed);
+        assertFalse(sink.rolledBack);
+        assertEquals("42", sink.symbols.get(0));
+        assertEquals("42 Coin", sink.names.get(0));
+        int btc = sink.symbols.indexOf("BTC");
+        assertEquals("Bitcoin", sink.names.get(btc));
+        assertEquals("/media/19633/btc.png", sink.images.get(btc));
+        assertEquals(1, (int) sink.sortOrders.get(btc));
+        int noImage = sink.symbols.indexOf("NOIMG");
+        assertNull(sink.images.get(noImage));
+        assertEquals(Integer.MAX_VALUE, (int) sink.sortOrders.get(noImage));
+    }
+
+    @Test
+    public void largePayload_isStreamedWithoutHoldingTheDocument() throws IOException {
+        int coinCount = 8000;
+        byte[] body = generatePayload(coinCount);
+        payloads.put("large", body);
+        RecordingSink sink = new RecordingSink(false, coinCount);
+
+        long start = System.nanoTime();
+        CatalogIngest.Result result = new CatalogIngest(url("large"), sink).ingest();
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(coinCount, result.count);
+        assertTrue(sink.committed);
+        // The document is not held in memory, only the stream buffers are retained while parsing.
+        assertTrue("Peak heap " + sink.peakHeap + " for payload " + body.length, sink.peakHeap < body.length / 4);
+        // Ingest time covers the download and the parse, it is measured inside the call.
+        assertTrue("Ingest time " + result.durationMs + " ms of " + elapsedMs + " ms",
+                result.durationMs > 0 && result.durationMs <= elapsedMs);
+    }
+
+    @Test
+    public void truncatedPayload_isRolledBack() {
+        byte[] body = generatePayload(100);
+        byte[] truncated = new byte[body.length / 2];
+        System.arraycopy(body, 0, truncated, 0, truncated.length);
+        payloads.put("truncated", truncated);
+        RecordingSink sink = new RecordingSink(false, 100);
+
+        try {
+            new CatalogIngest(url("truncated"), sink).ingest();
+            fail("Truncated payload must fail");
+        } catch (IOException expected) {
+            assertTrue(sink.rolledBack);
+            assertFalse(sink.committed);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void serverError_isReported() throws IOException {
+        new CatalogIngest(url("missing"), new RecordingSink(false, 0)).ingest();
+    }
+
+    private String url(String payload) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/data/all/coinlist?" + payload;
+    }
+
+    // Used heap after garbage collection.
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private byte[] readResource(String name) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        assertNotNull(in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+            out.write(buffer, 0, read);
+        in.close();
+        return out.toByteArray();
+    }
+
+    // Payload in the same shape as the real one, every Coin has all fields of the API.
+    private static byte[] generatePayload(int coinCount) {
+        StringBuilder json = new StringBuilder("{\"Response\":\"Success\",\"Message\":\"Coin list succesfully returned!\",\"Data\":{");
+        for (int i = 0; i < coinCount; i++) {
+            String symbol = "C" + i;
+            if (i > 0)
+                json.append(',');
+            json.append('"').append(symbol).append("\":{\"Id\":\"").append(1000 + i)
+                    .append("\",\"Url\":\"/coins/").append(symbol.toLowerCase()).append("/overview\",\"ImageUrl\":\"/media/")
+                    .append(i).append("/").append(symbol.toLowerCase()).append(".png\",\"ContentCreatedOn\":1427211129,\"Name\":\"")
+                    .append(symbol).append("\",\"Symbol\":\"").append(symbol).append("\",\"CoinName\":\"Coin number ").append(i)
+                    .append("\",\"FullName\":\"Coin number ").append(i).append(" (").append(symbol)
+                    .append(")\",\"Algorithm\":\"Scrypt\",\"ProofType\":\"PoW/PoS\",\"FullyPremined\":\"0\",\"TotalCoinSupply\":\"21000000\",")
+                    .append("\"BuiltOn\":\"N/A\",\"SmartContractAddress\":\"N/A\",\"PreMinedValue\":\"N/A\",\"TotalCoinsFreeFloat\":\"N/A\",\"SortOrder\":\"")
+                    .append(i + 1).append("\",\"Sponsored\":false,\"Taxonomy\":{\"Access\":\"\",\"FCA\":\"\",\"FINMA\":\"\",\"Industry\":\"\",")
+                    .append("\"CollateralizedAsset\":\"\",\"CollateralizedAssetType\":\"\",\"CollateralType\":\"\",\"CollateralInfo\":\"\"},")
+                    .append("\"Rating\":{\"Weiss\":{\"Rating\":\"\",\"TechnologyAdoptionRating\":\"\",\"MarketPerformanceRating\":\"\"}},")
+                    .append("\"IsTrading\":true,\"TotalCoinsMined\":18072862,\"BlockNumber\":605493,\"NetHashesPerSecond\":98421766713.9643,")
+                    .append("\"BlockReward\":12.5,\"BlockTime\":600}");
+        }
+        json.append("},\"BaseImageUrl\":\"https://www.cryptocompare.com\",\"BaseLinkUrl\":\"https://www.cryptocompare.com\",\"Type\":100}");
+        try {
+            return json.toString().getBytes("UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+}
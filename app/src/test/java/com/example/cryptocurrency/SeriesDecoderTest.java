@@ -0,0 +1,97 @@
+package com.example.cryptocurrency;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decoding of graph series in the stored format, every value followed by "\n".
+ */
+public class SeriesDecoderTest {
+
+    private static final float DELTA = 1e-6f;
+
+    @Test
+    public void storedSeries_isDecoded() {
+        String series = "7345.12\n-0.5\n1.2E-5\n+3\n0.000123\n";
+        float[] values = new float[7];
+
+        assertEquals(5, SeriesDecoder.count(series));
+        // Values are written after the offset, the rest of the array is not touched.
+        assertEquals(5, SeriesDecoder.decodeFloats(series, values, 1));
+        assertEquals(0f, values[0], 0f);
+        assertEquals(7345.12f, values[1], DELTA);
+        assertEquals(-0.5f, values[2], DELTA);
+        assertEquals(1.2E-5f, values[3], DELTA);
+        assertEquals(3f, values[4], DELTA);
+        assertEquals(0.000123f, values[5], DELTA);
+        assertEquals(0f, values[6], 0f);
+    }
+
+    @Test
+    public void storedTimeAxis_isDecoded() {
+        int[] times = SeriesDecoder.decodeInts("1600000000\n1600000060\n-60\n");
+
+        assertEquals(3, times.length);
+        assertEquals(1600000000, times[0]);
+        assertEquals(1600000060, times[1]);
+        assertEquals(-60, times[2]);
+    }
+
+    @Test
+    public void lastValueWithoutNewline_isDecoded() {
+        float[] values = new float[2];
+
+        assertEquals(2, SeriesDecoder.count("1.5\n2.5"));
+        assertEquals(2, SeriesDecoder.decodeFloats("1.5\n2.5", values, 0));
+        assertEquals(2.5f, values[1], DELTA);
+        assertEquals(2, SeriesDecoder.decodeInts("10\n20").length);
+        assertEquals(20, SeriesDecoder.decodeInts("10\n20")[1]);
+    }
+
+    @Test
+    public void emptySeries_hasNoValues() {
+        float[] values = new float[3];
+
+        assertEquals(0, SeriesDecoder.count(""));
+        assertEquals(0, SeriesDecoder.count(null));
+        assertEquals(0, SeriesDecoder.decodeFloats("", values, 0));
+        assertEquals(0, SeriesDecoder.decodeFloats(null, values, 0));
+        assertEquals(0, SeriesDecoder.decodeInts("").length);
+        assertEquals(0, SeriesDecoder.decodeInts(null).length);
+    }
+
+    @Test
+    public void malformedValues_areZeroOrCutAtTheFirstBadCharacter() {
+        String series = "1.5\nabc\n12x4\n-\n2\n";
+        float[] values = new float[5];
+
+        assertEquals(5, SeriesDecoder.decodeFloats(series, values, 0));
+        assertEquals(1.5f, values[0], DELTA);
+        assertEquals(0f, values[1], 0f);
+        assertEquals(12f, values[2], DELTA);
+        assertEquals(0f, values[3], 0f);
+        assertEquals(2f, values[4], DELTA);
+        assertEquals(0.0, SeriesDecoder.parseDecimal("1.2.3E", 0, 0), 0.0);
+        assertEquals(1.2, SeriesDecoder.parseDecimal("1.2.3", 0, 5), 1e-12);
+        assertEquals(5.0, SeriesDecoder.parseDecimal("5E", 0, 2), 0.0);
+    }
+
+    @Test
+    public void longAndExtremeNumbers_doNotOverflow() {
+        assertEquals(1.2345678901234568E23, SeriesDecoder.parseDecimal("123456789012345678901234", 0, 24), 1e10);
+        assertEquals(0.0, SeriesDecoder.parseDecimal("0E999999", 0, 8), 0.0);
+        assertEquals(1e-45, SeriesDecoder.parseDecimal("1E-45", 0, 5), 1e-55);
+        assertEquals(1e300, SeriesDecoder.parseDecimal("1E300", 0, 5), 1e290);
+    }
+
+    @Test
+    public void fullTarget_stopsDecoding() {
+        float[] values = new float[2];
+
+        assertEquals(2, SeriesDecoder.decodeFloats("1\n2\n3\n", values, 0));
+        assertEquals(1, SeriesDecoder.decodeFloats("4\n5\n", values, 1));
+        assertEquals(4f, values[1], DELTA);
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.example.cryptocurrency;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Prefix, trigram and rank order of the symbol search index, and Coins merged into a built index.
+ * Search time is not asserted, a wall-clock bound would fail on a loaded machine.
+ */
+public class SymbolSearchIndexTest {
+
+    // Coins ordered by rank.
+    private static List<Coin> coins() {
+        return Arrays.asList(
+                coin("BTC", "Bitcoin"),
+                coin("ETH", "Ethereum"),
+                coin("ETC", "Ethereum Classic"),
+                coin("BCH", "Bitcoin Cash"),
+                coin("WBTC", "Wrapped Bitcoin"),
+                coin("DOGE", "Dogecoin"),
+                coin("BT", "BT Token"));
+    }
+
+    private static Coin coin(String symbol, String name) {
+        return new Coin("/media/" + symbol.toLowerCase() + ".png", name, symbol);
+    }
+
+    private static List<String> symbols(List<Coin> found) {
+        List<String> symbols = new ArrayList<>();
+        for (Coin coin : found)
+            symbols.add(coin.getSymbolCoin());
+        return symbols;
+    }
+
+    @Test
+    public void prefix_matchesSymbolAndEveryNameWord() {
+        SymbolSearchIndex index = new SymbolSearchIndex(coins());
+
+        assertEquals(Arrays.asList("ETH", "ETC"), index.searchSymbols("eth", 10));
+        // "classic" is the second word of the name.
+        assertEquals(Collections.singletonList("ETC"), index.searchSymbols("Class", 10));
+        assertEquals(Arrays.asList("BCH"), index.searchSymbols("cash", 10));
+    }
+
+    @Test
+    public void exactSymbol_isFirstThenPrefixByRank() {
+        SymbolSearchIndex index = new SymbolSearchIndex(coins());
+
+        // BT is ranked last, but the exact symbol comes first. Prefix matches follow in rank order.
+        assertEquals(Arrays.asList("BT", "BTC"), index.searchSymbols("bt", 10));
+        assertEquals(Arrays.asList("BTC", "BCH", "WBTC"), index.searchSymbols("bitcoin", 10));
+    }
+
+    @Test
+    public void typo_isFoundByTrigrams() {
+        SymbolSearchIndex index = new SymbolSearchIndex(coins());
+
+        List<String> found = index.searchSymbols("etherium", 10);
+        assertEquals(Arrays.asList("ETH", "ETC"), found);
+        assertTrue(index.searchSymbols("dogecion", 10).contains("DOGE"));
+        assertTrue(index.searchSymbols("zzzz", 10).isEmpty());
+    }
+
+    @Test
+    public void results_areLimitedAndDuplicatesSkipped() {
+        List<Coin> withDuplicate = new ArrayList<>(coins());
+        withDuplicate.add(coin("BTC", "Bitcoin Duplicate"));
+        SymbolSearchIndex index = new SymbolSearchIndex(withDuplicate);
+
+        assertEquals(7, index.size());
+        assertEquals(Collections.singletonList("BTC"), index.searchSymbols("bitcoin", 1));
+        assertTrue(index.searchSymbols("   ", 10).isEmpty());
+        assertTrue(index.searchSymbols("btc", 0).isEmpty());
+    }
+
+    @Test
+    public void addedCoins_areMergedAfterIndexedOnes() {
+        SymbolSearchIndex index = new SymbolSearchIndex(coins());
+
+        SymbolSearchIndex merged = index.withCoins(Arrays.asList(coin("BTC", "Bitcoin"), coin("BTG", "Bitcoin Gold"),
+                coin("ADA", "Cardano")));
+
+        assertEquals(7, index.size());
+        assertEquals(9, merged.size());
+        assertEquals(Arrays.asList("BTC", "BCH", "WBTC", "BTG"), merged.searchSymbols("bitcoin", 10));
+        assertEquals(Collections.singletonList("ADA"), merged.searchSymbols("cardan", 10));
+        // Merged index gives the same results as a rebuilt one.
+        List<Coin> all = new ArrayList<>(coins());
+        all.add(coin("BTG", "Bitcoin Gold"));
+        all.add(coin("ADA", "Cardano"));
+        SymbolSearchIndex rebuilt = new SymbolSearchIndex(all);
+        for (String query : new String[] {"b", "bit", "eth", "gold", "bitcoin gold", "etherium", "c"})
+            assertEquals(query, symbols(rebuilt.search(query, 20)), symbols(merged.search(query, 20)));
+        assertSame(merged, merged.withCoins(Collections.singletonList(coin("ADA", "Cardano"))));
+    }
+
+    @Test
+    public void search_overFiveThousandCoins_findsPrefixAndTypo() {
+        List<Coin> many = new ArrayList<>(coins());
+        for (int i = 0; i < 5000; i++)
+            many.add(coin("C" + i, "Coin Number " + i));
+        SymbolSearchIndex index = new SymbolSearchIndex(many);
+
+        assertEquals(5007, index.size());
+        assertEquals("C4", index.searchSymbols("c4", 1).get(0));
+        // Prefix matches keep the order of the list.
+        assertEquals(Arrays.asList("C4", "C40", "C41"), index.searchSymbols("c4", 3));
+        assertEquals(Arrays.asList("ETH", "ETC"), index.searchSymbols("etherium", 2));
+        assertEquals(20, index.search("coin numb", 20).size());
+    }
+
+}